@@ -0,0 +1,80 @@
+package ro.cofi.netherratio;
+
+import org.bukkit.World;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import ro.cofi.netherratio.fake.FakeServer;
+import ro.cofi.netherratio.logic.PortalLogicManager;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The plugin, enabled on the fake server: the plugin is created through the constructor {@code JavaPlugin} provides
+ * for plugins outside a server, then enabled the way the server would. The config is the default one, from the plugin
+ * jar, and the plugin folder is a temporary directory, deleted on {@link #close()}.
+ * <br><br>
+ * Lives in the plugin package, so that it can reach the hooks {@link NetherRatio} has for it. Listeners and commands
+ * are not registered, callers invoke the listeners they need themselves. The worlds known by the fake server when the
+ * plugin is created are loaded right away, the same as on a server starting up.
+ */
+public final class FakePlugin implements AutoCloseable {
+
+    private final NetherRatio plugin;
+    private final Path dataFolder;
+
+    public FakePlugin() {
+        FakeServer fakeServer = FakeServer.get();
+
+        try {
+            dataFolder = Files.createTempDirectory("netherratio");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        plugin = new NetherRatio(
+            new JavaPluginLoader(fakeServer.getServer()),
+            new PluginDescriptionFile("NetherRatio", "fake", NetherRatio.class.getName()),
+            dataFolder.toFile(),
+            dataFolder.resolve("NetherRatio.jar").toFile()
+        );
+        plugin.setHeadlessEnabled(true);
+
+        // what WorldLoadListener does for the worlds that load after the plugin
+        for (World world : fakeServer.getServer().getWorlds())
+            plugin.getPortalLogicManager().prepareWorld(world);
+    }
+
+    public NetherRatio getPlugin() {
+        return plugin;
+    }
+
+    public ConfigSnapshot getConfig() {
+        return plugin.getConfigManager().getSnapshot();
+    }
+
+    public PortalLogicManager getPortalLogicManager() {
+        return plugin.getPortalLogicManager();
+    }
+
+    /**
+     * Disable the plugin the way the server would, then delete its folder.
+     */
+    @Override
+    public void close() {
+        plugin.setHeadlessEnabled(false);
+
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
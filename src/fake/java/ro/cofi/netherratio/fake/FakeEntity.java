@@ -0,0 +1,134 @@
+package ro.cofi.netherratio.fake;
+
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.util.BoundingBox;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A headless {@link Entity}, or {@link Player}, standing somewhere in a fake world. It has a hitbox, a portal cooldown
+ * and a location, which teleports change right away. Players are in creative mode, so that they never use up their
+ * items. Anything else answers with a default value.
+ */
+public final class FakeEntity {
+
+    private static final double PLAYER_WIDTH = 0.6;
+    private static final double PLAYER_HEIGHT = 1.8;
+    private static final double MOB_WIDTH = 0.6;
+    private static final double MOB_HEIGHT = 1.95;
+
+    private final UUID uid = UUID.randomUUID();
+    private final String name;
+    private final boolean player;
+    private final double width;
+    private final double height;
+    private final Entity entity;
+
+    private volatile Location location;
+    private int portalCooldown;
+
+    private FakeEntity(String name, boolean player, double width, double height, Location location) {
+        FakeServer.get();
+
+        this.name = name;
+        this.player = player;
+        this.width = width;
+        this.height = height;
+        this.location = location.clone();
+        this.entity = (Entity) Proxy.newProxyInstance(
+            Entity.class.getClassLoader(),
+            new Class<?>[] { player ? Player.class : Entity.class },
+            this::handleEntity
+        );
+    }
+
+    public static FakeEntity player(String name, Location location) {
+        return new FakeEntity(name, true, PLAYER_WIDTH, PLAYER_HEIGHT, location);
+    }
+
+    public static FakeEntity mob(String name, Location location) {
+        return new FakeEntity(name, false, MOB_WIDTH, MOB_HEIGHT, location);
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public Location getLocation() {
+        return location.clone();
+    }
+
+    public void setLocation(Location location) {
+        this.location = location.clone();
+    }
+
+    public int getPortalCooldown() {
+        return portalCooldown;
+    }
+
+    public void setPortalCooldown(int portalCooldown) {
+        this.portalCooldown = portalCooldown;
+    }
+
+    public BoundingBox getBoundingBox() {
+        Location current = location;
+
+        return new BoundingBox(
+            current.getX() - width / 2, current.getY(), current.getZ() - width / 2,
+            current.getX() + width / 2, current.getY() + height, current.getZ() + width / 2
+        );
+    }
+
+    private Object handleEntity(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "getUniqueId" -> uid;
+            case "getName" -> name;
+            case "getType" -> player ? EntityType.PLAYER : EntityType.ZOMBIE;
+            case "getWorld" -> location.getWorld();
+            case "getLocation" -> args == null || args.length == 0 ? getLocation() : copyLocation((Location) args[0]);
+            case "getBoundingBox" -> getBoundingBox();
+            case "getWidth" -> width;
+            case "getHeight" -> height;
+            case "getPortalCooldown" -> portalCooldown;
+            case "setPortalCooldown" -> {
+                portalCooldown = (int) args[0];
+                yield null;
+            }
+            case "teleport" -> {
+                setLocation(args[0] instanceof Entity target ? target.getLocation() : (Location) args[0]);
+                yield true;
+            }
+            case "teleportAsync" -> {
+                setLocation((Location) args[0]);
+                yield CompletableFuture.completedFuture(true);
+            }
+            case "getGameMode" -> GameMode.CREATIVE;
+            case "isValid", "isOnline" -> true;
+            case "hashCode" -> uid.hashCode();
+            case "toString" -> (player ? "FakePlayer{" : "FakeMob{") + "name=" + name + "}";
+            default -> FakeServer.handleObject(proxy, method, args, name);
+        };
+    }
+
+    private Location copyLocation(Location target) {
+        if (target == null)
+            return null;
+
+        Location current = location;
+
+        target.setWorld(current.getWorld());
+        target.set(current.getX(), current.getY(), current.getZ());
+        target.setYaw(current.getYaw());
+        target.setPitch(current.getPitch());
+
+        return target;
+    }
+
+}
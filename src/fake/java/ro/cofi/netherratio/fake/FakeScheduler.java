@@ -0,0 +1,193 @@
+package ro.cofi.netherratio.fake;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link BukkitScheduler} driven by hand: synchronous tasks only run when {@link #tick()} is called, on the calling
+ * thread, while asynchronous tasks run right away on a small pool. Tasks may be scheduled from any thread, and are
+ * cancelled through the {@link BukkitTask} they are scheduled as.
+ */
+public final class FakeScheduler {
+
+    private static final int ASYNC_THREADS = 2;
+
+    private final BukkitScheduler scheduler;
+    private final ExecutorService asyncPool = Executors.newFixedThreadPool(ASYNC_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "FakeScheduler-Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger nextTaskId = new AtomicInteger(1);
+    private final Queue<Task> scheduled = new ConcurrentLinkedQueue<>();
+    private final List<Task> pending = new ArrayList<>();
+
+    private volatile int currentTick;
+
+    FakeScheduler() {
+        scheduler = (BukkitScheduler) Proxy.newProxyInstance(
+            BukkitScheduler.class.getClassLoader(),
+            new Class<?>[] { BukkitScheduler.class },
+            this::handleScheduler
+        );
+    }
+
+    public BukkitScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Advance by one tick, and run the synchronous tasks due by then.
+     *
+     * @return The time spent running tasks, in nanoseconds.
+     */
+    public long tick() {
+        currentTick++;
+
+        for (Task task = scheduled.poll(); task != null; task = scheduled.poll())
+            pending.add(task);
+
+        List<Task> due = new ArrayList<>();
+
+        for (Iterator<Task> iterator = pending.iterator(); iterator.hasNext(); ) {
+            Task task = iterator.next();
+
+            if (task.isCancelled()) {
+                iterator.remove();
+                continue;
+            }
+
+            if (task.nextTick <= currentTick) {
+                iterator.remove();
+                due.add(task);
+            }
+        }
+
+        long elapsed = 0;
+
+        for (Task task : due) {
+            // cancelled by a task that ran before it
+            if (task.isCancelled())
+                continue;
+
+            long start = System.nanoTime();
+            task.runnable.run();
+            elapsed += System.nanoTime() - start;
+
+            if (task.period > 0 && !task.isCancelled()) {
+                task.nextTick = currentTick + task.period;
+                pending.add(task);
+            }
+        }
+
+        return elapsed;
+    }
+
+    /**
+     * Wait for the asynchronous tasks to finish, then stop the pool.
+     */
+    public void shutdown() {
+        asyncPool.shutdown();
+
+        try {
+            asyncPool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object handleScheduler(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "runTask" -> schedule(args, 0, 0);
+            case "runTaskLater" -> schedule(args, (long) args[2], 0);
+            case "runTaskTimer" -> schedule(args, (long) args[2], (long) args[3]);
+            case "runTaskAsynchronously" -> {
+                Task task = new Task(nextTaskId.getAndIncrement(), (Plugin) args[0], (Runnable) args[1], false);
+                asyncPool.execute(() -> {
+                    if (!task.isCancelled())
+                        task.runnable.run();
+                });
+
+                yield task;
+            }
+            default -> FakeServer.handleObject(proxy, method, args, "FakeScheduler");
+        };
+    }
+
+    private Task schedule(Object[] args, long delay, long period) {
+        if (!(args[1] instanceof Runnable runnable))
+            throw new UnsupportedOperationException("Only runnables can be scheduled");
+
+        Task task = new Task(nextTaskId.getAndIncrement(), (Plugin) args[0], runnable, true);
+        task.nextTick = currentTick + Math.max(1, delay);
+        task.period = period;
+
+        scheduled.add(task);
+
+        return task;
+    }
+
+    private static final class Task implements BukkitTask {
+
+        private final int taskId;
+        private final Plugin owner;
+        private final Runnable runnable;
+        private final boolean sync;
+
+        private volatile boolean cancelled;
+        private long nextTick;
+        private long period;
+
+        private Task(int taskId, Plugin owner, Runnable runnable, boolean sync) {
+            this.taskId = taskId;
+            this.owner = owner;
+            this.runnable = runnable;
+            this.sync = sync;
+        }
+
+        @Override
+        public int getTaskId() {
+            return taskId;
+        }
+
+        @Override
+        public Plugin getOwner() {
+            return owner;
+        }
+
+        @Override
+        public boolean isSync() {
+            return sync;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+package ro.cofi.netherratio.fake;
+
+import org.bukkit.Axis;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A headless {@link Server}, installed once into {@link Bukkit}, so that the plugin runs outside of a running server.
+ * It knows the worlds and the players it has been given, runs the tasks of its {@link FakeScheduler}, and ignores the
+ * events it is asked to call. Anything else answers with a default value: {@code null}, {@code false} or zero.
+ * <br><br>
+ * Block data only carries its material, and its axis for orientable blocks, which is all the plugin looks at.
+ */
+public final class FakeServer {
+
+    private static final Logger LOGGER = Logger.getLogger("FakeServer");
+
+    private static final BlockData[] SHARED_BLOCK_DATA = new BlockData[Material.values().length];
+
+    static {
+        for (Material material : Material.values())
+            SHARED_BLOCK_DATA[material.ordinal()] = createBlockData(material);
+    }
+
+    private static FakeServer instance;
+
+    private final Server server;
+    private final PluginManager pluginManager;
+    private final FakeScheduler scheduler = new FakeScheduler();
+
+    private final Map<String, FakeWorld> worlds = new ConcurrentHashMap<>();
+    private final Map<UUID, FakeEntity> players = new ConcurrentHashMap<>();
+
+    private volatile Thread primaryThread = Thread.currentThread();
+
+    private FakeServer() {
+        server = (Server) Proxy.newProxyInstance(
+            Server.class.getClassLoader(),
+            new Class<?>[] { Server.class },
+            this::handleServer
+        );
+
+        pluginManager = (PluginManager) Proxy.newProxyInstance(
+            PluginManager.class.getClassLoader(),
+            new Class<?>[] { PluginManager.class },
+            (proxy, method, args) -> handleObject(proxy, method, args, "FakePluginManager")
+        );
+    }
+
+    /**
+     * Install the fake server into {@link Bukkit}, unless it has been installed already.
+     */
+    public static synchronized FakeServer get() {
+        if (instance == null) {
+            instance = new FakeServer();
+            Bukkit.setServer(instance.server);
+        }
+
+        return instance;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public FakeScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void addWorld(FakeWorld world) {
+        worlds.put(world.getWorld().getName(), world);
+    }
+
+    public FakeWorld getWorld(World world) {
+        return worlds.get(world.getName());
+    }
+
+    public void addPlayer(FakeEntity player) {
+        players.put(player.getEntity().getUniqueId(), player);
+    }
+
+    public void removePlayer(FakeEntity player) {
+        players.remove(player.getEntity().getUniqueId());
+    }
+
+    /**
+     * The thread {@link Server#isPrimaryThread()} answers {@code true} on, the one that installed the server unless
+     * changed.
+     */
+    public void setPrimaryThread(Thread thread) {
+        primaryThread = thread;
+    }
+
+    /**
+     * @return A new block data of the given material, which may be modified.
+     */
+    public static BlockData createBlockData(Material material) {
+        boolean orientable = material == Material.NETHER_PORTAL;
+
+        return (BlockData) Proxy.newProxyInstance(
+            BlockData.class.getClassLoader(),
+            orientable ? new Class<?>[] { Orientable.class } : new Class<?>[] { BlockData.class },
+            new FakeBlockData(material, orientable ? Axis.X : null)
+        );
+    }
+
+    /**
+     * @return A block data of the given material, shared by every block of that material. Must not be modified.
+     */
+    public static BlockData getSharedBlockData(Material material) {
+        return SHARED_BLOCK_DATA[material.ordinal()];
+    }
+
+    private Object handleServer(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "getLogger" -> LOGGER;
+            case "getName", "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "fake";
+            case "createBlockData" -> args[0] instanceof Material material ? createBlockData(material) : null;
+            case "getPluginManager" -> pluginManager;
+            case "getScheduler" -> scheduler.getScheduler();
+            case "getCurrentTick" -> scheduler.getCurrentTick();
+            case "isPrimaryThread" -> Thread.currentThread() == primaryThread;
+            case "getWorlds" -> worlds.values().stream().map(FakeWorld::getWorld).toList();
+            case "getWorld" -> {
+                FakeWorld world = findWorld(args[0]);
+                yield world != null ? world.getWorld() : null;
+            }
+            case "getOnlinePlayers" -> players.values().stream().map(player -> (Player) player.getEntity()).toList();
+            case "getPlayer" -> {
+                FakeEntity player = args[0] instanceof UUID uid ? players.get(uid) : null;
+                yield player != null ? player.getEntity() : null;
+            }
+            default -> handleObject(proxy, method, args, "FakeServer");
+        };
+    }
+
+    private FakeWorld findWorld(Object key) {
+        if (key instanceof String name)
+            return worlds.get(name);
+
+        for (FakeWorld world : worlds.values())
+            if (world.getWorld().getUID().equals(key))
+                return world;
+
+        return null;
+    }
+
+    /**
+     * The answer of a fake to the methods it doesn't implement: identity for the methods of {@link Object}, a default
+     * value for anything else.
+     */
+    static Object handleObject(Object proxy, Method method, Object[] args, String name) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> name;
+            default -> defaultValue(method.getReturnType());
+        };
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class)
+            return null;
+
+        if (type == boolean.class)
+            return false;
+
+        if (type == char.class)
+            return '\0';
+
+        if (type == float.class)
+            return 0f;
+
+        if (type == double.class)
+            return 0d;
+
+        if (type == long.class)
+            return 0L;
+
+        if (type == short.class)
+            return (short) 0;
+
+        if (type == byte.class)
+            return (byte) 0;
+
+        return 0;
+    }
+
+    private static final class FakeBlockData implements InvocationHandler {
+
+        private final Material material;
+        private Axis axis;
+
+        private FakeBlockData(Material material, Axis axis) {
+            this.material = material;
+            this.axis = axis;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return switch (method.getName()) {
+                case "getMaterial" -> material;
+                case "getAxis" -> axis;
+                case "setAxis" -> {
+                    axis = (Axis) args[0];
+                    yield null;
+                }
+                case "getAxes" -> EnumSet.of(Axis.X, Axis.Z);
+                case "clone" -> {
+                    BlockData clone = createBlockData(material);
+                    if (clone instanceof Orientable orientable)
+                        orientable.setAxis(axis);
+
+                    yield clone;
+                }
+                case "matches", "equals" -> args[0] instanceof BlockData other && matches(other);
+                case "hashCode" -> Objects.hash(material, axis);
+                case "getAsString", "toString" -> material.getKey() + (axis != null ? "[axis=" + axis + "]" : "");
+                default -> defaultValue(method.getReturnType());
+            };
+        }
+
+        private boolean matches(BlockData other) {
+            if (other.getMaterial() != material)
+                return false;
+
+            return !(other instanceof Orientable orientable) || orientable.getAxis() == axis;
+        }
+
+    }
+
+}
@@ -0,0 +1,227 @@
+package ro.cofi.netherratio.fake;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import ro.cofi.netherratio.misc.BlockPos;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A headless {@link World} made of a {@link Terrain}, along with its {@link Block}s and {@link Chunk}s. Blocks that
+ * are set are kept on top of the terrain, and may be read from any thread. Every chunk is loaded, loading one completes
+ * right away, and snapshots read the live world. Anything else answers with a default value.
+ * <br><br>
+ * All of them are dynamic proxies: each call through them costs a reflective dispatch (and an argument array), just
+ * like each block read costs a lookup on a real server. Compare runs that read the same number of blocks, rather than
+ * reading their absolute numbers as what a server would do.
+ */
+public final class FakeWorld {
+
+    private final Terrain terrain;
+    private final String name;
+    private final UUID uid;
+    private final World world;
+
+    // blocks set on top of the terrain, by packed position
+    private final Map<Long, BlockData> changedBlocks = new ConcurrentHashMap<>();
+
+    public FakeWorld(String name, Terrain terrain) {
+        FakeServer.get();
+
+        this.terrain = terrain;
+        this.name = name;
+        this.uid = UUID.nameUUIDFromBytes(name.getBytes());
+        this.world = (World) Proxy.newProxyInstance(
+            World.class.getClassLoader(),
+            new Class<?>[] { World.class },
+            this::handleWorld
+        );
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public Terrain getTerrain() {
+        return terrain;
+    }
+
+    /**
+     * @return The block at the given position, or void air outside the world height, like a real world.
+     */
+    public Material getType(int x, int y, int z) {
+        if (y < terrain.getMinHeight() || y >= terrain.getMaxHeight())
+            return Material.VOID_AIR;
+
+        if (!changedBlocks.isEmpty()) {
+            BlockData changed = changedBlocks.get(BlockPos.pack(x, y, z));
+            if (changed != null)
+                return changed.getMaterial();
+        }
+
+        return terrain.getType(x, y, z);
+    }
+
+    public BlockData getBlockData(int x, int y, int z) {
+        if (y < terrain.getMinHeight() || y >= terrain.getMaxHeight())
+            return FakeServer.getSharedBlockData(Material.VOID_AIR);
+
+        if (!changedBlocks.isEmpty()) {
+            BlockData changed = changedBlocks.get(BlockPos.pack(x, y, z));
+            if (changed != null)
+                return changed;
+        }
+
+        return FakeServer.getSharedBlockData(terrain.getType(x, y, z));
+    }
+
+    public void setBlockData(int x, int y, int z, BlockData blockData) {
+        changedBlocks.put(BlockPos.pack(x, y, z), blockData);
+    }
+
+    public void setType(int x, int y, int z, Material material) {
+        setBlockData(x, y, z, FakeServer.getSharedBlockData(material));
+    }
+
+    private Object handleWorld(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "getName" -> name;
+            case "getUID" -> uid;
+            case "getEnvironment" -> terrain.getEnvironment();
+            case "getMinHeight" -> terrain.getMinHeight();
+            case "getMaxHeight" -> terrain.getMaxHeight();
+            case "getLogicalHeight" -> terrain.getMaxHeight() - terrain.getMinHeight();
+            case "getType" -> args[0] instanceof Location location ?
+                              getType(location.getBlockX(), location.getBlockY(), location.getBlockZ()) :
+                              getType((int) args[0], (int) args[1], (int) args[2]);
+            case "getBlockData" -> args[0] instanceof Location location ?
+                                   getBlockData(location.getBlockX(), location.getBlockY(), location.getBlockZ()) :
+                                   getBlockData((int) args[0], (int) args[1], (int) args[2]);
+            case "getBlockAt" -> args[0] instanceof Location location ?
+                                 createBlock(location.getBlockX(), location.getBlockY(), location.getBlockZ()) :
+                                 createBlock((int) args[0], (int) args[1], (int) args[2]);
+            case "getChunkAt" -> args[0] instanceof Location location ?
+                                 createChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4) :
+                                 createChunk((int) args[0], (int) args[1]);
+            case "getChunkAtAsync" -> CompletableFuture.completedFuture(
+                args[0] instanceof Location location ?
+                createChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4) :
+                createChunk((int) args[0], (int) args[1])
+            );
+            case "isChunkLoaded", "addPluginChunkTicket", "removePluginChunkTicket" -> true;
+            case "hashCode" -> uid.hashCode();
+            case "toString" -> "FakeWorld{name=" + name + ", terrain=" + terrain + "}";
+            default -> FakeServer.handleObject(proxy, method, args, name);
+        };
+    }
+
+    private Block createBlock(int x, int y, int z) {
+        return (Block) Proxy.newProxyInstance(
+            Block.class.getClassLoader(),
+            new Class<?>[] { Block.class },
+            (proxy, method, args) -> handleBlock(proxy, method, args, x, y, z)
+        );
+    }
+
+    private Object handleBlock(Object proxy, Method method, Object[] args, int x, int y, int z) {
+        return switch (method.getName()) {
+            case "getType" -> getType(x, y, z);
+            case "getBlockData" -> getBlockData(x, y, z);
+            case "setType" -> {
+                setType(x, y, z, (Material) args[0]);
+                yield null;
+            }
+            case "setBlockData" -> {
+                setBlockData(x, y, z, (BlockData) args[0]);
+                yield null;
+            }
+            case "isEmpty" -> getType(x, y, z).isAir();
+            case "isSolid", "isBuildable" -> getType(x, y, z).isSolid();
+            case "getX" -> x;
+            case "getY" -> y;
+            case "getZ" -> z;
+            case "getWorld" -> world;
+            case "getChunk" -> createChunk(x >> 4, z >> 4);
+            case "getLocation" -> args == null || args.length == 0 ?
+                                  new Location(world, x, y, z) :
+                                  copyLocation((Location) args[0], x, y, z);
+            case "equals" -> args[0] instanceof Block other &&
+                             other.getWorld() == world &&
+                             other.getX() == x && other.getY() == y && other.getZ() == z;
+            case "hashCode" -> Long.hashCode(BlockPos.pack(x, y, z));
+            case "toString" -> "FakeBlock{x=" + x + ", y=" + y + ", z=" + z + "}";
+            default -> FakeServer.handleObject(proxy, method, args, "FakeBlock");
+        };
+    }
+
+    private Location copyLocation(Location location, int x, int y, int z) {
+        if (location == null)
+            return null;
+
+        location.setWorld(world);
+        return location.set(x, y, z);
+    }
+
+    private Chunk createChunk(int chunkX, int chunkZ) {
+        return (Chunk) Proxy.newProxyInstance(
+            Chunk.class.getClassLoader(),
+            new Class<?>[] { Chunk.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getX" -> chunkX;
+                case "getZ" -> chunkZ;
+                case "getWorld" -> world;
+                case "getChunkKey" -> Chunk.getChunkKey(chunkX, chunkZ);
+                case "getBlock" -> createBlock(
+                    (chunkX << 4) + (int) args[0],
+                    (int) args[1],
+                    (chunkZ << 4) + (int) args[2]
+                );
+                case "getChunkSnapshot" -> createSnapshot(chunkX, chunkZ);
+                case "isLoaded", "addPluginChunkTicket", "removePluginChunkTicket" -> true;
+                case "equals" -> args[0] instanceof Chunk other &&
+                                 other.getWorld() == world &&
+                                 other.getX() == chunkX && other.getZ() == chunkZ;
+                case "hashCode" -> Long.hashCode(Chunk.getChunkKey(chunkX, chunkZ));
+                default -> FakeServer.handleObject(proxy, method, args, "FakeChunk");
+            }
+        );
+    }
+
+    /**
+     * Reads the live world rather than a copy of it, which is the same as long as nothing changes the chunk while the
+     * snapshot is read.
+     */
+    private ChunkSnapshot createSnapshot(int chunkX, int chunkZ) {
+        return (ChunkSnapshot) Proxy.newProxyInstance(
+            ChunkSnapshot.class.getClassLoader(),
+            new Class<?>[] { ChunkSnapshot.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getX" -> chunkX;
+                case "getZ" -> chunkZ;
+                case "getWorldName" -> name;
+                case "getBlockType" -> getType(
+                    (chunkX << 4) + (int) args[0],
+                    (int) args[1],
+                    (chunkZ << 4) + (int) args[2]
+                );
+                case "getBlockData" -> getBlockData(
+                    (chunkX << 4) + (int) args[0],
+                    (int) args[1],
+                    (chunkZ << 4) + (int) args[2]
+                );
+                default -> FakeServer.handleObject(proxy, method, args, "FakeChunkSnapshot");
+            }
+        );
+    }
+
+}
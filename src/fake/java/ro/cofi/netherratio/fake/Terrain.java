@@ -0,0 +1,146 @@
+package ro.cofi.netherratio.fake;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Synthetic terrains, computed from the block position alone, so that they can be as large as a search needs without
+ * storing anything. Each one stresses the placement search differently.
+ */
+public enum Terrain {
+
+    /**
+     * A nether: a bedrock floor and ceiling, netherrack carved into wide caves, and a lava sea at the bottom.
+     * Places for a portal exist, but they are scattered.
+     */
+    NETHER_CAVES(World.Environment.NETHER, 0, 256) {
+        @Override
+        public Material getType(int x, int y, int z) {
+            if (y == 0 || y == NETHER_CEILING)
+                return Material.BEDROCK;
+
+            if (y > NETHER_CEILING)
+                return Material.AIR;
+
+            double density = Math.sin(x * 0.09) + Math.sin(z * 0.07) + Math.sin(y * 0.15 + x * 0.02);
+            if (density < 0.6)
+                return Material.NETHERRACK;
+
+            return y <= NETHER_LAVA_LEVEL ? Material.LAVA : Material.AIR;
+        }
+    },
+
+    /**
+     * Stone all the way up, the worst case: no place fits a portal, so the whole search volume is scanned.
+     */
+    SOLID_STONE(World.Environment.NORMAL, -64, 320) {
+        @Override
+        public Material getType(int x, int y, int z) {
+            return y == getMinHeight() ? Material.BEDROCK : Material.STONE;
+        }
+    },
+
+    /**
+     * An ocean: water can't be replaced nor stood on, so portals only fit above its surface, floating.
+     */
+    OCEAN(World.Environment.NORMAL, -64, 320) {
+        @Override
+        public Material getType(int x, int y, int z) {
+            if (y == getMinHeight())
+                return Material.BEDROCK;
+
+            if (y <= OCEAN_FLOOR_LEVEL)
+                return Material.STONE;
+
+            return y <= SEA_LEVEL ? Material.WATER : Material.AIR;
+        }
+    },
+
+    /**
+     * Flat ground, with nothing on it: any place on the ground fits a portal.
+     */
+    FLAT(World.Environment.NORMAL, -64, 320) {
+        @Override
+        public Material getType(int x, int y, int z) {
+            if (y == getMinHeight())
+                return Material.BEDROCK;
+
+            return y < GROUND_LEVEL ? Material.STONE : Material.AIR;
+        }
+    },
+
+    /**
+     * Flat ground crowded with vanilla portals along the X axis, every {@value #PORTAL_SPACING} blocks on both axes,
+     * their inner blocks starting at {@link #PORTAL_ORIGIN_Y}. Most of the blocks near the ground belong to a portal.
+     */
+    PORTAL_FIELD(World.Environment.NORMAL, -64, 320) {
+        @Override
+        public Material getType(int x, int y, int z) {
+            if (y == getMinHeight())
+                return Material.BEDROCK;
+
+            if (y < PORTAL_ORIGIN_Y - 1)
+                return Material.STONE;
+
+            int localX = Math.floorMod(x, PORTAL_SPACING);
+            int localZ = Math.floorMod(z, PORTAL_SPACING);
+            int localY = y - PORTAL_ORIGIN_Y;
+
+            boolean inPortal = localZ == 0 &&
+                               localX <= PORTAL_WIDTH + 1 &&
+                               localY <= PORTAL_HEIGHT;
+
+            if (!inPortal)
+                return y < PORTAL_ORIGIN_Y ? Material.STONE : Material.AIR;
+
+            boolean isFrame = localX == 0 || localX == PORTAL_WIDTH + 1 || localY == -1 || localY == PORTAL_HEIGHT;
+            return isFrame ? Material.OBSIDIAN : Material.NETHER_PORTAL;
+        }
+    };
+
+    public static final int PORTAL_SPACING = 8;
+    public static final int PORTAL_WIDTH = 2;
+    public static final int PORTAL_HEIGHT = 3;
+    public static final int PORTAL_ORIGIN_Y = 64;
+    public static final int GROUND_LEVEL = 64; // the lowest air block of flat terrains
+
+    private static final int NETHER_CEILING = 127;
+    private static final int NETHER_LAVA_LEVEL = 31;
+    private static final int OCEAN_FLOOR_LEVEL = 30;
+    private static final int SEA_LEVEL = 62;
+
+    private final World.Environment environment;
+    private final int minHeight;
+    private final int maxHeight;
+
+    Terrain(World.Environment environment, int minHeight, int maxHeight) {
+        this.environment = environment;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * @return The block at the given position, inside the world height.
+     */
+    public abstract Material getType(int x, int y, int z);
+
+    public World.Environment getEnvironment() {
+        return environment;
+    }
+
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @return The highest Y level portals may be created at, excluded, the way the plugin would find it.
+     */
+    public int getCeiling() {
+        return environment == World.Environment.NETHER ? NETHER_CEILING : maxHeight;
+    }
+
+}
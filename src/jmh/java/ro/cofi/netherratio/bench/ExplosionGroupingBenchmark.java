@@ -0,0 +1,124 @@
+package ro.cofi.netherratio.bench;
+
+import org.bukkit.Axis;
+import org.openjdk.jmh.annotations.*;
+import ro.cofi.netherratio.misc.BlockComponents;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.LongHashSet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving the portal of every exploded portal block (what the explosion handler used to do) against
+ * grouping the exploded portal blocks into connected components first, and resolving each component once.
+ * <br><br>
+ * The world is a set of portal blocks: resolving a portal walks down, then west, until leaving the set, the same walk
+ * {@code getReferencePoint} does through the world. Each blast catches {@code portalCount} portals of 3 by 21 blocks,
+ * along with {@value #FILLER_PER_PORTAL} other blocks per portal. Divide the reported time by the blast size
+ * ({@code portalCount * (63 + FILLER_PER_PORTAL)}) to get the cost per exploded block, which should stay flat for the
+ * grouped handler as blasts grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExplosionGroupingBenchmark {
+
+    private static final int PORTAL_WIDTH = 3;
+    private static final int PORTAL_HEIGHT = 21;
+    private static final int PORTAL_SPACING = 8;
+    private static final int FILLER_PER_PORTAL = 256;
+
+    @Param({ "1", "16", "64" })
+    public int portalCount;
+
+    private LongHashSet world;
+    private long[] blast;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        world = new LongHashSet();
+        int blastSize = portalCount * (PORTAL_WIDTH * PORTAL_HEIGHT + FILLER_PER_PORTAL);
+        blast = new long[blastSize];
+        int cursor = 0;
+
+        // portals side by side along X, 64 blocks up
+        for (int portal = 0; portal < portalCount; portal++) {
+            int originX = portal * PORTAL_SPACING;
+
+            for (int x = 0; x < PORTAL_WIDTH; x++) {
+                for (int y = 0; y < PORTAL_HEIGHT; y++) {
+                    long block = BlockPos.pack(originX + x, 64 + y, 0);
+                    world.add(block);
+                    blast[cursor++] = block;
+                }
+            }
+        }
+
+        // the rest of the blast, around the portals, none of it portal blocks
+        int spanX = portalCount * PORTAL_SPACING;
+
+        while (cursor < blastSize) {
+            long block = BlockPos.pack(random.nextInt(spanX), 40 + random.nextInt(64), 1 + random.nextInt(16));
+            blast[cursor++] = block;
+        }
+
+        // explosions list blocks in no particular order
+        for (int i = blast.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = blast[i];
+            blast[i] = blast[j];
+            blast[j] = swap;
+        }
+    }
+
+    @Benchmark
+    public LongHashSet perBlock() {
+        LongHashSet referencePoints = new LongHashSet();
+
+        for (long block : blast)
+            if (world.contains(block))
+                referencePoints.add(resolve(block));
+
+        return referencePoints;
+    }
+
+    @Benchmark
+    public LongHashSet grouped() {
+        LongHashSet portalBlocks = new LongHashSet();
+
+        for (long block : blast)
+            if (world.contains(block))
+                portalBlocks.add(block);
+
+        LongHashSet referencePoints = new LongHashSet();
+
+        for (long block : BlockComponents.representatives(portalBlocks, Axis.X))
+            referencePoints.add(resolve(block));
+
+        return referencePoints;
+    }
+
+    /**
+     * The bottommost, westernmost block of the portal.
+     */
+    private long resolve(long block) {
+        int x = BlockPos.unpackX(block);
+        int y = BlockPos.unpackY(block);
+        int z = BlockPos.unpackZ(block);
+
+        while (world.contains(BlockPos.pack(x, y - 1, z)))
+            y--;
+
+        while (world.contains(BlockPos.pack(x - 1, y, z)))
+            x--;
+
+        return BlockPos.pack(x, y, z);
+    }
+
+}
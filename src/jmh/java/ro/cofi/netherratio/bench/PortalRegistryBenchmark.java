@@ -0,0 +1,142 @@
+package ro.cofi.netherratio.bench;
+
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.*;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.LongHashSet;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the legacy registry representation (YAML section keys, parsed into {@link Vector}s on demand) against the
+ * packed {@code long} registry.
+ * <br><br>
+ * Lookup cost is reported directly, in nanoseconds. For the footprint, run with the GC profiler
+ * ({@code -prof gc}): {@code gc.alloc.rate.norm} of the {@code build*} benchmarks, divided by {@code portalCount},
+ * is the number of bytes each portal costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortalRegistryBenchmark {
+
+    private static final int QUERY_COUNT = 1024; // power of 2
+    private static final int COORDINATE_RANGE = 30_000;
+
+    @Param({ "1000", "50000" })
+    public int portalCount;
+
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+
+    private int[] queryXs;
+    private int[] queryYs;
+    private int[] queryZs;
+
+    private Map<String, Boolean> legacyRegistry;
+    private LongHashSet packedRegistry;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        xs = new int[portalCount];
+        ys = new int[portalCount];
+        zs = new int[portalCount];
+
+        for (int i = 0; i < portalCount; i++) {
+            xs[i] = random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE;
+            ys[i] = random.nextInt(128);
+            zs[i] = random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE;
+        }
+
+        // half of the queries hit an existing portal, the other half miss
+        queryXs = new int[QUERY_COUNT];
+        queryYs = new int[QUERY_COUNT];
+        queryZs = new int[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int portal = random.nextInt(portalCount);
+
+            queryXs[i] = xs[portal] + (i % 2);
+            queryYs[i] = ys[portal];
+            queryZs[i] = zs[portal];
+        }
+
+        legacyRegistry = buildLegacy();
+        packedRegistry = buildPacked();
+    }
+
+    @Benchmark
+    public Map<String, Boolean> buildLegacy() {
+        Map<String, Boolean> registry = new LinkedHashMap<>();
+
+        for (int i = 0; i < portalCount; i++)
+            registry.put(xs[i] + "," + ys[i] + "," + zs[i], true);
+
+        return registry;
+    }
+
+    @Benchmark
+    public LongHashSet buildPacked() {
+        LongHashSet registry = new LongHashSet();
+
+        for (int i = 0; i < portalCount; i++)
+            registry.add(BlockPos.pack(xs[i], ys[i], zs[i]));
+
+        return registry;
+    }
+
+    @Benchmark
+    public boolean lookupLegacy() {
+        int query = nextQuery();
+        Vector vec = new Vector(queryXs[query], queryYs[query], queryZs[query]);
+
+        return legacyRegistry.containsKey(vec.getBlockX() + "," + vec.getBlockY() + "," + vec.getBlockZ());
+    }
+
+    @Benchmark
+    public boolean lookupPacked() {
+        int query = nextQuery();
+
+        return packedRegistry.contains(BlockPos.pack(queryXs[query], queryYs[query], queryZs[query]));
+    }
+
+    /**
+     * What every teleport used to do: turn every key into a {@link Vector}.
+     */
+    @Benchmark
+    public List<Vector> listLegacy() {
+        return legacyRegistry.keySet()
+            .stream()
+            .map(key -> {
+                String[] coords = key.split(",");
+                return new Vector(
+                    Integer.parseInt(coords[0]),
+                    Integer.parseInt(coords[1]),
+                    Integer.parseInt(coords[2])
+                );
+            })
+            .toList();
+    }
+
+    @Benchmark
+    public long[] listPacked() {
+        return packedRegistry.toArray();
+    }
+
+    private int nextQuery() {
+        return cursor++ & (QUERY_COUNT - 1);
+    }
+
+}
@@ -0,0 +1,99 @@
+package ro.cofi.netherratio.logic;
+
+import org.openjdk.jmh.annotations.*;
+import ro.cofi.netherratio.misc.BlockPos;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the portal closest to a destination: a scan over every portal of the world, as listed by
+ * {@link PortalLocationManager#getPortals}, against a query of the spatial index, with cells as large as the default
+ * minimum distance between overworld portals.
+ * <br><br>
+ * Lives in the plugin package, so that it can reach the index. Reported in operations per second, run with the GC
+ * profiler ({@code -prof gc}) for the allocation rate, which should be zero for both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestPortalBenchmark {
+
+    private static final int QUERY_COUNT = 1024; // power of 2
+    private static final int COORDINATE_RANGE = 30_000;
+    private static final int MIN_DISTANCE = 320;
+
+    @Param({ "1000", "50000" })
+    public int portalCount;
+
+    private long[] portals;
+    private PortalSpatialIndex index;
+
+    private double[] queryXs;
+    private double[] queryZs;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        portals = new long[portalCount];
+        index = new PortalSpatialIndex(MIN_DISTANCE);
+
+        for (int i = 0; i < portalCount; i++) {
+            portals[i] = BlockPos.pack(
+                random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE,
+                random.nextInt(128),
+                random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE
+            );
+
+            index.add(portals[i]);
+        }
+
+        // queries land near existing portals, as destinations of linked worlds usually do
+        queryXs = new double[QUERY_COUNT];
+        queryZs = new double[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            long portal = portals[random.nextInt(portalCount)];
+
+            queryXs[i] = BlockPos.unpackX(portal) + random.nextGaussian() * MIN_DISTANCE;
+            queryZs[i] = BlockPos.unpackZ(portal) + random.nextGaussian() * MIN_DISTANCE;
+        }
+    }
+
+    @Benchmark
+    public long scan() {
+        int query = cursor++ & (QUERY_COUNT - 1);
+        double x = queryXs[query];
+        double z = queryZs[query];
+
+        long nearest = BlockPos.NONE;
+        double nearestDistanceSquared = (double) MIN_DISTANCE * MIN_DISTANCE;
+
+        for (long position : portals) {
+            double deltaX = BlockPos.unpackX(position) - x;
+            double deltaZ = BlockPos.unpackZ(position) - z;
+            double distanceSquared = deltaX * deltaX + deltaZ * deltaZ;
+
+            if (distanceSquared < nearestDistanceSquared) {
+                nearest = position;
+                nearestDistanceSquared = distanceSquared;
+            }
+        }
+
+        return nearest;
+    }
+
+    @Benchmark
+    public long indexed() {
+        int query = cursor++ & (QUERY_COUNT - 1);
+
+        return index.findNearest(queryXs[query], queryZs[query], MIN_DISTANCE);
+    }
+
+}
@@ -0,0 +1,101 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.*;
+import ro.cofi.netherratio.FakePlugin;
+import ro.cofi.netherratio.fake.FakeWorld;
+import ro.cofi.netherratio.fake.Terrain;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The search for a place to create a destination portal at, with the default config, over each synthetic terrain:
+ * the whole search ({@code findValidLocation}), and the full check of a single candidate place
+ * ({@code isValidLocation}). Blocks are read straight from the terrain, like the search reads chunk snapshots.
+ * <br><br>
+ * Lives in the plugin package, so that it can hand the search a block source, and call it directly. Reported in
+ * operations per second, run with the GC profiler ({@code -prof gc}) for the allocation rate:
+ * {@code gc.alloc.rate.norm} is the number of bytes each search allocates. On {@link Terrain#SOLID_STONE}, the search finds nothing, and scans its whole volume.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementSearchBenchmark {
+
+    private static final int QUERY_COUNT = 64; // power of 2
+    private static final int COORDINATE_RANGE = 2_000;
+    private static final int DESTINATION_Y = 70;
+
+    @Param({ "NETHER_CAVES", "SOLID_STONE", "OCEAN", "PORTAL_FIELD" })
+    public Terrain terrain;
+
+    private FakePlugin fakePlugin;
+    private PortalLogicManager portalLogicManager;
+    private ConfigSnapshot config;
+    private BlockSource source;
+
+    private Location[] destinations;
+    private PortalLogicManager.PendingSearch[] searches;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        fakePlugin = new FakePlugin();
+        portalLogicManager = fakePlugin.getPortalLogicManager();
+        config = fakePlugin.getConfig();
+
+        FakeWorld fakeWorld = new FakeWorld("bench", terrain);
+        World world = fakeWorld.getWorld();
+        source = new TerrainBlockSource(fakeWorld);
+
+        Random random = new Random(42);
+        PortalGeometry referenceGeometry = new PortalGeometry(Axis.X, 2, 3);
+
+        destinations = new Location[QUERY_COUNT];
+        searches = new PortalLogicManager.PendingSearch[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int x = random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE;
+            int z = random.nextInt(2 * COORDINATE_RANGE) - COORDINATE_RANGE;
+
+            destinations[i] = new Location(world, x, DESTINATION_Y, z);
+
+            // the reference portal is never read by the search, only its axis
+            searches[i] = new PortalLogicManager.PendingSearch(
+                UUID.randomUUID(),
+                new Location(world, 0, DESTINATION_Y, 0), referenceGeometry,
+                destinations[i], true,
+                config, terrain.getCeiling()
+            );
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fakePlugin.close();
+    }
+
+    @Benchmark
+    public Object findValidLocation() {
+        return portalLogicManager.findValidLocation(source, searches[cursor++ & (QUERY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public Object isValidLocation() {
+        return portalLogicManager.isValidLocation(
+            source, config,
+            destinations[cursor++ & (QUERY_COUNT - 1)], Axis.X,
+            true, true
+        );
+    }
+
+}
@@ -0,0 +1,148 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.BoundingBox;
+import org.openjdk.jmh.annotations.*;
+import ro.cofi.netherratio.FakePlugin;
+import ro.cofi.netherratio.fake.FakeEntity;
+import ro.cofi.netherratio.fake.FakeWorld;
+import ro.cofi.netherratio.fake.Terrain;
+import ro.cofi.netherratio.misc.LocationUtil;
+import ro.cofi.netherratio.misc.VectorAxis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The portal walks run on every teleport, and every time an entity touches a portal: finding the frame of a portal,
+ * finding its reference point, listing the blocks of a volume, and fitting the entity into the destination portal.
+ * They run on a {@link Terrain#PORTAL_FIELD}, through the fake world, starting from a different portal each time.
+ * <br><br>
+ * Lives in the plugin package, so that it can call the walks directly. Reported in operations per second. Run with
+ * the GC profiler ({@code -prof gc}) for the allocation rate: {@code gc.alloc.rate.norm} is the number of bytes each
+ * operation allocates, fake blocks included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortalWalkBenchmark {
+
+    private static final int QUERY_COUNT = 1024; // power of 2
+    private static final int FIELD_SIZE = 64; // in portals, on each axis
+
+    private static final Set<Material> INNER_BLOCKS = Collections.singleton(Material.NETHER_PORTAL);
+
+    private FakePlugin fakePlugin;
+    private PortalLogicManager portalLogicManager;
+    private int heightMax;
+
+    // the bottom northwesternmost inner block of a portal, and its top southeasternmost one
+    private Location[] referencePoints;
+    private Location[] topCorners;
+    private Entity[] entities;
+
+    private PortalGeometry geometryAlongX;
+    private PortalGeometry geometryAlongZ;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        fakePlugin = new FakePlugin();
+        portalLogicManager = fakePlugin.getPortalLogicManager();
+        heightMax = fakePlugin.getConfig().getPortalSizeHeightMax();
+
+        World world = new FakeWorld("bench", Terrain.PORTAL_FIELD).getWorld();
+        Random random = new Random(42);
+
+        referencePoints = new Location[QUERY_COUNT];
+        topCorners = new Location[QUERY_COUNT];
+        entities = new Entity[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int x = (random.nextInt(FIELD_SIZE) - FIELD_SIZE / 2) * Terrain.PORTAL_SPACING + 1;
+            int z = (random.nextInt(FIELD_SIZE) - FIELD_SIZE / 2) * Terrain.PORTAL_SPACING;
+            int y = Terrain.PORTAL_ORIGIN_Y;
+
+            referencePoints[i] = new Location(world, x, y, z);
+            topCorners[i] = new Location(world, x + Terrain.PORTAL_WIDTH - 1, y + Terrain.PORTAL_HEIGHT - 1, z);
+
+            // a player somewhere inside the portal
+            double entityX = x + 0.3 + random.nextDouble() * (Terrain.PORTAL_WIDTH - 0.6);
+            Location location = new Location(world, entityX, y, z + 0.5, random.nextFloat() * 360, 0);
+            entities[i] = FakeEntity.mob("bench", location).getEntity();
+        }
+
+        geometryAlongX = new PortalGeometry(Axis.X, Terrain.PORTAL_WIDTH, Terrain.PORTAL_HEIGHT);
+        geometryAlongZ = new PortalGeometry(Axis.Z, Terrain.PORTAL_WIDTH, Terrain.PORTAL_HEIGHT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fakePlugin.close();
+    }
+
+    @Benchmark
+    public ReferencePoint findFrameLimit() {
+        return portalLogicManager.findFrameLimit(next(referencePoints), VectorAxis.Y, INNER_BLOCKS, heightMax);
+    }
+
+    @Benchmark
+    public ReferencePoint getReferencePoint() {
+        return portalLogicManager.getReferencePoint(next(topCorners));
+    }
+
+    /**
+     * The blocks touched by a player, as listed when looking for the portal it is in.
+     */
+    @Benchmark
+    public List<Location> getLocationsBetweenHitbox() {
+        Entity entity = next(entities);
+        BoundingBox boundingBox = entity.getBoundingBox();
+
+        return LocationUtil.getLocationsBetween(boundingBox.getMin(), boundingBox.getMax(), entity.getWorld());
+    }
+
+    /**
+     * The frame of a new portal, as listed when checking a candidate place for it.
+     */
+    @Benchmark
+    public List<Location> getLocationsBetweenFrame() {
+        Location referencePoint = next(referencePoints);
+
+        return LocationUtil.getLocationsBetween(
+            referencePoint.clone().subtract(VectorAxis.X).subtract(VectorAxis.Y),
+            referencePoint.clone().add(Terrain.PORTAL_WIDTH, Terrain.PORTAL_HEIGHT, 0)
+        );
+    }
+
+    /**
+     * Through a portal along the X axis, into one along the Z axis, which also rotates the entity.
+     */
+    @Benchmark
+    public Object adjustDestination() {
+        int index = cursor++ & (QUERY_COUNT - 1);
+        Location destination = referencePoints[(index + 1) & (QUERY_COUNT - 1)];
+
+        return portalLogicManager.adjustDestination(
+            entities[index],
+            referencePoints[index], geometryAlongX,
+            destination, geometryAlongZ
+        );
+    }
+
+    private <T> T next(T[] queries) {
+        return queries[cursor++ & (QUERY_COUNT - 1)];
+    }
+
+}
@@ -0,0 +1,30 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import ro.cofi.netherratio.fake.FakeServer;
+import ro.cofi.netherratio.fake.FakeWorld;
+
+/**
+ * Reads a fake world directly, the way {@link BlockSource.Snapshots} reads chunk snapshots: without a call through the
+ * world, so that the placement search is measured rather than the fake world.
+ */
+final class TerrainBlockSource implements BlockSource {
+
+    private final FakeWorld world;
+
+    TerrainBlockSource(FakeWorld world) {
+        this.world = world;
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        return world.getType(x, y, z);
+    }
+
+    @Override
+    public BlockData getBlockData(int x, int y, int z) {
+        return FakeServer.getSharedBlockData(world.getType(x, y, z));
+    }
+
+}
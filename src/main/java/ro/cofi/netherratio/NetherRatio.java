@@ -1,13 +1,20 @@
 package ro.cofi.netherratio;
 
 import org.bukkit.ChatColor;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import ro.cofi.netherratio.command.ReloadCommand;
+import ro.cofi.netherratio.command.StatsCommand;
 import ro.cofi.netherratio.listener.*;
 import ro.cofi.netherratio.logic.PortalLocationManager;
 import ro.cofi.netherratio.logic.PortalLogicManager;
+import ro.cofi.netherratio.logic.PortalPrefetcher;
+import ro.cofi.netherratio.logic.PortalVerifier;
+import ro.cofi.netherratio.metrics.PluginMetrics;
 import ro.cofi.netherratio.misc.ConfigManager;
 
+import java.io.File;
 import java.util.Objects;
 
 public final class NetherRatio extends JavaPlugin {
@@ -16,18 +23,63 @@ public final class NetherRatio extends JavaPlugin {
 
     private PortalLocationManager portalLocationManager;
     private PortalLogicManager portalLogicManager;
+    private PortalPrefetcher portalPrefetcher;
+    private PortalVerifier portalVerifier;
     private ConfigManager configManager;
+    private PluginMetrics metrics;
+
+    // created outside a server, where nothing can be registered with it: the callers invoke the listeners themselves
+    private final boolean headless;
+
+    public NetherRatio() {
+        headless = false;
+    }
+
+    /**
+     * Create the plugin outside a server, through the constructor {@link JavaPlugin} provides for that, e.g. on the
+     * fake server of the benchmarks and the simulator.
+     */
+    NetherRatio(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+        headless = true;
+    }
 
     @Override
     public void onEnable() {
         // save the config file from the jar into the server folder, in case it doesn't exist yet
         saveDefaultConfig();
 
-        // init fields
+        // init fields, worlds aren't loaded yet, anything tied to a world is set up as it loads (see WorldLoadListener)
+        metrics = new PluginMetrics();
+        configManager = new ConfigManager(this);
         portalLocationManager = new PortalLocationManager(this);
         portalLogicManager = new PortalLogicManager(this);
-        configManager = new ConfigManager(this);
+        portalPrefetcher = new PortalPrefetcher(this);
+        portalVerifier = new PortalVerifier(this);
+
+        if (!headless)
+            registerListenersAndCommands();
+
+        portalPrefetcher.start();
+        portalVerifier.start();
+    }
+
+    @Override
+    public void onDisable() {
+        portalPrefetcher.stop();
+        portalVerifier.stop();
+        portalLogicManager.cancelPortalSearches();
+        portalLocationManager.shutdown();
+    }
+
+    /**
+     * Enable or disable a plugin created outside a server, the way the server would.
+     */
+    void setHeadlessEnabled(boolean enabled) {
+        setEnabled(enabled);
+    }
 
+    private void registerListenersAndCommands() {
         // register listeners
         getServer().getPluginManager().registerEvents(new ExplodeListener(this), this);
         getServer().getPluginManager().registerEvents(new FirePlaceListener(this), this);
@@ -35,14 +87,15 @@ public final class NetherRatio extends JavaPlugin {
         getServer().getPluginManager().registerEvents(new PortalCreateListener(this), this);
         getServer().getPluginManager().registerEvents(new EntityTeleportListener(this), this);
         getServer().getPluginManager().registerEvents(new EntityPortalEnterListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldSaveListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldLoadListener(this), this);
+        getServer().getPluginManager().registerEvents(new ChunkLoadListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
+        getServer().getPluginManager().registerEvents(new EntityRemoveListener(this), this);
 
         // register commands
         Objects.requireNonNull(getServer().getPluginCommand("nrreload")).setExecutor(new ReloadCommand(this));
-    }
-
-    @Override
-    public void onDisable() {
-        portalLocationManager.saveConfig();
+        Objects.requireNonNull(getServer().getPluginCommand("nrstats")).setExecutor(new StatsCommand(this));
     }
 
     public PortalLocationManager getPortalLocationManager() {
@@ -53,10 +106,22 @@ public final class NetherRatio extends JavaPlugin {
         return portalLogicManager;
     }
 
+    public PortalPrefetcher getPortalPrefetcher() {
+        return portalPrefetcher;
+    }
+
+    public PortalVerifier getPortalVerifier() {
+        return portalVerifier;
+    }
+
     public ConfigManager getConfigManager() {
         return configManager;
     }
 
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
     public String prefixMessage(String message) {
         message = "[%s%s%s] %s".formatted(PLUGIN_NAME_COLOR, getName(), ChatColor.RESET, message);
         return ChatColor.translateAlternateColorCodes('&', message);
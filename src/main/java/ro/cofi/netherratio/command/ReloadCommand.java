@@ -21,8 +21,16 @@ public class ReloadCommand implements CommandExecutor {
     public boolean onCommand(
         @NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args
     ) {
-        plugin.getPortalLocationManager().reloadConfig();
+        // links are written under the fingerprint of the ratios and distances, write them before those change
+        plugin.getPortalLocationManager().writePendingChanges();
+
+        // the portal indices depend on the config, reload it first
         plugin.reloadConfig();
+        plugin.getConfigManager().reload();
+        plugin.getPortalLocationManager().reload();
+        plugin.getPortalLocationManager().scheduleFlushTask();
+        plugin.getPortalPrefetcher().start();
+        plugin.getPortalVerifier().start();
 
         String message = plugin.prefixMessage(RESPONSE);
 
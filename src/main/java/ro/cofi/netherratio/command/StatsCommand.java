@@ -0,0 +1,97 @@
+package ro.cofi.netherratio.command;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.metrics.Counter;
+import ro.cofi.netherratio.metrics.LatencyHistogram;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.metrics.PluginMetrics;
+
+import java.time.Duration;
+
+public class StatsCommand implements CommandExecutor {
+
+    private static final String RESET_ARGUMENT = "reset";
+    private static final String RESET_RESPONSE = "The stats have been reset.";
+    private static final String NOTHING_RECORDED = "&7No operation has been recorded yet.";
+
+    private final NetherRatio plugin;
+
+    public StatsCommand(NetherRatio plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Report the rate and the latency of every operation recorded since the plugin has been enabled (or the stats have
+     * been reset), then every counter. With the {@code reset} argument, reset the stats instead.
+     */
+    @Override
+    public boolean onCommand(
+        @NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args
+    ) {
+        PluginMetrics metrics = plugin.getMetrics();
+
+        if (args.length > 1 || (args.length == 1 && !args[0].equalsIgnoreCase(RESET_ARGUMENT)))
+            return false;
+
+        if (args.length == 1) {
+            metrics.reset();
+            sender.sendMessage(plugin.prefixMessage(RESET_RESPONSE));
+            return true;
+        }
+
+        double seconds = Math.max(1, metrics.getElapsed() / 1e9);
+
+        sender.sendMessage(plugin.prefixMessage(
+            "Stats over the last " + formatElapsed(metrics.getElapsed()) + " (rate, p50 / p99 / max):"
+        ));
+
+        boolean recorded = false;
+
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = metrics.getHistogram(operation);
+            long count = histogram.getCount();
+
+            if (count == 0)
+                continue;
+
+            recorded = true;
+            sender.sendMessage(plugin.prefixMessage("&e%s&r: %d, %.2f/s, %s / %s / %s ms".formatted(
+                operation.getDisplayName(),
+                count,
+                count / seconds,
+                formatMillis(histogram.getPercentile(50)),
+                formatMillis(histogram.getPercentile(99)),
+                formatMillis(histogram.getMax())
+            )));
+        }
+
+        if (!recorded)
+            sender.sendMessage(plugin.prefixMessage(NOTHING_RECORDED));
+
+        for (Counter counter : Counter.values()) {
+            long count = metrics.getCount(counter);
+
+            sender.sendMessage(plugin.prefixMessage("&b%s&r: %d, %.2f/s".formatted(
+                counter.getDisplayName(),
+                count,
+                count / seconds
+            )));
+        }
+
+        return true;
+    }
+
+    private static String formatMillis(long nanos) {
+        return "%.3f".formatted(nanos / 1e6);
+    }
+
+    private static String formatElapsed(long nanos) {
+        Duration duration = Duration.ofNanos(nanos);
+        return "%dh %02dm %02ds".formatted(duration.toHours(), duration.toMinutesPart(), duration.toSecondsPart());
+    }
+
+}
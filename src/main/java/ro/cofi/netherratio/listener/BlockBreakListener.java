@@ -14,7 +14,8 @@ import org.bukkit.util.Vector;
 import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.event.CustomBlockBreakEvent;
 import ro.cofi.netherratio.logic.ReferencePoint;
-import ro.cofi.netherratio.misc.Constants;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.misc.BlockPos;
 import ro.cofi.netherratio.misc.VectorAxis;
 
 import java.util.ArrayList;
@@ -33,28 +34,50 @@ public class BlockBreakListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPlayerBreak(BlockBreakEvent event) {
-        if (event instanceof CustomBlockBreakEvent)
-            return;
+        long start = System.nanoTime();
 
-        Block block = event.getBlock();
+        try {
+            if (event instanceof CustomBlockBreakEvent)
+                return;
 
-        if (!Constants.VALID_ENVIRONMENTS.contains(block.getWorld().getEnvironment()))
-            return;
+            Block block = event.getBlock();
 
-        List<ReferencePoint> referencePoints = new ArrayList<>();
+            if (!plugin.getConfigManager().isPortalWorld(block.getWorld()))
+                return;
+
+            // ask the block index first, only look at the world if it can't tell
+            List<ReferencePoint> referencePoints = plugin.getPortalLocationManager().findPortalsAt(
+                block.getWorld(),
+                BlockPos.pack(block.getX(), block.getY(), block.getZ())
+            );
+
+            if (referencePoints == null)
+                referencePoints = getFromWorld(block);
+
+            // no point in firing any events
+            if (referencePoints.isEmpty())
+                return;
+
+            plugin.getPortalLocationManager().markChanged();
 
+            // fire the event and check for cancellation
+            handleNewEvent(event, referencePoints);
+        } finally {
+            plugin.getMetrics().record(Operation.BLOCK_BREAK_LISTENER, start);
+        }
+    }
+
+    /**
+     * Look at the world around the broken block to find the portals it is part of.
+     */
+    private List<ReferencePoint> getFromWorld(Block block) {
         if (block.getType() == Material.NETHER_PORTAL)
-            referencePoints.addAll(getFromNetherPortal(block));
-        else if (block.getType() == plugin.getConfigManager().getFrameBlock() ||
-                 block.getType() == Constants.VANILLA_FRAME_BLOCK)
-            referencePoints.addAll(getFromFrame(block));
+            return getFromNetherPortal(block);
 
-        // no point in firing any events
-        if (referencePoints.isEmpty())
-            return;
+        if (plugin.getConfigManager().getSnapshot().isFrameBlock(block.getType()))
+            return getFromFrame(block);
 
-        // fire the event and check for cancellation
-        handleNewEvent(event, referencePoints);
+        return Collections.emptyList();
     }
 
     /**
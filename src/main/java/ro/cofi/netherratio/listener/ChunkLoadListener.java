@@ -0,0 +1,23 @@
+package ro.cofi.netherratio.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import ro.cofi.netherratio.NetherRatio;
+
+public class ChunkLoadListener extends AbstractListener {
+
+    public ChunkLoadListener(NetherRatio plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Captured whenever a chunk is loaded. Queue the portals registered in it for verification, since whatever happened
+     * to them while the chunk was unloaded went unnoticed.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        plugin.getPortalVerifier().queueChunk(event.getChunk());
+    }
+
+}
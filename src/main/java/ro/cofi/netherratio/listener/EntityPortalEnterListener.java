@@ -6,7 +6,7 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.entity.EntityPortalEnterEvent;
 import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.logic.ReferencePoint;
-import ro.cofi.netherratio.misc.Constants;
+import ro.cofi.netherratio.metrics.Operation;
 
 public class EntityPortalEnterListener extends AbstractListener {
 
@@ -19,28 +19,34 @@ public class EntityPortalEnterListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onEntityPortalEnter(EntityPortalEnterEvent event) {
-        Entity entity = event.getEntity();
+        long start = System.nanoTime();
 
-        if (entity instanceof Player)
-            return;
+        try {
+            Entity entity = event.getEntity();
 
-        if (!Constants.VALID_ENVIRONMENTS.contains(entity.getWorld().getEnvironment()))
-            return;
+            if (entity instanceof Player)
+                return;
 
-        // if the entity has portal cooldown, preserve it, so that the entity has to leave the portal for it to go away
-        int portalCooldown = entity.getPortalCooldown();
+            if (!plugin.getConfigManager().isPortalWorld(entity.getWorld()))
+                return;
 
-        if (portalCooldown > 0) {
-            entity.setPortalCooldown(portalCooldown + 1);
-            return;
-        }
+            // if the entity has portal cooldown, preserve it, so the entity has to leave the portal for it to go away
+            int portalCooldown = entity.getPortalCooldown();
+
+            if (portalCooldown > 0) {
+                entity.setPortalCooldown(portalCooldown + 1);
+                return;
+            }
 
-        // only intervene in custom nether portal teleportation
-        ReferencePoint referencePoint = plugin.getPortalLogicManager().getReferencePoint(entity);
-        if (referencePoint == null)
-            return;
+            // only intervene in custom nether portal teleportation; the same entities keep touching the same portals
+            ReferencePoint referencePoint = plugin.getPortalLogicManager().getCachedReferencePoint(entity);
+            if (referencePoint == null)
+                return;
 
-        plugin.getPortalLogicManager().handleEntityTeleport(entity, referencePoint);
+            plugin.getPortalLogicManager().handleEntityTeleport(entity, referencePoint);
+        } finally {
+            plugin.getMetrics().record(Operation.ENTITY_PORTAL_ENTER_LISTENER, start);
+        }
     }
 
 }
@@ -0,0 +1,22 @@
+package ro.cofi.netherratio.listener;
+
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.event.EventHandler;
+import ro.cofi.netherratio.NetherRatio;
+
+public class EntityRemoveListener extends AbstractListener {
+
+    public EntityRemoveListener(NetherRatio plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Captured whenever an entity leaves a world (death, despawn, unload, or a change of dimension). Forget whatever
+     * has been remembered about it.
+     */
+    @EventHandler
+    public void onEntityRemove(EntityRemoveFromWorldEvent event) {
+        plugin.getPortalLogicManager().forgetReferencePoint(event.getEntity().getUniqueId());
+    }
+
+}
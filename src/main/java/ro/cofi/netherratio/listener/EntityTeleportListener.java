@@ -10,6 +10,7 @@ import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.event.CustomEntityTeleportEvent;
 import ro.cofi.netherratio.event.CustomPlayerTeleportEvent;
 import ro.cofi.netherratio.logic.ReferencePoint;
+import ro.cofi.netherratio.metrics.Operation;
 import ro.cofi.netherratio.misc.Constants;
 
 import java.util.Objects;
@@ -28,17 +29,23 @@ public class EntityTeleportListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPlayerTeleport(PlayerTeleportEvent event) {
-        if (event instanceof CustomPlayerTeleportEvent)
-            return;
+        long start = System.nanoTime();
 
-        if (!Constants.VALID_ENVIRONMENTS.contains(event.getPlayer().getWorld().getEnvironment()))
-            return;
+        try {
+            if (event instanceof CustomPlayerTeleportEvent)
+                return;
 
-        // only intervene in nether portal teleportation
-        if (event.getCause() != PlayerTeleportEvent.TeleportCause.NETHER_PORTAL)
-            return;
+            if (!plugin.getConfigManager().isPortalWorld(event.getPlayer().getWorld()))
+                return;
 
-        handleEvent(event, event.getPlayer());
+            // only intervene in nether portal teleportation
+            if (event.getCause() != PlayerTeleportEvent.TeleportCause.NETHER_PORTAL)
+                return;
+
+            handleEvent(event, event.getPlayer());
+        } finally {
+            plugin.getMetrics().record(Operation.ENTITY_TELEPORT_LISTENER, start);
+        }
     }
 
     /**
@@ -49,25 +56,31 @@ public class EntityTeleportListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onEntityTeleport(EntityTeleportEvent event) {
-        if (event instanceof CustomEntityTeleportEvent)
-            return;
+        long start = System.nanoTime();
 
-        if (!Constants.VALID_ENVIRONMENTS.contains(event.getEntity().getWorld().getEnvironment()))
-            return;
+        try {
+            if (event instanceof CustomEntityTeleportEvent)
+                return;
 
-        // only intervene in nether portal teleportation
-        if (event.getTo() == null)
-            return;
+            if (!plugin.getConfigManager().isPortalWorld(event.getEntity().getWorld()))
+                return;
 
-        World from = event.getFrom().getWorld();
-        World to = event.getTo().getWorld();
+            // only intervene in nether portal teleportation
+            if (event.getTo() == null)
+                return;
 
-        if (Objects.equals(from, to) ||
-            !Constants.VALID_ENVIRONMENTS.contains(from.getEnvironment()) ||
-            !Constants.VALID_ENVIRONMENTS.contains(to.getEnvironment()))
-            return;
+            World from = event.getFrom().getWorld();
+            World to = event.getTo().getWorld();
+
+            if (Objects.equals(from, to) ||
+                !Constants.VALID_ENVIRONMENTS.contains(from.getEnvironment()) ||
+                !Constants.VALID_ENVIRONMENTS.contains(to.getEnvironment()))
+                return;
 
-        handleEvent(event, event.getEntity());
+            handleEvent(event, event.getEntity());
+        } finally {
+            plugin.getMetrics().record(Operation.ENTITY_TELEPORT_LISTENER, start);
+        }
     }
 
     public void handleEvent(Cancellable event, Entity entity) {
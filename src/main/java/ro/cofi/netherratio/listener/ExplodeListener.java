@@ -1,8 +1,11 @@
 package ro.cofi.netherratio.listener;
 
+import org.bukkit.Axis;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.Orientable;
 import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
@@ -12,10 +15,14 @@ import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.event.CustomBlockExplodeEvent;
 import ro.cofi.netherratio.event.CustomEntityExplodeEvent;
 import ro.cofi.netherratio.logic.ReferencePoint;
-import ro.cofi.netherratio.misc.Constants;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.misc.BlockComponents;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.LongHashSet;
 
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
 import java.util.function.Supplier;
 
 public class ExplodeListener extends AbstractListener {
@@ -29,17 +36,23 @@ public class ExplodeListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onBlockExplode(BlockExplodeEvent event) {
-        if (event instanceof CustomBlockExplodeEvent)
-            return;
-
-        if (!Constants.VALID_ENVIRONMENTS.contains(event.getBlock().getWorld().getEnvironment()))
-            return;
-
-        handleNewEvent(event.blockList(), () -> new CustomBlockExplodeEvent(
-            event.getBlock(),
-            event.blockList(),
-            event.getYield()
-        ));
+        long start = System.nanoTime();
+
+        try {
+            if (event instanceof CustomBlockExplodeEvent)
+                return;
+
+            if (!plugin.getConfigManager().isPortalWorld(event.getBlock().getWorld()))
+                return;
+
+            handleNewEvent(event.getBlock().getWorld(), event.blockList(), () -> new CustomBlockExplodeEvent(
+                event.getBlock(),
+                event.blockList(),
+                event.getYield()
+            ));
+        } finally {
+            plugin.getMetrics().record(Operation.EXPLODE_LISTENER, start);
+        }
     }
 
     /**
@@ -47,31 +60,65 @@ public class ExplodeListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onEntityExplode(EntityExplodeEvent event) {
-        if (event instanceof CustomEntityExplodeEvent)
-            return;
-
-        if (!Constants.VALID_ENVIRONMENTS.contains(event.getEntity().getWorld().getEnvironment()))
-            return;
-
-        handleNewEvent(event.blockList(), () -> new CustomEntityExplodeEvent(
-            event.getEntity(),
-            event.getLocation(),
-            event.blockList(),
-            event.getYield()
-        ));
+        long start = System.nanoTime();
+
+        try {
+            if (event instanceof CustomEntityExplodeEvent)
+                return;
+
+            if (!plugin.getConfigManager().isPortalWorld(event.getEntity().getWorld()))
+                return;
+
+            handleNewEvent(event.getEntity().getWorld(), event.blockList(), () -> new CustomEntityExplodeEvent(
+                event.getEntity(),
+                event.getLocation(),
+                event.blockList(),
+                event.getYield()
+            ));
+        } finally {
+            plugin.getMetrics().record(Operation.EXPLODE_LISTENER, start);
+        }
     }
 
-    private void handleNewEvent(List<Block> blocks, Supplier<Event> newEventSupplier) {
-        List<ReferencePoint> referencePoints = blocks.stream()
-            .filter(block -> block.getType() == Material.NETHER_PORTAL)
-            .map(block -> plugin.getPortalLogicManager().getReferencePoint(block.getLocation()))
-            .filter(Objects::nonNull)
-            .toList();
+    /**
+     * Every exploded block is looked up in the block index. Only the blocks the index can't tell about are looked at
+     * in the world, and only if they are portal blocks: these are grouped into blocks touching each other within the
+     * plane of their portal first, and a single portal lookup is done per group, instead of one per block.
+     */
+    private void handleNewEvent(World world, List<Block> blocks, Supplier<Event> newEventSupplier) {
+        Set<ReferencePoint> referencePoints = new HashSet<>();
+        LongHashSet unindexedPortalBlocksX = new LongHashSet();
+        LongHashSet unindexedPortalBlocksZ = new LongHashSet();
+
+        for (Block block : blocks) {
+            long position = BlockPos.pack(block.getX(), block.getY(), block.getZ());
+            List<ReferencePoint> indexed = plugin.getPortalLocationManager().findPortalsAt(world, position);
+
+            if (indexed != null) {
+                referencePoints.addAll(indexed);
+                continue;
+            }
+
+            if (block.getType() != Material.NETHER_PORTAL || !(block.getBlockData() instanceof Orientable orientable))
+                continue;
+
+            if (orientable.getAxis() == Axis.X)
+                unindexedPortalBlocksX.add(position);
+            else
+                unindexedPortalBlocksZ.add(position);
+        }
+
+        // within its plane, the frame separates a portal from the others, but parallel portals may be built back to
+        // back, their portal blocks touching across the plane, so only blocks along the same axis are grouped
+        addReferencePoints(world, BlockComponents.representatives(unindexedPortalBlocksX, Axis.X), referencePoints);
+        addReferencePoints(world, BlockComponents.representatives(unindexedPortalBlocksZ, Axis.Z), referencePoints);
 
         // no point in firing any event
         if (referencePoints.isEmpty())
             return;
 
+        plugin.getPortalLocationManager().markChanged();
+
         // fire a custom event - if it gets cancelled, don't explode the blocks
         Event newEvent = newEventSupplier.get();
         Bukkit.getPluginManager().callEvent(newEvent);
@@ -84,4 +131,15 @@ public class ExplodeListener extends AbstractListener {
             plugin.getPortalLocationManager().deletePortal(referencePoint.location(), referencePoint.isCustom());
     }
 
+    private void addReferencePoints(World world, long[] portalBlocks, Set<ReferencePoint> referencePoints) {
+        for (long portalBlock : portalBlocks) {
+            ReferencePoint referencePoint = plugin.getPortalLogicManager().getReferencePoint(
+                BlockPos.toLocation(world, portalBlock)
+            );
+
+            if (referencePoint != null)
+                referencePoints.add(referencePoint);
+        }
+    }
+
 }
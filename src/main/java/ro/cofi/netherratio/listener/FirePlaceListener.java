@@ -12,7 +12,10 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.Damageable;
 import org.bukkit.util.Vector;
 import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.logic.PortalGeometry;
 import ro.cofi.netherratio.logic.ReferencePoint;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
 import ro.cofi.netherratio.misc.Constants;
 import ro.cofi.netherratio.misc.LocationUtil;
 import ro.cofi.netherratio.misc.VectorAxis;
@@ -40,58 +43,68 @@ public class FirePlaceListener extends AbstractListener {
      */
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onFirePlace(PlayerInteractEvent event) {
-        if (event.getAction() != Action.RIGHT_CLICK_BLOCK)
-            return;
+        long start = System.nanoTime();
 
-        Block clickedBlock = event.getClickedBlock();
-        if (clickedBlock == null)
-            return;
+        try {
+            if (event.getAction() != Action.RIGHT_CLICK_BLOCK)
+                return;
 
-        // check valid dimension
-        World world = clickedBlock.getWorld();
-        if (!Constants.VALID_ENVIRONMENTS.contains(world.getEnvironment()))
-            return;
+            Block clickedBlock = event.getClickedBlock();
+            if (clickedBlock == null)
+                return;
 
-        // only care about frame blocks
-        if (clickedBlock.getType() != plugin.getConfigManager().getFrameBlock() &&
-            clickedBlock.getType() != Constants.VANILLA_FRAME_BLOCK)
-            return;
+            // check valid dimension
+            World world = clickedBlock.getWorld();
+            if (!plugin.getConfigManager().isPortalWorld(world))
+                return;
 
-        // only care about items you can light up a portal with
-        ItemStack item = event.getItem();
-        if (item == null)
-            return;
+            // only care about frame blocks
+            ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+            if (!config.isFrameBlock(clickedBlock.getType()))
+                return;
 
-        if (!TRIGGER_ITEMS.containsKey(item.getType()))
-            return;
+            // only care about items you can light up a portal with
+            ItemStack item = event.getItem();
+            if (item == null)
+                return;
 
-        Block litUpBlock = clickedBlock.getLocation().add(event.getBlockFace().getDirection()).getBlock();
+            if (!TRIGGER_ITEMS.containsKey(item.getType()))
+                return;
 
-        PortalFrameData frameData = computePortalBlocks(litUpBlock, world);
-        if (frameData == null)
-            return;
+            Block litUpBlock = clickedBlock.getLocation().add(event.getBlockFace().getDirection()).getBlock();
 
-        // these locations must be replaceable by a literal portal block
-        for (Location location : frameData.getInnerLocations())
-            if (!Constants.REPLACEABLE_BLOCKS.contains(world.getBlockAt(location).getType()))
+            PortalFrameData frameData = computePortalBlocks(litUpBlock, world);
+            if (frameData == null)
                 return;
 
-        Player player = event.getPlayer();
+            // these locations must be replaceable by a literal portal block
+            for (Location location : frameData.getInnerLocations())
+                if (!config.isReplaceable(world.getBlockAt(location).getType()))
+                    return;
 
-        // cancel the event to not interfere with item consumption - manually consume it
-        event.setCancelled(true);
-        world.playSound(litUpBlock.getLocation(), TRIGGER_ITEMS.get(item.getType()), SoundCategory.BLOCKS, 1, 1);
-        consumeItem(player, item);
+            Player player = event.getPlayer();
 
-        // everything is validated, perform the placement
-        Orientable blockData = (Orientable) Material.NETHER_PORTAL.createBlockData();
-        blockData.setAxis(frameData.getHorizontalAxis());
+            // cancel the event to not interfere with item consumption - manually consume it
+            event.setCancelled(true);
+            world.playSound(litUpBlock.getLocation(), TRIGGER_ITEMS.get(item.getType()), SoundCategory.BLOCKS, 1, 1);
+            consumeItem(player, item);
 
-        for (Location location : frameData.getInnerLocations())
-            location.getBlock().setBlockData(blockData);
+            // everything is validated, perform the placement
+            Orientable blockData = (Orientable) Material.NETHER_PORTAL.createBlockData();
+            blockData.setAxis(frameData.getHorizontalAxis());
 
-        // save for lookups
-        plugin.getPortalLocationManager().savePortal(frameData.getBottomLeft(), frameData.isCustom());
+            for (Location location : frameData.getInnerLocations())
+                location.getBlock().setBlockData(blockData);
+
+            // save for lookups
+            plugin.getPortalLocationManager().savePortal(
+                frameData.getBottomLeft(),
+                frameData.getGeometry(),
+                frameData.isCustom()
+            );
+        } finally {
+            plugin.getMetrics().record(Operation.FIRE_PLACE_LISTENER, start);
+        }
     }
 
     /**
@@ -122,10 +135,11 @@ public class FirePlaceListener extends AbstractListener {
     private PortalFrameData computePortalBlocks(Block blockPlaced, World world) {
         Location origin = blockPlaced.getLocation().toBlockLocation();
 
-        int minHeight = plugin.getConfigManager().getPortalSizeHeightMin();
-        int maxHeight = plugin.getConfigManager().getPortalSizeHeightMax();
-        int minWidth = plugin.getConfigManager().getPortalSizeWidthMin();
-        int maxWidth = plugin.getConfigManager().getPortalSizeWidthMax();
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        int minHeight = config.getPortalSizeHeightMin();
+        int maxHeight = config.getPortalSizeHeightMax();
+        int minWidth = config.getPortalSizeWidthMin();
+        int maxWidth = config.getPortalSizeWidthMax();
 
         // find vertical limits
         ReferencePoint bottom = plugin.getPortalLogicManager().findFrameLimit(
@@ -191,9 +205,7 @@ public class FirePlaceListener extends AbstractListener {
 
         Vector direction = VectorAxis.of(chosenAxis);
 
-        Material frameBlock = left.isCustom() ?
-                              plugin.getConfigManager().getFrameBlock() :
-                              Constants.VANILLA_FRAME_BLOCK;
+        Material frameBlock = config.getFrameBlock(left.isCustom());
 
         // check all frames
         if (!checkFrame(bottomLeft, bottomRight, VectorAxis.NY, frameBlock) ||
@@ -241,6 +253,7 @@ public class FirePlaceListener extends AbstractListener {
         private final List<Location> innerLocations;
         private final Location bottomLeft;
         private final Axis horizontalAxis;
+        private final PortalGeometry geometry;
         private final boolean isCustom;
 
         public PortalFrameData(Location bottomLeft, Location topRight, Axis horizontalAxis, boolean isCustom) {
@@ -248,6 +261,14 @@ public class FirePlaceListener extends AbstractListener {
             this.horizontalAxis = horizontalAxis;
             this.bottomLeft = bottomLeft;
             this.isCustom = isCustom;
+
+            this.geometry = new PortalGeometry(
+                horizontalAxis,
+                horizontalAxis == Axis.X ?
+                topRight.getBlockX() - bottomLeft.getBlockX() + 1 :
+                topRight.getBlockZ() - bottomLeft.getBlockZ() + 1,
+                topRight.getBlockY() - bottomLeft.getBlockY() + 1
+            );
         }
 
         public List<Location> getInnerLocations() {
@@ -262,6 +283,10 @@ public class FirePlaceListener extends AbstractListener {
             return horizontalAxis;
         }
 
+        public PortalGeometry getGeometry() {
+            return geometry;
+        }
+
         public boolean isCustom() {
             return isCustom;
         }
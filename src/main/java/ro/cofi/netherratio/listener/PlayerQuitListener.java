@@ -0,0 +1,21 @@
+package ro.cofi.netherratio.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.player.PlayerQuitEvent;
+import ro.cofi.netherratio.NetherRatio;
+
+public class PlayerQuitListener extends AbstractListener {
+
+    public PlayerQuitListener(NetherRatio plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Captured whenever a player leaves the server. Drop the destination portal search they may have been waiting for.
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getPortalLogicManager().cancelPortalSearch(event.getPlayer().getUniqueId());
+    }
+
+}
@@ -2,10 +2,12 @@ package ro.cofi.netherratio.listener;
 
 import org.bukkit.entity.Entity;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.world.PortalCreateEvent;
 import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.event.CustomPortalCreateEvent;
 import ro.cofi.netherratio.logic.ReferencePoint;
+import ro.cofi.netherratio.metrics.Operation;
 
 public class PortalCreateListener extends AbstractListener {
 
@@ -13,6 +15,14 @@ public class PortalCreateListener extends AbstractListener {
         super(plugin);
     }
 
+    /**
+     * Captured once any portal has been created, by whatever means. Portal lookups made before may be outdated.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPortalCreated(PortalCreateEvent event) {
+        plugin.getPortalLocationManager().markChanged();
+    }
+
     /**
      * Captured every time a portal pair is created. Normally, when a player touches a portal block that doesn't even
      * have a frame, the game attempts to create a vanilla nether portal in the other dimension. This event gets
@@ -21,26 +31,32 @@ public class PortalCreateListener extends AbstractListener {
      */
     @EventHandler(ignoreCancelled = true)
     public void onPortalCreate(PortalCreateEvent event) {
-        if (event instanceof CustomPortalCreateEvent)
-            return;
+        long start = System.nanoTime();
+
+        try {
+            if (event instanceof CustomPortalCreateEvent)
+                return;
 
-        // only intervene in portal pairing
-        if (event.getReason() != PortalCreateEvent.CreateReason.NETHER_PAIR)
-            return;
+            // only intervene in portal pairing
+            if (event.getReason() != PortalCreateEvent.CreateReason.NETHER_PAIR)
+                return;
 
-        Entity entity = event.getEntity();
-        if (entity == null)
-            return;
+            Entity entity = event.getEntity();
+            if (entity == null)
+                return;
 
-        // only intervene if the portal type is custom
-        ReferencePoint referencePoint = plugin.getPortalLogicManager().getReferencePoint(entity);
-        if (referencePoint == null)
-            return;
+            // only intervene if the portal type is custom
+            ReferencePoint referencePoint = plugin.getPortalLogicManager().getReferencePoint(entity);
+            if (referencePoint == null)
+                return;
 
-        // here, what we want to do is simply cancel the event, because we want to handle it differently
-        event.setCancelled(true);
+            // here, what we want to do is simply cancel the event, because we want to handle it differently
+            event.setCancelled(true);
 
-        plugin.getPortalLogicManager().handleEntityTeleport(entity, referencePoint);
+            plugin.getPortalLogicManager().handleEntityTeleport(entity, referencePoint);
+        } finally {
+            plugin.getMetrics().record(Operation.PORTAL_CREATE_LISTENER, start);
+        }
     }
 
 }
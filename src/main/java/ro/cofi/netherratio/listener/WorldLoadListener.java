@@ -0,0 +1,45 @@
+package ro.cofi.netherratio.listener;
+
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import ro.cofi.netherratio.NetherRatio;
+
+import java.util.List;
+
+public class WorldLoadListener extends AbstractListener {
+
+    public WorldLoadListener(NetherRatio plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Captured whenever a world is loaded after startup. Load its portal data, if it is part of a world pair. If that
+     * world completes the default world pair, the other world of the pair is loaded along with it.
+     */
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        List<World> worlds = plugin.getConfigManager().resolveDefaultWorldPair() ?
+                             plugin.getServer().getWorlds() :
+                             List.of(event.getWorld());
+
+        for (World world : worlds) {
+            plugin.getPortalLocationManager().loadWorld(world);
+            plugin.getPortalLogicManager().prepareWorld(world);
+        }
+    }
+
+    /**
+     * Captured whenever a world is unloaded. Write its pending portal data, then drop it from memory, so that unloaded
+     * worlds don't hold any.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        plugin.getPortalLogicManager().forgetWorld(event.getWorld());
+        plugin.getPortalPrefetcher().forgetWorld(event.getWorld());
+        plugin.getPortalLocationManager().unloadWorld(event.getWorld());
+    }
+
+}
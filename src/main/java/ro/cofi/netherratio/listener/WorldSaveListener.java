@@ -0,0 +1,22 @@
+package ro.cofi.netherratio.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.world.WorldSaveEvent;
+import ro.cofi.netherratio.NetherRatio;
+
+public class WorldSaveListener extends AbstractListener {
+
+    public WorldSaveListener(NetherRatio plugin) {
+        super(plugin);
+    }
+
+    /**
+     * Captured whenever a world is saved (autosave, /save-all). Persist the portal data alongside it.
+     * Multiple worlds saving in a row only result in a single write.
+     */
+    @EventHandler
+    public void onWorldSave(WorldSaveEvent event) {
+        plugin.getPortalLocationManager().flush();
+    }
+
+}
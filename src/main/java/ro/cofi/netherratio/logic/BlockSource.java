@@ -0,0 +1,99 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import ro.cofi.netherratio.misc.LongObjectHashMap;
+
+/**
+ * Read-only access to blocks, for the portal placement search. The search doesn't care whether it reads a live world
+ * (main thread only) or snapshots of it (any thread).
+ */
+interface BlockSource {
+
+    Material getType(int x, int y, int z);
+
+    BlockData getBlockData(int x, int y, int z);
+
+    /**
+     * Solid materials stand in for buildable blocks, in every source: snapshots don't carry the block states needed by
+     * {@link org.bukkit.block.Block#isBuildable()}, and a place found in snapshots must pass the same check when it
+     * is checked again in the live world.
+     *
+     * @return Whether a portal platform may stand on this block.
+     */
+    default boolean isBuildable(int x, int y, int z) {
+        return getType(x, y, z).isSolid();
+    }
+
+    /**
+     * Reads the live world. Only usable on the main thread, and loads chunks as needed.
+     */
+    static BlockSource of(World world) {
+        return new BlockSource() {
+            @Override
+            public Material getType(int x, int y, int z) {
+                return world.getType(x, y, z);
+            }
+
+            @Override
+            public BlockData getBlockData(int x, int y, int z) {
+                return world.getBlockData(x, y, z);
+            }
+        };
+    }
+
+    /**
+     * Reads chunk snapshots, thus safe to use off the main thread. Blocks in chunks that haven't been captured read
+     * as {@link Material#BARRIER}, which is neither replaceable nor a frame, so the search never picks them. Blocks
+     * outside the world height read as {@link Material#VOID_AIR}, just like in the live world.
+     */
+    final class Snapshots implements BlockSource {
+
+        private static final BlockData NOT_CAPTURED = Material.BARRIER.createBlockData();
+        private static final BlockData VOID = Material.VOID_AIR.createBlockData();
+
+        private final int minHeight;
+        private final int maxHeight;
+        private final LongObjectHashMap<ChunkSnapshot> chunks = new LongObjectHashMap<>();
+
+        // only read by the thread that reads the snapshots
+        private long blocksRead;
+
+        Snapshots(World world) {
+            minHeight = world.getMinHeight();
+            maxHeight = world.getMaxHeight();
+        }
+
+        void add(ChunkSnapshot snapshot) {
+            chunks.put(chunkKey(snapshot.getX(), snapshot.getZ()), snapshot);
+        }
+
+        @Override
+        public Material getType(int x, int y, int z) {
+            return getBlockData(x, y, z).getMaterial();
+        }
+
+        @Override
+        public BlockData getBlockData(int x, int y, int z) {
+            blocksRead++;
+
+            if (y < minHeight || y >= maxHeight)
+                return VOID;
+
+            ChunkSnapshot chunk = chunks.get(chunkKey(x >> 4, z >> 4));
+            return chunk == null ? NOT_CAPTURED : chunk.getBlockData(x & 15, y, z & 15);
+        }
+
+        long getBlocksRead() {
+            return blocksRead;
+        }
+
+        static long chunkKey(int chunkX, int chunkZ) {
+            return ((long) chunkX << Integer.SIZE) | (chunkZ & 0xFFFFFFFFL);
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import ro.cofi.netherratio.misc.LongLongHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Plugin chunk tickets, counted. The server keeps a single ticket per plugin and chunk, so a chunk held for several
+ * reasons at once (a destination search and a prefetch, or two overlapping searches) must keep its ticket until the
+ * last of them lets go. Main thread only.
+ */
+final class ChunkTickets {
+
+    private final Plugin plugin;
+
+    // chunk key to the number of holders, per world
+    private final Map<UUID, LongLongHashMap> holders = new HashMap<>();
+
+    ChunkTickets(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Keep a loaded chunk loaded, until released as many times as it has been held.
+     */
+    void hold(Chunk chunk) {
+        LongLongHashMap counts = holders.computeIfAbsent(chunk.getWorld().getUID(), uid -> new LongLongHashMap());
+        long key = chunk.getChunkKey();
+
+        if (counts.put(key, counts.get(key, 0) + 1, 0) == 0)
+            chunk.addPluginChunkTicket(plugin);
+    }
+
+    void release(Chunk chunk) {
+        release(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    void release(World world, int chunkX, int chunkZ) {
+        LongLongHashMap counts = holders.get(world.getUID());
+        if (counts == null)
+            return;
+
+        long key = Chunk.getChunkKey(chunkX, chunkZ);
+        long count = counts.get(key, 0);
+
+        if (count > 1) {
+            counts.put(key, count - 1, 0);
+            return;
+        }
+
+        if (count == 1) {
+            counts.remove(key, 0);
+            world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+        }
+    }
+
+    /**
+     * Drop the counts of a world that is being unloaded, its tickets go with it.
+     */
+    void forget(World world) {
+        holders.remove(world.getUID());
+    }
+
+}
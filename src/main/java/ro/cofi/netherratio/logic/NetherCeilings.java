@@ -0,0 +1,137 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import ro.cofi.netherratio.NetherRatio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * The Y level of the bedrock ceiling of each nether world, above which no portal is created.
+ * <br><br>
+ * A ceiling is found by scanning a few columns of a chunk snapshot off the main thread, so that no chunk is ever loaded
+ * synchronously for it, and worlds of non-standard heights still get the right value. Results are kept in
+ * {@value FILE_NAME}, by world UID and seed, so that a world is only scanned again once it has been regenerated.
+ * Until the scan of a world completes, the top of its logical height stands in for its ceiling.
+ */
+final class NetherCeilings {
+
+    private static final String FILE_NAME = "nether_ceilings.yml";
+    private static final String SEED_KEY = "seed";
+    private static final String CEILING_KEY = "ceiling";
+
+    // the columns scanned in the chunk at the origin, on both axes
+    private static final int[] SAMPLED_COLUMNS = { 1, 5, 9, 13 };
+
+    private final NetherRatio plugin;
+    private final File file;
+    private final YamlConfiguration data;
+
+    private final Map<UUID, Integer> ceilings = new HashMap<>();
+    private final Set<UUID> scanning = new HashSet<>();
+
+    NetherCeilings(NetherRatio plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), FILE_NAME);
+        this.data = YamlConfiguration.loadConfiguration(file);
+    }
+
+    /**
+     * Get the ceiling of a nether world, starting its scan if it hasn't been scanned yet. Never blocks.
+     */
+    int getCeiling(World world) {
+        Integer ceiling = ceilings.get(world.getUID());
+        if (ceiling != null)
+            return ceiling;
+
+        // found before, unless the world has been regenerated since
+        String key = world.getUID().toString();
+
+        if (data.isInt(key + "." + CEILING_KEY) && data.getLong(key + "." + SEED_KEY) == world.getSeed()) {
+            int storedCeiling = data.getInt(key + "." + CEILING_KEY);
+            ceilings.put(world.getUID(), storedCeiling);
+
+            return storedCeiling;
+        }
+
+        scan(world);
+
+        return world.getMinHeight() + world.getLogicalHeight();
+    }
+
+    /**
+     * Forget the ceiling of a world that is being unloaded. It stays stored on the disk.
+     */
+    void forget(World world) {
+        ceilings.remove(world.getUID());
+    }
+
+    private void scan(World world) {
+        if (!scanning.add(world.getUID()))
+            return;
+
+        int minHeight = world.getMinHeight();
+        int maxHeight = world.getMaxHeight();
+
+        world.getChunkAtAsync(0, 0).whenComplete((chunk, throwable) -> {
+            if (throwable != null) {
+                scanning.remove(world.getUID());
+                plugin.getLogger().severe(plugin.prefixMessage(
+                    "Could not load a chunk of " + world.getName() + " to find its ceiling: " + throwable.getMessage()
+                ));
+                return;
+            }
+
+            ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                int ceiling = findCeiling(snapshot, minHeight, maxHeight);
+
+                if (plugin.isEnabled())
+                    plugin.getServer().getScheduler().runTask(plugin, () -> store(world, ceiling));
+            });
+        });
+    }
+
+    /**
+     * The topmost bedrock block of the sampled columns. Columns whose top bedrock has been broken are made up for by
+     * the others. A world with no bedrock in its upper half has no ceiling, and portals may go up to its build limit.
+     */
+    private static int findCeiling(ChunkSnapshot snapshot, int minHeight, int maxHeight) {
+        int ceiling = minHeight - 1;
+
+        for (int x : SAMPLED_COLUMNS) {
+            for (int z : SAMPLED_COLUMNS) {
+                for (int y = maxHeight - 1; y > ceiling; y--) {
+                    if (snapshot.getBlockType(x, y, z) == Material.BEDROCK) {
+                        ceiling = y;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return ceiling < (minHeight + maxHeight) / 2 ? maxHeight : ceiling;
+    }
+
+    private void store(World world, int ceiling) {
+        scanning.remove(world.getUID());
+        ceilings.put(world.getUID(), ceiling);
+
+        String key = world.getUID().toString();
+        data.set(key + "." + SEED_KEY, world.getSeed());
+        data.set(key + "." + CEILING_KEY, ceiling);
+
+        try {
+            data.save(file);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not save " + FILE_NAME), e);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Material;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+import ro.cofi.netherratio.misc.SearchOffsets;
+
+/**
+ * Bitsets telling which blocks of the placement search volume are replaceable, replaceable or frame blocks, and
+ * buildable. Each horizontal layer is stored twice: in rows along the X axis, and in rows along the Z axis, so that
+ * a run of blocks along either portal axis is tested a word (64 blocks) at a time.
+ * <br><br>
+ * Layers are read from the block source the first time they are needed. Testing whether a portal fits then costs a
+ * few bitwise operations per layer it spans, instead of a block read per block.
+ */
+final class OccupancyMask {
+
+    private static final int REPLACEABLE = 0;
+    private static final int REPLACEABLE_OR_FRAME = 1;
+    private static final int BUILDABLE = 2;
+    private static final int KINDS = 3;
+
+    private final BlockSource source;
+    private final ConfigSnapshot config;
+    private final Material frameBlock;
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+
+    private final int wordsPerRowX;
+    private final int wordsPerRowZ;
+
+    // [layer][kind], each a row of bits along X for every Z (or along Z for every X), null until first needed
+    private final long[][][] rowsAlongX;
+    private final long[][][] rowsAlongZ;
+
+    /**
+     * Cover every block a portal placed by the search may span, around the given origin.
+     */
+    OccupancyMask(BlockSource source, ConfigSnapshot config, boolean isCustom, int originX, int originY, int originZ) {
+        this.source = source;
+        this.config = config;
+        this.frameBlock = config.getFrameBlock(isCustom);
+
+        int horizontal = Math.min(config.getMaxPortalPlacementOffsetHorizontal(), SearchOffsets.MAX_HORIZONTAL);
+        int vertical = Math.min(config.getMaxPortalPlacementOffsetVertical(), SearchOffsets.MAX_VERTICAL);
+
+        // the frame around the portal, and the floor or platform beside it
+        int reach = horizontal + config.getPortalSizeWidthNew() + 1;
+
+        minX = originX - reach;
+        minZ = originZ - reach;
+        minY = originY - vertical - 2;
+        sizeX = 2 * reach + 1;
+        sizeZ = 2 * reach + 1;
+        sizeY = 2 * vertical + config.getPortalSizeHeightNew() + 3;
+
+        wordsPerRowX = (sizeX + Long.SIZE - 1) / Long.SIZE;
+        wordsPerRowZ = (sizeZ + Long.SIZE - 1) / Long.SIZE;
+
+        rowsAlongX = new long[sizeY][][];
+        rowsAlongZ = new long[sizeY][][];
+    }
+
+    /**
+     * Test the same blocks as the full placement check, in the volume: the frame must go over replaceable or frame
+     * blocks, the inside over replaceable blocks, and either a floor of buildable blocks must exist, or the platform
+     * must have room.
+     * <br><br>
+     * Frame blocks are only compared by material, so a positive result still has to be confirmed by the full check.
+     *
+     * @param x The reference point of the portal (its bottom northwesternmost inner block).
+     */
+    boolean fits(int x, int y, int z, Axis axis, int width, int height, boolean mustHaveFloor) {
+        boolean alongX = axis == Axis.X;
+
+        int along = alongX ? x - minX : z - minZ;
+        int across = alongX ? z - minZ : x - minX;
+        int alongSize = alongX ? sizeX : sizeZ;
+        int acrossSize = alongX ? sizeZ : sizeX;
+
+        // outside the volume, shouldn't happen for candidates of the search
+        if (along - 1 < 0 || along + width >= alongSize || across - 1 < 0 || across + 1 >= acrossSize ||
+            y - 2 < minY || y + height >= minY + sizeY)
+            return false;
+
+        // the bottom and top of the frame, corners included
+        if (!isRunSet(REPLACEABLE_OR_FRAME, alongX, y - 1, across, along - 1, width + 2) ||
+            !isRunSet(REPLACEABLE_OR_FRAME, alongX, y + height, across, along - 1, width + 2))
+            return false;
+
+        // the sides of the frame, and the inside, as replaceable blocks are also valid frame positions
+        for (int level = y; level < y + height; level++)
+            if (!isRunSet(REPLACEABLE_OR_FRAME, alongX, level, across, along - 1, width + 2) ||
+                !isRunSet(REPLACEABLE, alongX, level, across, along, width))
+                return false;
+
+        if (mustHaveFloor) {
+            // the floor below the bottom of the frame, and beside it
+            for (int side = -1; side <= 1; side++)
+                if (!isRunSet(BUILDABLE, alongX, y - 2, across + side, along, width))
+                    return false;
+
+            return true;
+        }
+
+        // the platform blocks beside the bottom of the frame, and the air above them
+        for (int side = -1; side <= 1; side += 2) {
+            if (!isRunSet(REPLACEABLE_OR_FRAME, alongX, y - 1, across + side, along, width))
+                return false;
+
+            for (int level = y; level < y + height; level++)
+                if (!isRunSet(REPLACEABLE, alongX, level, across + side, along, width))
+                    return false;
+        }
+
+        return true;
+    }
+
+    private boolean isRunSet(int kind, boolean alongX, int y, int across, int from, int length) {
+        int layer = y - minY;
+        if (rowsAlongX[layer] == null)
+            readLayer(layer);
+
+        long[] rows = alongX ? rowsAlongX[layer][kind] : rowsAlongZ[layer][kind];
+        int offset = across * (alongX ? wordsPerRowX : wordsPerRowZ);
+
+        int last = from + length - 1;
+        int firstWord = from >>> 6;
+        int lastWord = last >>> 6;
+
+        for (int word = firstWord; word <= lastWord; word++) {
+            long mask = -1L;
+
+            if (word == firstWord)
+                mask &= -1L << (from & 63);
+
+            if (word == lastWord)
+                mask &= -1L >>> (63 - (last & 63));
+
+            if ((rows[offset + word] & mask) != mask)
+                return false;
+        }
+
+        return true;
+    }
+
+    private void readLayer(int layer) {
+        long[][] alongX = new long[KINDS][sizeZ * wordsPerRowX];
+        long[][] alongZ = new long[KINDS][sizeX * wordsPerRowZ];
+
+        int y = minY + layer;
+
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = 0; z < sizeZ; z++) {
+                Material material = source.getType(minX + x, y, minZ + z);
+
+                boolean replaceable = config.isReplaceable(material);
+                boolean replaceableOrFrame = replaceable || material == frameBlock;
+                boolean buildable = source.isBuildable(minX + x, y, minZ + z);
+
+                if (replaceable)
+                    set(alongX[REPLACEABLE], alongZ[REPLACEABLE], x, z);
+
+                if (replaceableOrFrame)
+                    set(alongX[REPLACEABLE_OR_FRAME], alongZ[REPLACEABLE_OR_FRAME], x, z);
+
+                if (buildable)
+                    set(alongX[BUILDABLE], alongZ[BUILDABLE], x, z);
+            }
+        }
+
+        rowsAlongX[layer] = alongX;
+        rowsAlongZ[layer] = alongZ;
+    }
+
+    private void set(long[] alongX, long[] alongZ, int x, int z) {
+        alongX[z * wordsPerRowX + (x >>> 6)] |= 1L << (x & 63);
+        alongZ[x * wordsPerRowZ + (z >>> 6)] |= 1L << (z & 63);
+    }
+
+}
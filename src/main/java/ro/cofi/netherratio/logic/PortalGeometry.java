@@ -0,0 +1,73 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import ro.cofi.netherratio.misc.BlockPos;
+
+import java.util.function.LongConsumer;
+
+/**
+ * The shape of a portal: the horizontal axis it extends along, and its inner measurements (frame excluded).
+ * Stored along with the portal, so that teleports don't have to walk the portal blocks to find it again.
+ */
+public record PortalGeometry(Axis axis, int width, int height) {
+
+    /**
+     * Packed value of a portal whose shape is not known (registered before shapes were stored).
+     */
+    public static final int UNKNOWN = 0;
+
+    private static final int SIZE_BITS = 15;
+    private static final int SIZE_MASK = (1 << SIZE_BITS) - 1;
+    private static final int AXIS_SHIFT = 2 * SIZE_BITS;
+
+    /**
+     * @return A non-zero representation of this shape, fitting in an {@code int}.
+     */
+    public int pack() {
+        return (axis == Axis.Z ? 1 : 0) << AXIS_SHIFT | (height & SIZE_MASK) << SIZE_BITS | (width & SIZE_MASK);
+    }
+
+    /**
+     * Visit every block of the portal with the given reference point (its bottom northwesternmost inner block):
+     * the inner blocks, and the frame blocks around them. The frame corners are not part of the portal, so they
+     * are skipped.
+     */
+    public void forEachBlock(long referencePosition, LongConsumer consumer) {
+        int originX = BlockPos.unpackX(referencePosition);
+        int originY = BlockPos.unpackY(referencePosition);
+        int originZ = BlockPos.unpackZ(referencePosition);
+
+        int stepX = axis == Axis.X ? 1 : 0;
+        int stepZ = axis == Axis.Z ? 1 : 0;
+
+        for (int horizontal = -1; horizontal <= width; horizontal++) {
+            boolean isSide = horizontal == -1 || horizontal == width;
+
+            for (int vertical = -1; vertical <= height; vertical++) {
+                if (isSide && (vertical == -1 || vertical == height))
+                    continue;
+
+                consumer.accept(BlockPos.pack(
+                    originX + horizontal * stepX,
+                    originY + vertical,
+                    originZ + horizontal * stepZ
+                ));
+            }
+        }
+    }
+
+    /**
+     * @return The shape, or {@code null} if the value is {@link #UNKNOWN}.
+     */
+    public static PortalGeometry unpack(long packed) {
+        if (packed == UNKNOWN)
+            return null;
+
+        return new PortalGeometry(
+            (packed >> AXIS_SHIFT & 1) == 1 ? Axis.Z : Axis.X,
+            (int) (packed & SIZE_MASK),
+            (int) (packed >> SIZE_BITS & SIZE_MASK)
+        );
+    }
+
+}
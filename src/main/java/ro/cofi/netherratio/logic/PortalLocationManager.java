@@ -2,151 +2,502 @@ package ro.cofi.netherratio.logic;
 
 import org.bukkit.Location;
 import org.bukkit.World;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.Vector;
 import ro.cofi.netherratio.NetherRatio;
-
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.metrics.PortalSaveEvent;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.Constants;
+import ro.cofi.netherratio.misc.LongHashSet;
+import ro.cofi.netherratio.misc.LongLongHashMap;
+import ro.cofi.netherratio.misc.WorldPair;
+
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 
 public class PortalLocationManager {
 
-    private static final String FILE_NAME = "portals.yml";
+    private static final String LEGACY_FILE_NAME = "portals.yml";
+    private static final String MIGRATED_SUFFIX = ".migrated";
 
     private static final Pattern COORD_SEPARATOR = Pattern.compile(",");
 
-    private static final String OVERWORLD_KEY = "overworld";
-    private static final String NETHER_KEY = "nether";
+    // world keys from before world pairs, taken over by the first pair
+    private static final String LEGACY_OVERWORLD_KEY = "overworld";
+    private static final String LEGACY_NETHER_KEY = "nether";
     private static final String CUSTOM_KEY = "custom";
-    private static final String VANILLA_KEY = "vanilla";
 
     private final NetherRatio plugin;
+    private final PortalStorage storage;
+
+    // only the worlds that are loaded, by world key
+    private final Map<String, WorldPortals> portals = new HashMap<>();
 
-    private File configFile;
-    private FileConfiguration config;
+    private BukkitTask flushTask;
 
+    private long version;
 
     public PortalLocationManager(NetherRatio plugin) {
         this.plugin = plugin;
+        this.storage = new PortalStorage(plugin);
 
-        saveDefaultConfig();
+        reload();
+        scheduleFlushTask();
     }
 
     /**
-     * Create the portal data file in the server files, if necessary, thus guaranteeing its existence.
+     * Load the portal data of the loaded worlds in memory from the server files, after writing any change that hasn't
+     * reached the disk yet. If only the legacy YAML portal data exists, it is converted first.
+     * <br><br>
+     * When the config changes, {@link #writePendingChanges()} must be called before it does, so that the links are
+     * written under the fingerprints they have been made under.
      */
-    public void saveDefaultConfig() {
-        initConfigFile();
+    public void reload() {
+        writePendingChanges();
+
+        portals.clear();
+        version++;
+
+        for (World world : plugin.getServer().getWorlds())
+            loadWorld(world);
 
-        if (!configFile.exists())
-            plugin.saveResource(FILE_NAME, false);
+        // rewrite anything that has been stored in an older format
+        flush();
     }
 
     /**
-     * Instantiate the java {@link File} instance representing the portal data file. May not exist.
+     * Hand the data stored before world pairs existed over to the first pair, once both of its worlds are loaded, so
+     * that it never ends up under the name of a world that doesn't exist.
      */
-    private void initConfigFile() {
-        if (configFile == null)
-            configFile = new File(plugin.getDataFolder(), FILE_NAME);
+    private void adoptLegacyData() {
+        List<WorldPair> pairs = plugin.getConfigManager().getSnapshot().getWorldPairs();
+        if (pairs.isEmpty())
+            return;
+
+        WorldPair firstPair = pairs.get(0);
+        if (plugin.getServer().getWorld(firstPair.overworld()) == null ||
+            plugin.getServer().getWorld(firstPair.nether()) == null)
+            return;
+
+        adoptLegacyWorldKey(LEGACY_OVERWORLD_KEY, firstPair.overworld());
+        adoptLegacyWorldKey(LEGACY_NETHER_KEY, firstPair.nether());
+
+        migrateLegacyData();
+    }
+
+    private void adoptLegacyWorldKey(String legacyWorldKey, String worldKey) {
+        // a world may really be named like that
+        if (plugin.getConfigManager().getSnapshot().getWorldPair(legacyWorldKey) != null)
+            return;
+
+        if (storage.renameWorldKey(legacyWorldKey, worldKey))
+            plugin.getLogger().info(plugin.prefixMessage(
+                "Moved the " + legacyWorldKey + " portal data to world '" + worldKey + "'"
+            ));
     }
 
     /**
-     * Loads the config in memory from the server files. In case the config is
-     * not yet saved on the server, load default values from the jar.
+     * Load the portal data of a world that has just been loaded, if it is part of a world pair.
      */
-    public void reloadConfig() {
-        initConfigFile();
+    public void loadWorld(World world) {
+        String worldKey = getWorldKey(world);
+        if (worldKey == null)
+            return;
+
+        adoptLegacyData();
+        loadWorldKey(worldKey);
+    }
 
-        config = YamlConfiguration.loadConfiguration(configFile);
+    private WorldPortals loadWorldKey(String worldKey) {
+        WorldPortals worldPortals = portals.get(worldKey);
+        if (worldPortals != null)
+            return worldPortals;
 
-        // load default values
-        InputStream defaultStream = plugin.getResource(FILE_NAME);
+        // links made under other ratios or distances may no longer lead to the right portals, they are dropped
+        worldPortals = getWorldPortals(worldKey);
+        storage.load(worldKey, getLinkFingerprint(worldKey), worldPortals::apply, worldPortals::applyLink);
 
-        if (defaultStream != null)
-            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaultStream)));
+        version++;
+        return worldPortals;
     }
 
     /**
-     * Simple getter that guarantees a non-null result.
-     *
-     * @return The portal data configuration.
+     * Write the pending changes of a world that is being unloaded, then drop its portal data from memory.
      */
-    public FileConfiguration getConfig() {
-        if (config == null)
-            reloadConfig();
+    public void unloadWorld(World world) {
+        String worldKey = getWorldKey(world);
+        if (worldKey == null || !portals.containsKey(worldKey))
+            return;
+
+        flush();
+        portals.remove(worldKey);
 
-        return config;
+        version++;
     }
 
     /**
-     * A {@link FileConfiguration} is saved in memory unless instructed to be written to the disk.
+     * (Re)start the repeating task that writes pending changes to the disk, using the currently configured interval.
      */
-    public void saveConfig() {
-        if (config == null || configFile == null)
-            return;
+    public void scheduleFlushTask() {
+        if (flushTask != null)
+            flushTask.cancel();
 
-        try {
-            getConfig().save(configFile);
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not save " + FILE_NAME), e);
+        long interval = plugin.getConfigManager().getPortalDataFlushInterval() * 20L; // seconds to ticks
+
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, interval, interval);
+    }
+
+    /**
+     * Hand every change made since the last call to the background writer. Does nothing if there are none.
+     */
+    public void flush() {
+        long start = System.nanoTime();
+
+        // most flushes have nothing to write, they would only drown the ones that do
+        if (storage.flush(worldKey -> getWorldPortals(worldKey).snapshot(), this::getLinkFingerprint))
+            plugin.getMetrics().record(Operation.PORTAL_DATA_FLUSH, start);
+    }
+
+    /**
+     * Write every change made so far, under the current config, and wait for the background writer to finish.
+     */
+    public void writePendingChanges() {
+        flush();
+        storage.awaitPendingWrites();
+    }
+
+    /**
+     * Write everything that is still pending and wait for the background writer to finish. Meant for shutdown.
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
         }
+
+        flush();
+        storage.shutdown();
     }
 
     /**
-     * Save a portal into the config.
+     * @return A number that changes whenever a portal is saved or deleted, or portal blocks change in the world.
+     *         Anything derived from the portals remains valid for as long as it stays the same.
      */
-    public void savePortal(Location location, boolean isCustom) {
-        getConfig().set(getWorldKey(location, isCustom) + "." + vecToString(location.toVector()), true);
+    public long getVersion() {
+        return version;
+    }
 
-        saveConfig();
+    /**
+     * Note that portal or frame blocks have changed in the world, even if no registered portal has.
+     */
+    public void markChanged() {
+        version++;
+    }
+
+    /**
+     * Save a portal into the registry, along with its shape. Saving an already registered portal updates its shape.
+     */
+    public void savePortal(Location location, PortalGeometry geometry, boolean isCustom) {
+        long start = System.nanoTime();
+        PortalSaveEvent flightEvent = PortalSaveEvent.beginIf(
+            plugin.getConfigManager().isFlightRecorderEventsEnabled()
+        );
+
+        try {
+            recordChange(location, true, isCustom, geometry.pack());
+        } finally {
+            plugin.getMetrics().record(Operation.SAVE_PORTAL, start);
+
+            if (flightEvent != null)
+                flightEvent.finish(location, isCustom, geometry.width(), geometry.height());
+        }
     }
 
     /**
-     * Delete a portal from the config.
+     * Delete a portal from the registry.
      */
     public void deletePortal(Location location, boolean isCustom) {
-        getConfig().set(getWorldKey(location, isCustom) + "." + vecToString(location.toVector()), null);
+        recordChange(location, false, isCustom, PortalGeometry.UNKNOWN);
+    }
 
-        saveConfig();
+    /**
+     * Remember the portal a registered portal has led to, so that the next trip through it doesn't have to look for
+     * its destination again. Links from unregistered portals are not kept, for nothing would clean them up.
+     */
+    public void saveLink(Location source, Location destination, boolean isCustom) {
+        String worldKey = getWorldKey(source.getWorld());
+        long sourcePosition = BlockPos.pack(source);
+        long destinationPosition = BlockPos.pack(destination);
+
+        WorldPortals worldPortals = portals.get(worldKey);
+        if (worldPortals == null || !worldPortals.of(isCustom).containsKey(sourcePosition))
+            return;
+
+        if (worldPortals.applyLink(true, isCustom, sourcePosition, destinationPosition))
+            storage.recordLink(worldKey, true, isCustom, sourcePosition, destinationPosition);
+    }
+
+    /**
+     * Forget the portal a portal has led to, once it turns out to be gone.
+     */
+    public void deleteLink(Location source, boolean isCustom) {
+        String worldKey = getWorldKey(source.getWorld());
+        long sourcePosition = BlockPos.pack(source);
+
+        WorldPortals worldPortals = portals.get(worldKey);
+
+        if (worldPortals != null && worldPortals.applyLink(false, isCustom, sourcePosition, BlockPos.NONE))
+            storage.recordLink(worldKey, false, isCustom, sourcePosition, BlockPos.NONE);
+    }
+
+    /**
+     * Get the portal a portal has last led to, in the other dimension. It may have been destroyed since.
+     *
+     * @return The packed position of the destination portal, or {@link BlockPos#NONE} if there is no link.
+     */
+    public long getLink(Location source, boolean isCustom) {
+        WorldPortals worldPortals = portals.get(getWorldKey(source.getWorld()));
+        if (worldPortals == null)
+            return BlockPos.NONE;
+
+        return worldPortals.linksOf(isCustom).get(BlockPos.pack(source), BlockPos.NONE);
+    }
+
+    /**
+     * Get the stored shape of a portal.
+     *
+     * @return The shape, or {@code null} if the portal is not registered, or has been registered without its shape.
+     */
+    public PortalGeometry getGeometry(World world, boolean isCustom, long position) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        if (worldPortals == null)
+            return null;
+
+        return PortalGeometry.unpack(worldPortals.of(isCustom).get(position, PortalGeometry.UNKNOWN));
+    }
+
+    /**
+     * Find the portal closest to the given horizontal position, ignoring the Y coordinate.
+     * Only the index cells around the position are looked at.
+     *
+     * @return The packed position of the portal, or {@link BlockPos#NONE} if none is strictly closer than
+     *         {@code maxDistance}.
+     */
+    public long findNearestPortal(World world, boolean isCustom, double x, double z, double maxDistance) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        if (worldPortals == null)
+            return BlockPos.NONE;
+
+        return worldPortals.indexOf(isCustom).findNearest(x, z, maxDistance);
     }
 
     /**
-     * Get all portals in the given world.
+     * Find the registered portals a block is part of, either as an inner block or as a frame block.
+     * Only the block index is looked at, the world is never read.
+     *
+     * @return The reference points of the portals, of both kinds, or {@code null} if the index can't tell for sure
+     *         (the block isn't indexed, and the world has portals registered without their shape). In that case, the
+     *         caller must find the portals by looking at the world.
      */
-    public List<Vector> getPortals(World world, boolean isCustom) {
-        ConfigurationSection section = getConfig().getConfigurationSection(getWorldKey(world, isCustom));
-        if (section == null)
+    public List<ReferencePoint> findPortalsAt(World world, long blockPosition) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        if (worldPortals == null)
             return Collections.emptyList();
 
-        return section.getKeys(false)
-            .stream()
-            .map(this::stringToVec)
-            .filter(Objects::nonNull)
-            .toList();
+        List<ReferencePoint> referencePoints = new ArrayList<>(2);
+
+        worldPortals.forEachOwner(true, blockPosition, owner -> referencePoints.add(
+            new ReferencePoint(BlockPos.toLocation(world, owner), true)
+        ));
+        worldPortals.forEachOwner(false, blockPosition, owner -> referencePoints.add(
+            new ReferencePoint(BlockPos.toLocation(world, owner), false)
+        ));
+
+        if (referencePoints.isEmpty())
+            return worldPortals.unindexedCount > 0 ? null : Collections.emptyList();
+
+        return referencePoints;
     }
 
-    private String vecToString(Vector vec) {
-        return vec.getBlockX() + "," + vec.getBlockY() + "," + vec.getBlockZ();
+    /**
+     * Visit the portals whose reference point is in the given chunk. Only the spatial index is looked at.
+     */
+    public void forEachPortalInChunk(World world, boolean isCustom, int chunkX, int chunkZ, LongConsumer consumer) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        if (worldPortals == null)
+            return;
+
+        int minX = chunkX << 4;
+        int minZ = chunkZ << 4;
+
+        worldPortals.indexOf(isCustom).forEachWithin(minX, minZ, minX + 15, minZ + 15, consumer);
+    }
+
+    /**
+     * Check whether a portal is registered at the given position.
+     */
+    public boolean hasPortal(World world, boolean isCustom, long position) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        return worldPortals != null && worldPortals.of(isCustom).containsKey(position);
+    }
+
+    /**
+     * Get all portals in the given world, as packed positions.
+     */
+    public long[] getPortals(World world, boolean isCustom) {
+        WorldPortals worldPortals = portals.get(getWorldKey(world));
+        if (worldPortals == null)
+            return new long[0];
+
+        LongLongHashMap registry = worldPortals.of(isCustom);
+
+        long[] positions = new long[registry.size()];
+        registry.copyTo(positions, new long[registry.size()]);
+
+        return positions;
+    }
+
+    private void recordChange(Location location, boolean added, boolean isCustom, long geometry) {
+        String worldKey = getWorldKey(location.getWorld());
+        long position = BlockPos.pack(location);
+
+        // not part of a world pair, or not loaded yet
+        WorldPortals worldPortals = portals.get(worldKey);
+        if (worldPortals == null)
+            return;
+
+        // only journal actual changes
+        if (worldPortals.apply(added, isCustom, position, geometry)) {
+            storage.recordChange(worldKey, added, isCustom, position, geometry);
+            version++;
+        }
+    }
+
+    /**
+     * Convert the legacy {@value LEGACY_FILE_NAME} into the binary format, line by line, without building the whole
+     * YAML tree in memory. The old file is kept aside, renamed, once the conversion has reached the disk.
+     */
+    private void migrateLegacyData() {
+        File legacyFile = new File(plugin.getDataFolder(), LEGACY_FILE_NAME);
+        if (!legacyFile.exists())
+            return;
+
+        // the current section path, "kind.world" for portal entries
+        Deque<String> path = new ArrayDeque<>();
+        Deque<Integer> indents = new ArrayDeque<>();
+        int migrated = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(legacyFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                    continue;
+
+                int indent = line.indexOf(trimmed.charAt(0));
+
+                // leave the sections that this line is not part of
+                while (!indents.isEmpty() && indents.peek() >= indent) {
+                    indents.pop();
+                    path.pop();
+                }
+
+                int separator = trimmed.lastIndexOf(':');
+                if (separator == -1)
+                    continue;
+
+                String key = unquote(trimmed.substring(0, separator).strip());
+                String value = trimmed.substring(separator + 1).strip();
+
+                // a new section begins
+                if (value.isEmpty()) {
+                    indents.push(indent);
+                    path.push(key);
+                    continue;
+                }
+
+                // expecting "x,y,z: true" as the entry
+                if (path.size() != 2 || !Boolean.parseBoolean(value))
+                    continue;
+
+                Vector vec = stringToVec(key);
+                if (vec == null)
+                    continue;
+
+                String worldKey = legacyWorldKeyOf(path.peekFirst());
+                if (worldKey == null)
+                    continue;
+                boolean isCustom = CUSTOM_KEY.equals(path.peekLast());
+
+                // the legacy format doesn't store shapes, they are filled in as the portals get used
+                loadWorldKey(worldKey).apply(true, isCustom, BlockPos.pack(vec), PortalGeometry.UNKNOWN);
+                storage.requestCompaction(worldKey);
+                migrated++;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not read " + LEGACY_FILE_NAME), e);
+            return;
+        }
+
+        // write the converted data before getting rid of the original, along with that of worlds that aren't loaded
+        flush();
+        storage.awaitPendingWrites();
+
+        portals.keySet().removeIf(worldKey -> plugin.getServer().getWorld(worldKey) == null);
+
+        if (!legacyFile.renameTo(new File(plugin.getDataFolder(), LEGACY_FILE_NAME + MIGRATED_SUFFIX)))
+            plugin.getLogger().severe(plugin.prefixMessage("Could not rename " + LEGACY_FILE_NAME +
+                                                           " after migrating it. Please remove it manually."));
+
+        plugin.getLogger().info(plugin.prefixMessage("Migrated " + migrated + " portals from " + LEGACY_FILE_NAME));
+    }
+
+    /**
+     * @return The world key the portals of a legacy world key belong to, or {@code null} if the key is unknown.
+     */
+    private String legacyWorldKeyOf(String legacyWorldKey) {
+        // only called once the first pair is known
+        WorldPair firstPair = plugin.getConfigManager().getSnapshot().getWorldPairs().get(0);
+
+        return switch (legacyWorldKey) {
+            case LEGACY_OVERWORLD_KEY -> firstPair.overworld();
+            case LEGACY_NETHER_KEY -> firstPair.nether();
+            default -> null;
+        };
+    }
+
+    private String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") ||
+                                  key.startsWith("\"") && key.endsWith("\"")))
+            return key.substring(1, key.length() - 1);
+
+        return key;
     }
 
     private Vector stringToVec(String vec) {
-        int[] coords = COORD_SEPARATOR.splitAsStream(vec)
-            .limit(3)
-            .mapToInt(Integer::parseInt)
-            .toArray();
+        int[] coords;
+
+        try {
+            coords = COORD_SEPARATOR.splitAsStream(vec)
+                .limit(3)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        } catch (NumberFormatException e) {
+            coords = new int[0];
+        }
 
         if (coords.length < 3) {
             plugin.getLogger().severe(plugin.prefixMessage(
-                "Invalid coordinates '" + vec + "' in config file " + FILE_NAME
+                "Invalid coordinates '" + vec + "' in config file " + LEGACY_FILE_NAME
             ));
             return null;
         }
@@ -154,13 +505,254 @@ public class PortalLocationManager {
         return new Vector(coords[0], coords[1], coords[2]);
     }
 
-    private String getWorldKey(Location location, boolean isCustom) {
-        return getWorldKey(location.getWorld(), isCustom);
+    private WorldPortals getWorldPortals(String worldKey) {
+        return portals.computeIfAbsent(worldKey, key -> new WorldPortals(
+            getIndexCellSize(key, true),
+            getIndexCellSize(key, false)
+        ));
+    }
+
+    /**
+     * Index cells as large as the minimum distance between portals, so that a search never spans more than a few.
+     */
+    private int getIndexCellSize(String worldKey, boolean isCustom) {
+        WorldPair pair = plugin.getConfigManager().getSnapshot().getWorldPair(worldKey);
+        // no longer part of a world pair, only kept until written
+        if (pair == null)
+            return (int) Constants.VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_OVERWORLD;
+
+        double minDistance = pair.getMinDistanceBetweenPortals(!pair.overworld().equals(worldKey), isCustom);
+
+        return (int) Math.ceil(minDistance);
+    }
+
+    /**
+     * @return The fingerprint of the links stored under a world key, the one of its world pair.
+     */
+    private long getLinkFingerprint(String worldKey) {
+        WorldPair pair = plugin.getConfigManager().getSnapshot().getWorldPair(worldKey);
+        return pair != null ? pair.getLinkFingerprint() : 0;
     }
 
-    private String getWorldKey(World world, boolean isCustom) {
-        return (isCustom ? CUSTOM_KEY : VANILLA_KEY) + "." +
-               (world.getEnvironment() == World.Environment.NORMAL ? OVERWORLD_KEY : NETHER_KEY);
+    /**
+     * Worlds are keyed by their name, so that the data of a world stays with it whatever pair it is in.
+     *
+     * @return The world key, or {@code null} if the world isn't part of any world pair.
+     */
+    private String getWorldKey(World world) {
+        return plugin.getConfigManager().getSnapshot().isPortalWorld(world) ? world.getName() : null;
+    }
+
+    /**
+     * The custom and vanilla portals of a single world, mapped to their packed shapes, along with their spatial indices,
+     * the indices of the blocks they are made of, and the portals they lead to.
+     */
+    private static class WorldPortals {
+
+        /**
+         * Owner of a block that belongs to several portals of the same kind (e.g.: a frame wall shared by two portals),
+         * which are then listed in the shared blocks. Unpacks to an X coordinate far outside the world border, like
+         * {@link BlockPos#NONE}.
+         */
+        private static final long SHARED_BLOCK = BlockPos.NONE + 1;
+
+        private final LongLongHashMap custom = new LongLongHashMap();
+        private final LongLongHashMap vanilla = new LongLongHashMap();
+
+        // block position to the reference point of the portal it belongs to
+        private final LongLongHashMap customBlocks = new LongLongHashMap();
+        private final LongLongHashMap vanillaBlocks = new LongLongHashMap();
+
+        // block position to the reference points of the portals it belongs to, for blocks owned by several portals
+        private final Map<Long, LongHashSet> customSharedBlocks = new HashMap<>();
+        private final Map<Long, LongHashSet> vanillaSharedBlocks = new HashMap<>();
+
+        // reference point to the reference point of the destination portal, in the other dimension
+        private final LongLongHashMap customLinks = new LongLongHashMap();
+        private final LongLongHashMap vanillaLinks = new LongLongHashMap();
+
+        // portals whose shape is not known, so their blocks can't be indexed
+        private int unindexedCount;
+
+        private final PortalSpatialIndex customIndex;
+        private final PortalSpatialIndex vanillaIndex;
+
+        private WorldPortals(int customCellSize, int vanillaCellSize) {
+            this.customIndex = new PortalSpatialIndex(customCellSize);
+            this.vanillaIndex = new PortalSpatialIndex(vanillaCellSize);
+        }
+
+        private LongLongHashMap of(boolean isCustom) {
+            return isCustom ? custom : vanilla;
+        }
+
+        private PortalSpatialIndex indexOf(boolean isCustom) {
+            return isCustom ? customIndex : vanillaIndex;
+        }
+
+        private LongLongHashMap blocksOf(boolean isCustom) {
+            return isCustom ? customBlocks : vanillaBlocks;
+        }
+
+        private Map<Long, LongHashSet> sharedBlocksOf(boolean isCustom) {
+            return isCustom ? customSharedBlocks : vanillaSharedBlocks;
+        }
+
+        private LongLongHashMap linksOf(boolean isCustom) {
+            return isCustom ? customLinks : vanillaLinks;
+        }
+
+        /**
+         * @return Whether the registry has changed.
+         */
+        private boolean apply(boolean added, boolean isCustom, long position, long geometry) {
+            LongLongHashMap registry = of(isCustom);
+
+            boolean existed = registry.containsKey(position);
+            long previousGeometry = registry.get(position, PortalGeometry.UNKNOWN);
+
+            if (!added) {
+                if (!existed)
+                    return false;
+
+                registry.remove(position, PortalGeometry.UNKNOWN);
+                indexOf(isCustom).remove(position);
+                unindexBlocks(isCustom, position, previousGeometry);
+
+                // the removal implies the link is gone, there is no need to record it separately
+                linksOf(isCustom).remove(position, BlockPos.NONE);
+                return true;
+            }
+
+            if (existed && previousGeometry == geometry)
+                return false;
+
+            registry.put(position, geometry, PortalGeometry.UNKNOWN);
+
+            if (existed)
+                unindexBlocks(isCustom, position, previousGeometry);
+            else
+                indexOf(isCustom).add(position);
+
+            indexBlocks(isCustom, position, geometry);
+            return true;
+        }
+
+        /**
+         * @return Whether the links have changed.
+         */
+        private boolean applyLink(boolean linked, boolean isCustom, long source, long destination) {
+            LongLongHashMap links = linksOf(isCustom);
+
+            if (!linked)
+                return links.remove(source, BlockPos.NONE) != BlockPos.NONE;
+
+            return links.put(source, destination, BlockPos.NONE) != destination;
+        }
+
+        private void indexBlocks(boolean isCustom, long position, long geometry) {
+            PortalGeometry shape = PortalGeometry.unpack(geometry);
+
+            if (shape == null) {
+                unindexedCount++;
+                return;
+            }
+
+            LongLongHashMap blocks = blocksOf(isCustom);
+            Map<Long, LongHashSet> sharedBlocks = sharedBlocksOf(isCustom);
+
+            shape.forEachBlock(position, block -> {
+                long owner = blocks.get(block, BlockPos.NONE);
+
+                if (owner == BlockPos.NONE || owner == position) {
+                    blocks.put(block, position, BlockPos.NONE);
+                    return;
+                }
+
+                if (owner != SHARED_BLOCK) {
+                    LongHashSet owners = new LongHashSet();
+                    owners.add(owner);
+
+                    sharedBlocks.put(block, owners);
+                    blocks.put(block, SHARED_BLOCK, BlockPos.NONE);
+                }
+
+                sharedBlocks.get(block).add(position);
+            });
+        }
+
+        /**
+         * A shared block left with a single portal goes back to being owned by it.
+         */
+        private void unindexBlocks(boolean isCustom, long position, long geometry) {
+            PortalGeometry shape = PortalGeometry.unpack(geometry);
+
+            if (shape == null) {
+                unindexedCount--;
+                return;
+            }
+
+            LongLongHashMap blocks = blocksOf(isCustom);
+            Map<Long, LongHashSet> sharedBlocks = sharedBlocksOf(isCustom);
+
+            shape.forEachBlock(position, block -> {
+                long owner = blocks.get(block, BlockPos.NONE);
+
+                if (owner == position) {
+                    blocks.remove(block, BlockPos.NONE);
+                    return;
+                }
+
+                if (owner != SHARED_BLOCK)
+                    return;
+
+                LongHashSet owners = sharedBlocks.get(block);
+                owners.remove(position);
+
+                if (owners.size() == 1) {
+                    sharedBlocks.remove(block);
+                    blocks.put(block, owners.toArray()[0], BlockPos.NONE);
+                }
+            });
+        }
+
+        /**
+         * Visit the reference points of the portals of a kind that a block is part of, according to the block index.
+         */
+        private void forEachOwner(boolean isCustom, long block, LongConsumer consumer) {
+            long owner = blocksOf(isCustom).get(block, BlockPos.NONE);
+
+            if (owner == SHARED_BLOCK) {
+                for (long sharedOwner : sharedBlocksOf(isCustom).get(block).toArray())
+                    consumer.accept(sharedOwner);
+            } else if (owner != BlockPos.NONE) {
+                consumer.accept(owner);
+            }
+        }
+
+        private PortalStorage.Snapshot snapshot() {
+            long[] customPositions = new long[custom.size()];
+            long[] customGeometries = new long[custom.size()];
+            long[] vanillaPositions = new long[vanilla.size()];
+            long[] vanillaGeometries = new long[vanilla.size()];
+
+            long[] customLinkSources = new long[customLinks.size()];
+            long[] customLinkDestinations = new long[customLinks.size()];
+            long[] vanillaLinkSources = new long[vanillaLinks.size()];
+            long[] vanillaLinkDestinations = new long[vanillaLinks.size()];
+
+            custom.copyTo(customPositions, customGeometries);
+            vanilla.copyTo(vanillaPositions, vanillaGeometries);
+            customLinks.copyTo(customLinkSources, customLinkDestinations);
+            vanillaLinks.copyTo(vanillaLinkSources, vanillaLinkDestinations);
+
+            return new PortalStorage.Snapshot(
+                customPositions, customGeometries,
+                vanillaPositions, vanillaGeometries,
+                customLinkSources, customLinkDestinations,
+                vanillaLinkSources, vanillaLinkDestinations
+            );
+        }
     }
 
 }
@@ -1,7 +1,6 @@
 package ro.cofi.netherratio.logic;
 
 import org.bukkit.*;
-import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Orientable;
@@ -11,167 +10,410 @@ import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.event.world.PortalCreateEvent;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 import ro.cofi.netherratio.NetherRatio;
 import ro.cofi.netherratio.event.CustomEntityTeleportEvent;
 import ro.cofi.netherratio.event.CustomPlayerTeleportEvent;
 import ro.cofi.netherratio.event.CustomPortalCreateEvent;
-import ro.cofi.netherratio.misc.Constants;
+import ro.cofi.netherratio.metrics.Counter;
+import ro.cofi.netherratio.metrics.DestinationSearchEvent;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.metrics.PortalCreationEvent;
+import ro.cofi.netherratio.metrics.ReferencePointEvent;
+import ro.cofi.netherratio.metrics.TeleportResolutionEvent;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
 import ro.cofi.netherratio.misc.LocationUtil;
+import ro.cofi.netherratio.misc.SearchOffsets;
 import ro.cofi.netherratio.misc.VectorAxis;
+import ro.cofi.netherratio.misc.WorldPair;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class PortalLogicManager {
 
-    private static final int BACKUP_NETHER_CEILING_LEVEL = 128;
     private static final int NON_PLAYER_ENTITY_PORTAL_CD = 10; // in ticks, good enough as it is, no need to change
     private static final int PREFERRED_OVERWORLD_Y = 64;
+    private static final double ARRIVAL_PRECISION_SQUARED = 0.01; // in blocks, squared
 
-    private static final double VANILLA_RATIO_OVERWORLD = 8;
-    private static final double VANILLA_RATIO_NETHER = 1;
-    private static final double VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_OVERWORLD = 128;
-    private static final double VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_NETHER = 16;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int DEADLINE_CHECK_INTERVAL = 16; // in candidates
 
     private final NetherRatio plugin;
 
-    private final World overworld;
-    private final World nether;
+    private final ChunkTickets chunkTickets;
+    private final NetherCeilings netherCeilings;
+    private final SlowOperationTracer slowOperationTracer;
 
-    private final int netherBedrockCeiling;
+    private final Map<UUID, PendingSearch> pendingSearches = new HashMap<>();
+    private final ArrayDeque<SlicedSearch> slicedSearches = new ArrayDeque<>();
+    private final Set<UUID> teleportingEntities = new HashSet<>();
+    private final Map<UUID, CachedReferencePoint> referencePointCache = new HashMap<>();
+
+    private BukkitTask slicingTask;
 
     public PortalLogicManager(NetherRatio plugin) {
         this.plugin = plugin;
+        this.chunkTickets = new ChunkTickets(plugin);
+        this.netherCeilings = new NetherCeilings(plugin);
+        this.slowOperationTracer = new SlowOperationTracer(plugin);
+    }
 
-        // find the overworld and the nether
-        List<World> serverWorlds = plugin.getServer().getWorlds();
-
-        nether = serverWorlds.stream()
-            .filter(world -> world.getEnvironment() == World.Environment.NETHER)
-            .findFirst()
-            .orElse(null);
-
-        overworld = serverWorlds.stream()
-            .filter(world -> world.getEnvironment() == World.Environment.NORMAL)
-            .findFirst()
-            .orElse(null);
-
-        // obtain the nether bedrock ceiling Y level
-        if (nether == null) {
-            netherBedrockCeiling = BACKUP_NETHER_CEILING_LEVEL; // last resort, should not happen
-            plugin.getLogger().severe(plugin.prefixMessage("Could not find the nether world. " +
-                                                           "Using default value for nether ceiling Y level: " +
-                                                           BACKUP_NETHER_CEILING_LEVEL));
-            return;
-        }
+    /**
+     * @return The highest Y level portals may be created at, excluded: the bedrock ceiling in the nether, the build
+     *         limit elsewhere.
+     */
+    private int getCeiling(World world) {
+        if (world.getEnvironment() != World.Environment.NETHER)
+            return world.getMaxHeight();
 
-        Location checkedLocation = new Location(nether, 0, nether.getMaxHeight(), 0);
+        return netherCeilings.getCeiling(world);
+    }
 
-        while (checkedLocation.getY() >= 0 && checkedLocation.getBlock().getType() != Material.BEDROCK)
-            checkedLocation.subtract(VectorAxis.Y);
+    /**
+     * Get ready for portals leading to a world that has just been loaded: start looking for its ceiling, if it is a
+     * nether world of a pair, so that it is known by the time the first portal is created there.
+     */
+    public void prepareWorld(World world) {
+        if (world.getEnvironment() == World.Environment.NETHER && plugin.getConfigManager().isPortalWorld(world))
+            netherCeilings.getCeiling(world);
+    }
 
-        // not found, should not happen
-        if (checkedLocation.getY() == -1) {
-            netherBedrockCeiling = BACKUP_NETHER_CEILING_LEVEL;
-            plugin.getLogger().severe(plugin.prefixMessage("Could not find the Y level of the nether ceiling. " +
-                                                           "Using default value: " + BACKUP_NETHER_CEILING_LEVEL));
-            return;
-        }
+    /**
+     * Forget everything about a world that is being unloaded, and drop the destination searches in it.
+     */
+    public void forgetWorld(World world) {
+        netherCeilings.forget(world);
+
+        for (PendingSearch search : new ArrayList<>(pendingSearches.values()))
+            if (search.desiredDestination.getWorld().equals(world) || search.referenceLocation.getWorld().equals(world))
+                finishPortalSearch(search);
 
-        netherBedrockCeiling = checkedLocation.getBlockY();
+        // after the searches, which release their chunks
+        chunkTickets.forget(world);
     }
 
     /**
      * Attempt to teleport an entity to the other dimension.
      * <br><br>
      * A search for an existing portal is performed in a specific radius around the usual, precomputed destination.
-     * If no such portal exists, it is created at the precomputed destination (or as close to it).
+     * If no such portal exists, it is created at the precomputed destination (or as close to it), once an
+     * asynchronous search finds the place for it.
      * <br><br>
      * If a portal is available (either already existing or following its creation), the entity is teleported.
+     * <br><br>
+     * Only the calls that resolve the teleport are timed, not those of an entity that is still waiting in the portal.
      */
     public void handleEntityTeleport(Entity entity, ReferencePoint referencePoint) {
-        Location referenceLocation = referencePoint.location();
-        boolean isCustom = referencePoint.isCustom();
+        // a place for the destination portal is still being searched for, the entity waits in the portal meanwhile
+        if (pendingSearches.containsKey(entity.getUniqueId()))
+            return;
 
-        // check if there is an existing portal to teleport to
-        World destinationWorld;
-        double maxDistance;
-        double scaleFactor;
-        double preferredY;
+        // the entity is already on its way, waiting for the destination chunks
+        if (teleportingEntities.contains(entity.getUniqueId()))
+            return;
 
-        // handle teleport direction
-        if (entity.getWorld().getEnvironment() == World.Environment.NORMAL) {
-            if (isCustom) {
-                maxDistance = plugin.getConfigManager().getMinDistanceBetweenPortalsNether();
-                scaleFactor = plugin.getConfigManager().getRatioNether() /
-                              plugin.getConfigManager().getRatioOverworld();
-            } else {
-                maxDistance = VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_NETHER;
-                scaleFactor = VANILLA_RATIO_NETHER / VANILLA_RATIO_OVERWORLD;
+        long start = System.nanoTime();
+        TeleportResolutionEvent flightEvent = TeleportResolutionEvent.beginIf(
+            plugin.getConfigManager().isFlightRecorderEventsEnabled()
+        );
+
+        Location destination = null;
+        String resolution = TeleportResolutionEvent.NONE;
+
+        // the teleport is handled again once the destination chunks are loaded, and timed then
+        boolean awaitingChunks = false;
+
+        try {
+            Location referenceLocation = referencePoint.location();
+            boolean isCustom = referencePoint.isCustom();
+
+            PortalGeometry referenceGeometry = resolveGeometry(referenceLocation, isCustom);
+            if (referenceGeometry == null)
+                return;
+
+            // check if there is an existing portal to teleport to
+            WorldPair pair = plugin.getConfigManager().getSnapshot().getWorldPair(referenceLocation.getWorld());
+            if (pair == null)
+                return;
+
+            boolean toNether = pair.isOverworld(referenceLocation.getWorld());
+
+            double maxDistance = pair.getMinDistanceBetweenPortals(toNether, isCustom);
+            double scaleFactor = pair.getScaleFactor(toNether, isCustom);
+
+            // the other world of the pair isn't loaded
+            Location scaledDestination = getScaledDestination(referenceLocation, isCustom, pair);
+            if (scaledDestination == null)
+                return;
+
+            World destinationWorld = scaledDestination.getWorld();
+
+            PortalGeometry destinationGeometry = null;
+
+            // most trips go through portals that have been traveled through before, follow the link if it still holds
+            long linkedPortal = plugin.getPortalLocationManager().getLink(referenceLocation, isCustom);
+
+            if (linkedPortal != BlockPos.NONE) {
+                if (plugin.getPortalLocationManager().hasPortal(destinationWorld, isCustom, linkedPortal)) {
+                    awaitingChunks = awaitDestinationChunks(
+                        entity, referencePoint, destinationWorld, linkedPortal, isCustom
+                    );
+                    if (awaitingChunks)
+                        return;
+
+                    destination = BlockPos.toLocation(destinationWorld, linkedPortal);
+                    destinationGeometry = checkDestination(destination, isCustom);
+                }
+
+                if (destinationGeometry == null) {
+                    plugin.getPortalLocationManager().deleteLink(referenceLocation, isCustom);
+                    destination = null;
+                } else {
+                    resolution = TeleportResolutionEvent.LINKED;
+                }
+            }
+
+            while (destination == null) {
+                // accept small errors (the scale factor)
+                long destinationPortal = plugin.getPortalLocationManager().findNearestPortal(
+                    destinationWorld,
+                    isCustom,
+                    scaledDestination.getX(),
+                    scaledDestination.getZ(),
+                    maxDistance + scaleFactor
+                );
+
+                if (destinationPortal == BlockPos.NONE)
+                    break;
+
+                awaitingChunks = awaitDestinationChunks(
+                    entity, referencePoint, destinationWorld, destinationPortal, isCustom
+                );
+                if (awaitingChunks)
+                    return;
+
+                destination = BlockPos.toLocation(destinationWorld, destinationPortal);
+                destinationGeometry = checkDestination(destination, isCustom);
+
+                if (destinationGeometry == null)
+                    destination = null;
+                else
+                    resolution = TeleportResolutionEvent.NEAREST;
+            }
+
+            // if no portal is available, create a new portal and teleport to it, once a place for it has been found
+            if (destination == null) {
+                // only players may create portals
+                if (entity instanceof Player player) {
+                    startPortalSearch(
+                        player,
+                        referenceLocation,
+                        referenceGeometry,
+                        scaledDestination,
+                        isCustom
+                    );
+
+                    resolution = TeleportResolutionEvent.SEARCH;
+                }
+
+                return;
+            }
+
+            teleport(
+                entity,
+                referenceLocation, referenceGeometry,
+                destination, destinationGeometry,
+                isCustom, Counter.TELEPORTS_EXISTING
+            );
+        } finally {
+            if (!awaitingChunks) {
+                plugin.getMetrics().record(Operation.TELEPORT, start);
+
+                if (flightEvent != null)
+                    flightEvent.finish(
+                        entity,
+                        referencePoint.location(),
+                        referencePoint.isCustom(),
+                        destination,
+                        resolution
+                    );
+
+                captureTeleportIfSlow(start, referencePoint);
             }
+        }
+    }
 
-            destinationWorld = nether;
+    /**
+     * Get the usual destination of a trip through a portal, before looking for any portal there: the position of the
+     * portal scaled to the other world of its pair, at a preferred height.
+     *
+     * @return The destination, or {@code null} if the world isn't part of a pair, or the other world isn't loaded.
+     */
+    public Location getScaledDestination(Location referenceLocation, boolean isCustom) {
+        WorldPair pair = plugin.getConfigManager().getSnapshot().getWorldPair(referenceLocation.getWorld());
+        return pair != null ? getScaledDestination(referenceLocation, isCustom, pair) : null;
+    }
+
+    private Location getScaledDestination(Location referenceLocation, boolean isCustom, WorldPair pair) {
+        World originWorld = referenceLocation.getWorld();
+        World destinationWorld = plugin.getServer().getWorld(pair.getOtherWorld(originWorld));
+
+        if (destinationWorld == null)
+            return null;
 
+        boolean toNether = pair.isOverworld(originWorld);
+        double preferredY;
+
+        // handle teleport direction
+        if (toNether) {
             // interpolate overworld height to nether height, not higher than the nether bedrock ceiling
             preferredY = LocationUtil.mapInterval(
-                overworld.getMinHeight(),
-                overworld.getMaxHeight(),
-                nether.getMinHeight(),
-                netherBedrockCeiling,
+                originWorld.getMinHeight(),
+                originWorld.getMaxHeight(),
+                destinationWorld.getMinHeight(),
+                getCeiling(destinationWorld),
                 referenceLocation.getY()
             );
         } else {
-            if (isCustom) {
-                maxDistance = plugin.getConfigManager().getMinDistanceBetweenPortalsOverworld();
-                scaleFactor = plugin.getConfigManager().getRatioOverworld() /
-                              plugin.getConfigManager().getRatioNether();
-            } else {
-                maxDistance = VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_OVERWORLD;
-                scaleFactor = VANILLA_RATIO_OVERWORLD / VANILLA_RATIO_NETHER;
-            }
-
-            destinationWorld = overworld;
-
             // fixed Y for overworld
             preferredY = PREFERRED_OVERWORLD_Y;
         }
 
         // scale X and Z
-        Vector scaledReferencePoint = referenceLocation.toVector().multiply(scaleFactor);
-        scaledReferencePoint.setX(Math.floor(scaledReferencePoint.getX()));
-        scaledReferencePoint.setY(preferredY);
-        scaledReferencePoint.setZ(Math.floor(scaledReferencePoint.getZ()));
-
-        List<Vector> destinationPortals = plugin.getPortalLocationManager().getPortals(destinationWorld, isCustom);
-
-        // if a portal is available, teleport to it; otherwise, create a new portal and teleport to it
-        Location destination = destinationPortals.stream()
-            .map(portalLocation -> {
-                double distance = scaledReferencePoint.clone()
-                    .setY(portalLocation.getY())
-                    .distance(portalLocation);
-
-                // map around an entry - we want to compare based on distance but return the original object
-                return new AbstractMap.SimpleEntry<>(portalLocation, distance);
+        double scaleFactor = pair.getScaleFactor(toNether, isCustom);
+
+        return new Location(
+            destinationWorld,
+            Math.floor(referenceLocation.getX() * scaleFactor),
+            preferredY,
+            Math.floor(referenceLocation.getZ() * scaleFactor)
+        );
+    }
+
+    /**
+     * Load the chunks of a registered destination portal in the background, if any of them isn't loaded, then handle
+     * the teleport again, unless the entity has left the portal meanwhile. The entity waits in the portal, as it does
+     * for a destination search, so that checking the destination portal never loads a chunk on the main thread.
+     *
+     * @return Whether the teleport waits for chunks to load.
+     */
+    private boolean awaitDestinationChunks(
+        Entity entity, ReferencePoint referencePoint,
+        World world, long position, boolean isCustom
+    ) {
+        PortalGeometry geometry = plugin.getPortalLocationManager().getGeometry(world, isCustom, position);
+
+        int x = BlockPos.unpackX(position);
+        int z = BlockPos.unpackZ(position);
+
+        // the portal and the frame after it; a shape that isn't known yet is measured along either axis
+        int maxWidth = plugin.getConfigManager().getPortalSizeWidthMax();
+        int reachX = geometry == null ? maxWidth : geometry.axis() == Axis.X ? geometry.width() : 0;
+        int reachZ = geometry == null ? maxWidth : geometry.axis() == Axis.Z ? geometry.width() : 0;
+
+        List<CompletableFuture<Chunk>> chunkFutures = new ArrayList<>();
+
+        for (int chunkX = x >> 4; chunkX <= (x + reachX) >> 4; chunkX++)
+            for (int chunkZ = z >> 4; chunkZ <= (z + reachZ) >> 4; chunkZ++)
+                if (!world.isChunkLoaded(chunkX, chunkZ))
+                    chunkFutures.add(world.getChunkAtAsync(chunkX, chunkZ));
+
+        if (chunkFutures.isEmpty())
+            return false;
+
+        UUID entityId = entity.getUniqueId();
+        teleportingEntities.add(entityId);
+
+        CompletableFuture.allOf(chunkFutures.toArray(CompletableFuture[]::new)).whenComplete(
+            (ignored, throwable) -> runOnMainThread(() -> {
+                teleportingEntities.remove(entityId);
+
+                if (throwable != null) {
+                    plugin.getLogger().severe(plugin.prefixMessage(
+                        "Could not load the chunks of the destination portal: " + throwable.getMessage()
+                    ));
+                    return;
+                }
+
+                // the chunks stay loaded for the rest of the tick, long enough to check the portal
+                if (entity.isValid() && isInPortal(entity, referencePoint.location()))
+                    handleEntityTeleport(entity, referencePoint);
             })
-            .filter(entry -> entry.getValue() < maxDistance + scaleFactor) // accept small errors (the scale factor)
-            .min(Comparator.comparingDouble(AbstractMap.SimpleEntry::getValue))
-            .map(AbstractMap.SimpleEntry::getKey)
-            .map(vec -> LocationUtil.fromVector(destinationWorld, vec))
-            .orElseGet(() -> createNewPortal(
-                LocationUtil.fromVector(destinationWorld, scaledReferencePoint),
-                entity,
-                ((Orientable) referenceLocation.getBlock().getBlockData()).getAxis(),
-                isCustom
-            ));
+        );
 
-        // may be null due to other event cancellations
-        if (destination == null)
-            return;
+        return true;
+    }
+
+    /**
+     * Make sure a registered destination portal still exists, with a single read, in case it has been destroyed
+     * without the plugin noticing. If it doesn't, it is deleted from the registry.
+     *
+     * @return The shape of the portal, or {@code null} if it doesn't exist anymore.
+     */
+    private PortalGeometry checkDestination(Location destination, boolean isCustom) {
+        PortalGeometry geometry = null;
+
+        // the chunks are loaded beforehand, this only counts the loads that would still slip through
+        if (!destination.isChunkLoaded())
+            plugin.getMetrics().increment(Counter.SYNC_CHUNK_LOADS);
+
+        if (destination.getBlock().getType() == Material.NETHER_PORTAL)
+            geometry = resolveGeometry(destination, isCustom);
+
+        if (geometry == null)
+            plugin.getPortalLocationManager().deletePortal(destination, isCustom);
+
+        return geometry;
+    }
+
+    /**
+     * Drop the destination search of a player, if there is any. Their portal won't be created.
+     */
+    public void cancelPortalSearch(UUID playerId) {
+        PendingSearch search = pendingSearches.get(playerId);
+        if (search != null)
+            finishPortalSearch(search);
+    }
 
+    public void cancelPortalSearches() {
+        for (PendingSearch search : new ArrayList<>(pendingSearches.values()))
+            finishPortalSearch(search);
+
+        slicedSearches.clear();
+
+        if (slicingTask != null) {
+            slicingTask.cancel();
+            slicingTask = null;
+        }
+    }
+
+    ChunkTickets getChunkTickets() {
+        return chunkTickets;
+    }
+
+    /**
+     * Teleport the entity through the given portals, then link them, so that the next trip follows the same path.
+     * <br><br>
+     * The destination chunks are loaded without blocking the server; the entity stays in the portal meanwhile, and
+     * everything that depends on its arrival is done once it is there. The trip is counted under the given outcome
+     * once the entity has arrived.
+     */
+    private void teleport(
+        Entity entity,
+        Location referenceLocation, PortalGeometry referenceGeometry,
+        Location destinationPortal, PortalGeometry destinationGeometry,
+        boolean isCustom, Counter outcome
+    ) {
         // adjust the destination based on the entity's position inside the portal, and its hitbox
-        destination = adjustDestination(entity, referenceLocation, destination);
+        Location destination = adjustDestination(
+            entity,
+            referenceLocation, referenceGeometry,
+            destinationPortal, destinationGeometry
+        );
 
         // something bad happened, abort
         if (destination == null)
@@ -192,48 +434,520 @@ public class PortalLogicManager {
                       );
 
         Bukkit.getPluginManager().callEvent(event);
-        if (((Cancellable) event).isCancelled())
+        if (((Cancellable) event).isCancelled()) {
+            plugin.getMetrics().increment(Counter.TELEPORTS_CANCELLED);
             return;
+        }
 
-        entity.teleport(destination);
+        UUID entityId = entity.getUniqueId();
+        teleportingEntities.add(entityId);
+
+        entity.teleportAsync(destination).whenComplete((teleported, throwable) -> {
+            teleportingEntities.remove(entityId);
+
+            if (throwable != null) {
+                plugin.getLogger().severe(plugin.prefixMessage(
+                    "Could not teleport an entity through a portal: " + throwable.getMessage()
+                ));
+                return;
+            }
+
+            if (!teleported)
+                return;
+
+            plugin.getMetrics().increment(outcome);
+            plugin.getPortalLocationManager().saveLink(referenceLocation, destinationPortal, isCustom);
+
+            // non-player entities need a portal cooldown to avoid being in a constant teleportation loop
+            if (entity instanceof Player player) {
+                player.playSound(player.getLocation(), Sound.BLOCK_PORTAL_TRAVEL, SoundCategory.AMBIENT, 0.25f, 1);
+                return;
+            }
+
+            if (!entity.isValid())
+                return;
 
-        // non-player entities need a portal cooldown to avoid being in a constant teleportation loop
-        if (entity instanceof Player player) {
-            player.playSound(player.getLocation(), Sound.BLOCK_PORTAL_TRAVEL, SoundCategory.AMBIENT, 0.25f, 1);
-        } else {
             entity.setPortalCooldown(NON_PLAYER_ENTITY_PORTAL_CD);
-            entity.teleport(destination); // teleport again, for the Spigot API can't teleport precisely between worlds
+
+            // the Spigot API can't teleport precisely between worlds, move the entity to the exact spot if it is off,
+            // which no longer loads anything
+            Location arrival = entity.getLocation();
+
+            if (!Objects.equals(arrival.getWorld(), destination.getWorld()) ||
+                arrival.distanceSquared(destination) > ARRIVAL_PRECISION_SQUARED)
+                entity.teleport(destination);
+        });
+    }
+
+    /**
+     * Look for a place to create the destination portal at, without blocking the server:
+     * <ol>
+     *     <li>load the chunks around the desired destination asynchronously;</li>
+     *     <li>capture snapshots of them, on the main thread;</li>
+     *     <li>search the snapshots, off the main thread;</li>
+     *     <li>create the portal and teleport the player, back on the main thread.</li>
+     * </ol>
+     * Where searching off the main thread isn't wanted, the snapshots are searched on the main thread instead, a slice
+     * of the search every tick (see {@link ConfigSnapshot#getMainThreadSearchBudget()}).
+     * <br><br>
+     * The player waits in the portal meanwhile. The search is dropped if the player leaves the portal or the server.
+     */
+    private void startPortalSearch(
+        Player player,
+        Location referenceLocation, PortalGeometry referenceGeometry,
+        Location desiredDestination, boolean isCustom
+    ) {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        PendingSearch search = new PendingSearch(
+            player.getUniqueId(),
+            referenceLocation,
+            referenceGeometry,
+            desiredDestination,
+            isCustom,
+            config,
+            getCeiling(desiredDestination.getWorld())
+        );
+
+        pendingSearches.put(search.playerId, search);
+
+        World world = desiredDestination.getWorld();
+        int reach = getSearchReach(config);
+
+        int minChunkX = (desiredDestination.getBlockX() - reach) >> 4;
+        int maxChunkX = (desiredDestination.getBlockX() + reach) >> 4;
+        int minChunkZ = (desiredDestination.getBlockZ() - reach) >> 4;
+        int maxChunkZ = (desiredDestination.getBlockZ() + reach) >> 4;
+
+        List<CompletableFuture<Chunk>> chunkFutures = new ArrayList<>();
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++)
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++)
+                chunkFutures.add(world.getChunkAtAsync(chunkX, chunkZ));
+
+        CompletableFuture.allOf(chunkFutures.toArray(CompletableFuture[]::new)).whenComplete(
+            (ignored, throwable) -> runOnMainThread(() -> {
+                if (throwable != null) {
+                    plugin.getLogger().severe(plugin.prefixMessage(
+                        "Could not load the chunks around the destination portal: " + throwable.getMessage()
+                    ));
+                    finishPortalSearch(search);
+                    return;
+                }
+
+                if (!isStillWaiting(search)) {
+                    finishPortalSearch(search);
+                    return;
+                }
+
+                // keep the chunks loaded until the portal is created, and capture them for the search
+                BlockSource.Snapshots snapshots = new BlockSource.Snapshots(world);
+
+                for (CompletableFuture<Chunk> chunkFuture : chunkFutures) {
+                    Chunk chunk = chunkFuture.join();
+                    chunkTickets.hold(chunk);
+
+                    search.chunks.add(chunk);
+                    snapshots.add(chunk.getChunkSnapshot(false, false, false));
+                }
+
+                search.snapshots = snapshots;
+                search.progress = new SearchProgress(snapshots, search);
+
+                resumePortalSearch(search);
+            })
+        );
+    }
+
+    /**
+     * On the main thread: run the search from where it stopped, off the main thread, or sliced on it.
+     */
+    private void resumePortalSearch(PendingSearch search) {
+        if (search.config.getMainThreadSearchBudget() > 0)
+            queueSlicedSearch(search);
+        else
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> searchSnapshots(search));
+    }
+
+    /**
+     * Off the main thread: find the closest place the new portal fits in.
+     */
+    private void searchSnapshots(PendingSearch search) {
+        BlockSource.Snapshots snapshots = search.snapshots;
+        SearchData searchData = null;
+        long start = System.nanoTime();
+        DestinationSearchEvent flightEvent = DestinationSearchEvent.beginIf(
+            search.config.isFlightRecorderEventsEnabled()
+        );
+
+        try {
+            // perform vanilla checks, or, if allowed, remove the need for a floor - may generate in the air
+            continueSearch(snapshots, search, search.progress, NO_DEADLINE);
+            searchData = search.progress.result;
+        } catch (RuntimeException e) {
+            plugin.getLogger().severe(plugin.prefixMessage(
+                "Could not search for a place for the destination portal: " + e.getMessage()
+            ));
+            runOnMainThread(() -> finishPortalSearch(search));
+            return;
+        } finally {
+            plugin.getMetrics().record(Operation.PORTAL_SEARCH, start);
+            plugin.getMetrics().add(Counter.SEARCH_CANDIDATES, search.visitedCandidates);
+            plugin.getMetrics().add(Counter.BLOCKS_READ, snapshots.getBlocksRead());
+
+            if (flightEvent != null)
+                flightEvent.finish(
+                    search.referenceLocation,
+                    search.desiredDestination,
+                    searchData != null ? searchData.location() : null,
+                    searchData != null && searchData.mustHaveFloor(),
+                    search.visitedCandidates,
+                    snapshots.getBlocksRead()
+                );
         }
+
+        SearchData result = searchData;
+        runOnMainThread(() -> completePortalSearch(search, result));
+
+        // the completion has been handed over already, so the player never waits for the capture
+        long duration = System.nanoTime() - start;
+
+        if (slowOperationTracer.shouldCapture(search.config, duration))
+            slowOperationTracer.write(
+                SearchCapture.capture(
+                    SlowOperationTracer.SEARCH, duration, search.config,
+                    search.referenceLocation, search.referenceGeometry, search.isCustom,
+                    search.desiredDestination, search.ceiling, snapshots
+                ),
+                search.config.getSlowOperationMaxCaptures()
+            );
     }
 
     /**
-     * Attempt to create a portal as close to the destination as possible.
-     * May fail in special cases (e.g.: a player not having perms to build at the destination).
+     * On the main thread: search the snapshots a slice at a time, once the searches queued before are over.
      */
-    private Location createNewPortal(Location desiredDestination, Entity entity, Axis preferredAxis, boolean isCustom) {
-        // only players may create portals
-        if (!(entity instanceof Player))
-            return null;
+    private void queueSlicedSearch(PendingSearch search) {
+        slicedSearches.add(new SlicedSearch(
+            search,
+            DestinationSearchEvent.beginIf(search.config.isFlightRecorderEventsEnabled())
+        ));
+
+        if (slicingTask == null)
+            slicingTask = Bukkit.getScheduler().runTaskTimer(plugin, this::runSearchSlice, 1, 1);
+    }
+
+    /**
+     * Every tick, while searches are queued: run them one after the other, from where they stopped the tick before,
+     * until the budget runs out. The searches that are over are completed right away.
+     */
+    private void runSearchSlice() {
+        long start = System.nanoTime();
+
+        while (!slicedSearches.isEmpty()) {
+            SlicedSearch sliced = slicedSearches.peek();
+            long budget = sliced.search.config.getMainThreadSearchBudget();
+
+            if (!continueSlicedSearch(sliced, start + budget))
+                break;
+
+            slicedSearches.poll();
+
+            // the budget is spent, the next search starts on the next tick
+            if (System.nanoTime() - start >= budget)
+                break;
+        }
+
+        if (slicedSearches.isEmpty()) {
+            slicingTask.cancel();
+            slicingTask = null;
+        }
+
+        plugin.getMetrics().record(Operation.SEARCH_SLICE, start);
+    }
+
+    /**
+     * @return Whether the search is over, whether it has been completed or dropped.
+     */
+    private boolean continueSlicedSearch(SlicedSearch sliced, long deadline) {
+        PendingSearch search = sliced.search;
+
+        // don't spend the tick on a search nobody waits for anymore
+        if (!isStillWaiting(search)) {
+            finishPortalSearch(search);
+            return true;
+        }
+
+        boolean isOver;
+        long start = System.nanoTime();
+
+        try {
+            isOver = continueSearch(search.snapshots, search, search.progress, deadline);
+        } catch (RuntimeException e) {
+            plugin.getLogger().severe(plugin.prefixMessage(
+                "Could not search for a place for the destination portal: " + e.getMessage()
+            ));
+            finishPortalSearch(search);
+            return true;
+        } finally {
+            sliced.searchTime += System.nanoTime() - start;
+        }
+
+        if (!isOver)
+            return false;
+
+        SearchData searchData = search.progress.result;
+
+        // from when the search has been queued, which is how long the player has waited for it
+        plugin.getMetrics().record(Operation.PORTAL_SEARCH, sliced.start);
+        plugin.getMetrics().add(Counter.SEARCH_CANDIDATES, search.visitedCandidates);
+        plugin.getMetrics().add(Counter.BLOCKS_READ, search.snapshots.getBlocksRead());
+
+        if (sliced.flightEvent != null)
+            sliced.flightEvent.finish(
+                search.referenceLocation,
+                search.desiredDestination,
+                searchData != null ? searchData.location() : null,
+                searchData != null && searchData.mustHaveFloor(),
+                search.visitedCandidates,
+                search.snapshots.getBlocksRead()
+            );
+
+        completePortalSearch(search, searchData);
+
+        // only the time spent searching counts, not the ticks in between, and the snapshots are read in the background
+        if (slowOperationTracer.shouldCapture(search.config, sliced.searchTime))
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> slowOperationTracer.write(
+                SearchCapture.capture(
+                    SlowOperationTracer.SEARCH, sliced.searchTime, search.config,
+                    search.referenceLocation, search.referenceGeometry, search.isCustom,
+                    search.desiredDestination, search.ceiling, search.snapshots
+                ),
+                search.config.getSlowOperationMaxCaptures()
+            ));
+
+        return true;
+    }
+
+    /**
+     * Back on the main thread: make sure the search result still holds, create the portal and teleport the player.
+     */
+    private void completePortalSearch(PendingSearch search, SearchData searchData) {
+        if (!isStillWaiting(search)) {
+            finishPortalSearch(search);
+            return;
+        }
 
-        // perform vanilla checks - search for a simple, empty location, atop a floor of buildable blocks
-        SearchData searchData = findValidLocation(desiredDestination, preferredAxis, true, isCustom);
+        ConfigSnapshot config = search.config;
+        Location desiredDestination = search.desiredDestination;
+        BlockSource liveWorld = BlockSource.of(desiredDestination.getWorld());
+
+        // the world may have changed since the snapshots were taken
+        if (searchData != null) {
+            SearchData found = searchData;
+
+            searchData = isValidLocation(
+                liveWorld,
+                config,
+                found.location(),
+                found.axis(),
+                found.mustHaveFloor(),
+                search.isCustom
+            );
+
+            // go on past that place; the floating place is only settled on once every candidate has been visited, so
+            // if it doesn't hold either, the portal is forced instead
+            if (searchData == null && found.mustHaveFloor()) {
+                resumePortalSearch(search);
+                return;
+            }
+        }
 
-        // remove the need for a floor - may generate in the air
-        if (searchData == null && plugin.getConfigManager().isFloatingPlacementAllowed())
-            searchData = findValidLocation(desiredDestination, preferredAxis, false, isCustom);
+        Counter outcome = searchData == null ? Counter.TELEPORTS_FORCED :
+                          searchData.mustHaveFloor() ? Counter.TELEPORTS_CREATED :
+                          Counter.TELEPORTS_FLOATING;
 
         // force a portal at the location, wherever it may happen to generate, and overwrite whatever is there
-        if (searchData == null && plugin.getConfigManager().isForcedPlacementAllowed())
-            searchData = new SearchData(desiredDestination, preparePortalBlocks(
+        if (searchData == null && config.isForcedPlacementAllowed()) {
+            Axis axis = search.referenceGeometry.axis();
+
+            searchData = new SearchData(desiredDestination, axis, false, preparePortalBlocks(
+                config,
                 desiredDestination,
-                preferredAxis,
+                axis,
                 true,
-                isCustom
+                search.isCustom
             ));
+        }
+
+        Player player = Bukkit.getPlayer(search.playerId);
+        finishPortalSearch(search);
 
         // if after all of this we still don't have a portal, stop
-        if (searchData == null)
-            return null;
+        if (searchData == null || player == null)
+            return;
+
+        long creationStart = System.nanoTime();
+        PortalCreationEvent flightEvent = PortalCreationEvent.beginIf(config.isFlightRecorderEventsEnabled());
+        Location destination = createNewPortal(searchData, desiredDestination, player, search.isCustom, config);
+
+        if (flightEvent != null)
+            flightEvent.finish(searchData.location(), searchData.axis(), search.isCustom, outcome, destination != null);
+
+        long creationDuration = System.nanoTime() - creationStart;
+
+        if (slowOperationTracer.shouldCapture(config, creationDuration))
+            captureLoadedChunks(
+                SlowOperationTracer.CREATION, creationDuration, config,
+                search.referenceLocation, search.referenceGeometry, search.isCustom,
+                desiredDestination
+            );
+
+        // may be null due to other event cancellations
+        if (destination == null) {
+            plugin.getMetrics().increment(Counter.TELEPORTS_CANCELLED);
+            return;
+        }
+
+        PortalGeometry destinationGeometry = plugin.getPortalLocationManager().getGeometry(
+            destination.getWorld(),
+            search.isCustom,
+            BlockPos.pack(destination)
+        );
+
+        teleport(
+            player,
+            search.referenceLocation,
+            search.referenceGeometry,
+            destination,
+            destinationGeometry,
+            search.isCustom,
+            outcome
+        );
+    }
+
+    /**
+     * @return Whether the player is still online, and inside the portal that started the search.
+     */
+    private boolean isStillWaiting(PendingSearch search) {
+        if (search.cancelled)
+            return false;
+
+        Player player = Bukkit.getPlayer(search.playerId);
+
+        return player != null && isInPortal(player, search.referenceLocation);
+    }
+
+    /**
+     * @return Whether the entity stands in the portal of the given reference point.
+     */
+    private boolean isInPortal(Entity entity, Location referenceLocation) {
+        ReferencePoint current = getReferencePoint(entity);
+
+        return current != null &&
+               current.location().getWorld() == referenceLocation.getWorld() &&
+               BlockPos.pack(current.location()) == BlockPos.pack(referenceLocation);
+    }
+
+    private void finishPortalSearch(PendingSearch search) {
+        search.cancelled = true;
+        pendingSearches.remove(search.playerId, search);
+
+        for (Chunk chunk : search.chunks)
+            chunkTickets.release(chunk);
+
+        search.chunks.clear();
+    }
+
+    private void runOnMainThread(Runnable task) {
+        // tasks can't be scheduled anymore while disabling, and nothing is waiting for them anyway
+        if (!plugin.isEnabled())
+            return;
+
+        if (Bukkit.isPrimaryThread())
+            task.run();
+        else
+            Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    /**
+     * @return How far from the desired destination a destination search may read blocks, horizontally.
+     */
+    private static int getSearchReach(ConfigSnapshot config) {
+        // a portal may be placed anywhere within the horizontal offset, and spans its width plus the frame around it
+        return config.getMaxPortalPlacementOffsetHorizontal() + config.getPortalSizeWidthNew() + 2;
+    }
+
+    /**
+     * Capture a slow teleport, with the destination search it would start if there were no portal to go to.
+     */
+    private void captureTeleportIfSlow(long start, ReferencePoint referencePoint) {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        long duration = System.nanoTime() - start;
+
+        if (!slowOperationTracer.shouldCapture(config, duration))
+            return;
+
+        Location referenceLocation = referencePoint.location();
+        boolean isCustom = referencePoint.isCustom();
+
+        PortalGeometry referenceGeometry = resolveGeometry(referenceLocation, isCustom);
+        Location desiredDestination = getScaledDestination(referenceLocation, isCustom);
+
+        if (referenceGeometry != null && desiredDestination != null)
+            captureLoadedChunks(
+                SlowOperationTracer.TELEPORT, duration, config,
+                referenceLocation, referenceGeometry, isCustom,
+                desiredDestination
+            );
+    }
+
+    /**
+     * On the main thread: snapshot the chunks around the desired destination that are loaded already, without
+     * loading any, then write the capture in the background.
+     */
+    private void captureLoadedChunks(
+        String operation, long duration, ConfigSnapshot config,
+        Location referenceLocation, PortalGeometry referenceGeometry, boolean isCustom,
+        Location desiredDestination
+    ) {
+        World world = desiredDestination.getWorld();
+        int reach = getSearchReach(config);
+        int ceiling = getCeiling(world);
+
+        int minChunkX = (desiredDestination.getBlockX() - reach) >> 4;
+        int maxChunkX = (desiredDestination.getBlockX() + reach) >> 4;
+        int minChunkZ = (desiredDestination.getBlockZ() - reach) >> 4;
+        int maxChunkZ = (desiredDestination.getBlockZ() + reach) >> 4;
+
+        BlockSource.Snapshots snapshots = new BlockSource.Snapshots(world);
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++)
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++)
+                if (world.isChunkLoaded(chunkX, chunkZ))
+                    snapshots.add(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> slowOperationTracer.write(
+            SearchCapture.capture(
+                operation, duration, config,
+                referenceLocation, referenceGeometry, isCustom,
+                desiredDestination, ceiling, snapshots
+            ),
+            config.getSlowOperationMaxCaptures()
+        ));
+    }
+
+    /**
+     * Create a portal at the place found by a search.
+     * May fail in special cases (e.g.: a player not having perms to build at the destination).
+     */
+    private Location createNewPortal(
+        SearchData searchData, Location desiredDestination,
+        Player player, boolean isCustom, ConfigSnapshot config
+    ) {
+        PortalGeometry geometry = new PortalGeometry(
+            searchData.axis(),
+            config.getPortalSizeWidthNew(),
+            config.getPortalSizeHeightNew()
+        );
 
         List<PortalBlockData> portalBlocks = searchData.data();
 
@@ -245,7 +959,7 @@ public class PortalLogicManager {
         CustomPortalCreateEvent event = new CustomPortalCreateEvent(
             eventBlocks,
             desiredDestination.getWorld(),
-            entity,
+            player,
             PortalCreateEvent.CreateReason.NETHER_PAIR
         );
 
@@ -258,72 +972,123 @@ public class PortalLogicManager {
             data.location().getBlock().setBlockData(data.blockData());
 
         // save this table for lookup
-        plugin.getPortalLocationManager().savePortal(searchData.location(), isCustom);
+        plugin.getPortalLocationManager().savePortal(searchData.location(), geometry, isCustom);
 
         return searchData.location();
     }
 
     /**
-     * Find a volume of replaceable blocks (mostly air). Attempt to searching in a cylinder around the desired
-     * destination, expanding the search in a spherical manner to ensure that the result is the closest available
-     * location.
+     * Find a volume of replaceable blocks (mostly air), atop a floor of buildable blocks. Candidates are visited in
+     * a cylinder around the desired destination, closest first, so that the result is the closest available location.
+     * <br><br>
+     * If no candidate has a floor and floating placement is allowed, the closest candidate that fits a floating
+     * portal is returned instead. Both are looked for in the same pass.
+     * <br><br>
+     * Runs off the main thread, thus it only reads the given block source, and stops early if the search gets dropped.
      */
-    private SearchData findValidLocation(
-        Location desiredDestination, Axis preferredAxis,
-        boolean mustHaveFloor, boolean isCustom
-    ) {
-        Set<Location> checked = new HashSet<>();
-        Queue<Location> toCheck = new LinkedList<>();
+    SearchData findValidLocation(BlockSource source, PendingSearch search) {
+        SearchProgress progress = new SearchProgress(source, search);
+        continueSearch(source, search, progress, NO_DEADLINE);
 
-        int maxHorizontalOffset = plugin.getConfigManager().getMaxPortalPlacementOffsetHorizontal();
-        int maxVerticalOffset = plugin.getConfigManager().getMaxPortalPlacementOffsetVertical();
-        int portalHeight = plugin.getConfigManager().getPortalSizeHeightNew();
+        return progress.result;
+    }
 
-        Vector originVec = desiredDestination.toVector();
-        World originWorld = desiredDestination.getWorld();
-        Axis otherAxis = preferredAxis == Axis.X ? Axis.Z : Axis.X;
+    /**
+     * Visit the candidates of {@link #findValidLocation(BlockSource, PendingSearch)}, from where the search last
+     * stopped, until a place is found, every candidate has been visited, or the deadline has passed.
+     *
+     * @param deadline The {@link System#nanoTime()} to stop at, or {@link #NO_DEADLINE}. At least a few candidates are
+     *                 visited either way, so that the search always moves forward.
+     * @return Whether the search is over, its result being in the progress.
+     */
+    private boolean continueSearch(BlockSource source, PendingSearch search, SearchProgress progress, long deadline) {
+        ConfigSnapshot config = search.config;
+        Axis preferredAxis = search.referenceGeometry.axis();
+        Axis[] axes = { preferredAxis, preferredAxis == Axis.X ? Axis.Z : Axis.X };
+        boolean isCustom = search.isCustom;
+        boolean allowFloating = config.isFloatingPlacementAllowed();
+        long[] offsets = config.getSearchOffsets();
+
+        Location desiredDestination = search.desiredDestination;
+        int originX = desiredDestination.getBlockX();
+        int originY = desiredDestination.getBlockY();
+        int originZ = desiredDestination.getBlockZ();
 
         // don't generate portals above the nether ceiling
-        double minY = originWorld.getMinHeight() + 1d;
-        double maxY = (originWorld == nether ? netherBedrockCeiling : originWorld.getMaxHeight()) - (portalHeight + 1d);
+        int portalHeight = config.getPortalSizeHeightNew();
+        int minY = desiredDestination.getWorld().getMinHeight() + 1;
+        int maxY = search.ceiling - (portalHeight + 1);
+
+        int portalWidth = config.getPortalSizeWidthNew();
+        Location candidate = progress.candidate;
+        int sinceDeadlineCheck = 0;
+
+        while (progress.nextOffset < offsets.length) {
+            if (search.cancelled) {
+                progress.result = null;
+                return true;
+            }
 
-        // start from the desired destination, and expand the search in a spherical manner
-        toCheck.offer(desiredDestination);
+            // reading the clock costs about as much as rejecting a candidate, don't read it for every one
+            if (deadline != NO_DEADLINE && ++sinceDeadlineCheck == DEADLINE_CHECK_INTERVAL) {
+                sinceDeadlineCheck = 0;
 
-        while (!toCheck.isEmpty()) {
-            Location current = toCheck.poll();
+                if (System.nanoTime() >= deadline)
+                    return false;
+            }
+
+            long offset = offsets[progress.nextOffset++];
 
-            // skip already checked coordinates
-            if (checked.contains(current))
+            // keep within world bounds
+            int y = originY + SearchOffsets.unpackY(offset);
+            if (y < minY || y > maxY)
                 continue;
 
-            checked.add(current);
+            int x = originX + SearchOffsets.unpackX(offset);
+            int z = originZ + SearchOffsets.unpackZ(offset);
+            candidate.set(x, y, z);
+            search.visitedCandidates++;
 
-            // keep within horizontal bounds
-            if (current.toVector().setY(originVec.getY()).distance(originVec) > maxHorizontalOffset)
-                continue;
+            // stop when a valid location has been found, otherwise continue searching, attempting both orientations
+            SearchData data = findValidOrientation(
+                source, progress.mask, config, candidate, axes, portalWidth, portalHeight, true, isCustom
+            );
 
-            // keep within world bounds
-            if (current.getY() < minY || current.getY() > maxY)
-                continue;
+            if (data != null) {
+                progress.result = data;
+                return true;
+            }
 
-            // keep within vertical bounds
-            if (Math.abs(current.getY() - originVec.getY()) > maxVerticalOffset)
-                continue;
+            // remember the closest place for a floating portal, in case no portal with a floor fits anywhere
+            if (allowFloating && progress.floating == null)
+                progress.floating = findValidOrientation(
+                    source, progress.mask, config, candidate, axes, portalWidth, portalHeight, false, isCustom
+                );
+        }
 
-            // a check shall be performed - add adjacent locations for future processing
-            for (int x = -1; x <= 1; x++)
-                for (int y = -1; y <= 1; y++)
-                    for (int z = -1; z <= 1; z++)
-                        toCheck.add(current.clone().add(x, y, z));
+        progress.result = progress.floating;
+        return true;
+    }
 
-            // stop when a valid location has been found, otherwise continue searching
-            SearchData data = isValidLocation(current, preferredAxis, mustHaveFloor, isCustom);
-            if (data != null)
-                return data;
+    /**
+     * Test the candidate against the occupancy mask first, and only perform the full check if it passes.
+     * The axes are attempted in order, the preferred one first.
+     */
+    private SearchData findValidOrientation(
+        BlockSource source, OccupancyMask mask, ConfigSnapshot config,
+        Location candidate, Axis[] axes,
+        int portalWidth, int portalHeight,
+        boolean mustHaveFloor, boolean isCustom
+    ) {
+        int x = candidate.getBlockX();
+        int y = candidate.getBlockY();
+        int z = candidate.getBlockZ();
+
+        for (Axis axis : axes) {
+            if (!mask.fits(x, y, z, axis, portalWidth, portalHeight, mustHaveFloor))
+                continue;
 
-            // attempt the other orientation
-            data = isValidLocation(current, otherAxis, mustHaveFloor, isCustom);
+            SearchData data = isValidLocation(source, config, candidate, axis, mustHaveFloor, isCustom);
             if (data != null)
                 return data;
         }
@@ -336,11 +1101,15 @@ public class PortalLogicManager {
      * The portal must have a floor below it made out of buildable blocks.
      * If there are blocks that a portal can't replace, the location is invalid.
      */
-    private SearchData isValidLocation(Location location, Axis axis, boolean mustHaveFloor, boolean isCustom) {
+    SearchData isValidLocation(
+        BlockSource source, ConfigSnapshot config,
+        Location location, Axis axis,
+        boolean mustHaveFloor, boolean isCustom
+    ) {
         Vector direction = VectorAxis.of(axis);
         Vector sideDirection = VectorAxis.ofSide(axis);
 
-        int portalWidth = plugin.getConfigManager().getPortalSizeWidthNew();
+        int portalWidth = config.getPortalSizeWidthNew();
 
         // check floor below volume
         boolean hasFloor = !mustHaveFloor || LocationUtil.getLocationsBetween(
@@ -351,29 +1120,34 @@ public class PortalLogicManager {
                 .add(sideDirection)
                 .add(direction.clone().multiply(portalWidth - 1))
                 .subtract(VectorAxis.Y.clone().multiply(2))
-        ).stream().map(Location::getBlock).allMatch(Block::isBuildable);
+        ).stream().allMatch(floor -> source.isBuildable(floor.getBlockX(), floor.getBlockY(), floor.getBlockZ()));
 
         if (!hasFloor)
             return null;
 
         // check volume
-        List<PortalBlockData> blocks = preparePortalBlocks(location, axis, !mustHaveFloor, isCustom);
+        List<PortalBlockData> blocks = preparePortalBlocks(config, location, axis, !mustHaveFloor, isCustom);
 
         // if a block already exists in the world, it is good; if it doesn't, the existing block must be replaceable
         for (PortalBlockData data : blocks) {
-            Block existingBlock = data.location().getBlock();
+            Location blockLocation = data.location();
+            BlockData existingBlock = source.getBlockData(
+                blockLocation.getBlockX(),
+                blockLocation.getBlockY(),
+                blockLocation.getBlockZ()
+            );
 
-            if (existingBlock.getBlockData().equals(data.blockData()))
+            if (existingBlock.equals(data.blockData()))
                 continue; // already exists in the world
 
-            if (Constants.REPLACEABLE_BLOCKS.contains(existingBlock.getType()))
+            if (config.isReplaceable(existingBlock.getMaterial()))
                 continue; // is replaceable
 
             return null; // a block is neither existing nor replaceable, stop
         }
 
         // every block is good
-        return new SearchData(location, blocks);
+        return new SearchData(location.clone(), axis, mustHaveFloor, blocks);
     }
 
     /**
@@ -384,13 +1158,14 @@ public class PortalLogicManager {
      * the portal, (also out of crying obsidian).
      */
     private List<PortalBlockData> preparePortalBlocks(
+        ConfigSnapshot config,
         Location referencePoint, Axis axis,
         boolean generatePlatform, boolean isCustom
     ) {
         List<PortalBlockData> data = new ArrayList<>();
 
-        int portalHeight = plugin.getConfigManager().getPortalSizeHeightNew();
-        int portalWidth = plugin.getConfigManager().getPortalSizeWidthNew();
+        int portalHeight = config.getPortalSizeHeightNew();
+        int portalWidth = config.getPortalSizeWidthNew();
 
         Vector direction = VectorAxis.of(axis);
         Vector sideDirection = VectorAxis.ofSide(axis);
@@ -403,8 +1178,7 @@ public class PortalLogicManager {
                 .add(VectorAxis.Y.clone().multiply(portalHeight))
         );
 
-        BlockData frame = isCustom ? plugin.getConfigManager().getFrameBlock().createBlockData() :
-                          Constants.VANILLA_FRAME_BLOCK.createBlockData();
+        BlockData frame = config.getFrameBlock(isCustom).createBlockData();
         BlockData air = Material.AIR.createBlockData();
 
         for (Location location : frameBlocks)
@@ -457,60 +1231,47 @@ public class PortalLogicManager {
      * exit through the very center, etc.
      * <br><br>
      * This method ensures that happens. It also handles the case where the axis of the destination portal is different.
+     * <br><br>
+     * Both portals are measured through their stored shapes, without reading any block.
      */
-    private Location adjustDestination(Entity entity, Location initialLocation, Location destination) {
-        Axis initialAxis = ((Orientable) initialLocation.getBlock().getBlockData()).getAxis();
-        Axis destinationAxis = ((Orientable) destination.getBlock().getBlockData()).getAxis();
-
-        Set<Material> innerBlocks = Collections.singleton(Material.NETHER_PORTAL);
-        int maxWidth = plugin.getConfigManager().getPortalSizeWidthMax();
-
-        // find the other wall of the portal - we know for sure the initial location is next to one of the walls
-        ReferencePoint limit = findFrameLimit(
-            initialLocation,
-            VectorAxis.of(initialAxis),
-            innerBlocks,
-            maxWidth
-        );
-
-        // something terribly bad has happened, nobody knows what, stop - shouldn't happen
-        if (limit == null)
+    Location adjustDestination(
+        Entity entity,
+        Location initialLocation, PortalGeometry initialGeometry,
+        Location destination, PortalGeometry destinationGeometry
+    ) {
+        // shouldn't happen, the destination has just been validated or created
+        if (destinationGeometry == null)
             return null;
 
+        Axis initialAxis = initialGeometry.axis();
+        Axis destinationAxis = destinationGeometry.axis();
+
         // find where the entity is inside the portal, relative to its width
         double positionFactor = initialAxis == Axis.X ?
                                 LocationUtil.mapInterval(
-                                    initialLocation.getX(), limit.location().getX() + 1,
+                                    initialLocation.getX(), initialLocation.getX() + initialGeometry.width(),
                                     0, 1,
                                     entity.getLocation().getX()
                                 ) :
                                 LocationUtil.mapInterval(
-                                    initialLocation.getZ(), limit.location().getZ() + 1,
+                                    initialLocation.getZ(), initialLocation.getZ() + initialGeometry.width(),
                                     0, 1,
                                     entity.getLocation().getZ()
                                 );
 
-        // find the other wall of the portal - for the destination
-        ReferencePoint destinationLimit = findFrameLimit(
-            destination,
-            VectorAxis.of(destinationAxis),
-            innerBlocks,
-            maxWidth
-        );
-
-        // how is this even possible
-        if (destinationLimit == null)
-            return null;
+        // the other wall of the destination portal
+        double destinationLimit = (destinationAxis == Axis.X ? destination.getX() : destination.getZ()) +
+                                  destinationGeometry.width();
 
         double adjustedCoordinate = destinationAxis == Axis.X ?
                                     LocationUtil.mapInterval(
                                         0, 1,
-                                        destination.getX(), destinationLimit.location().getX() + 1,
+                                        destination.getX(), destinationLimit,
                                         positionFactor
                                     ) :
                                     LocationUtil.mapInterval(
                                         0, 1,
-                                        destination.getZ(), destinationLimit.location().getZ() + 1,
+                                        destination.getZ(), destinationLimit,
                                         positionFactor
                                     );
 
@@ -530,7 +1291,7 @@ public class PortalLogicManager {
             ));
             adjustedLocation.setX(Math.min(
                 adjustedLocation.getX(),
-                destinationLimit.location().getX() + 1 - widthOffset
+                destinationLimit - widthOffset
             ));
         } else {
             adjustedLocation.setZ(adjustedCoordinate);
@@ -545,7 +1306,7 @@ public class PortalLogicManager {
             ));
             adjustedLocation.setZ(Math.min(
                 adjustedLocation.getZ(),
-                destinationLimit.location().getZ() + 1 - widthOffset
+                destinationLimit - widthOffset
             ));
         }
 
@@ -560,6 +1321,69 @@ public class PortalLogicManager {
         return adjustedLocation;
     }
 
+    /**
+     * Get the shape of a portal from the registry. Portals registered without their shape (or not registered at all)
+     * have it measured by walking their blocks. Registered portals then have it stored for subsequent teleports.
+     * <br><br>
+     * Returns {@code null} if the location is not the reference point of a portal.
+     */
+    private PortalGeometry resolveGeometry(Location referenceLocation, boolean isCustom) {
+        World world = referenceLocation.getWorld();
+        long position = BlockPos.pack(referenceLocation);
+
+        PortalGeometry geometry = plugin.getPortalLocationManager().getGeometry(world, isCustom, position);
+        if (geometry != null)
+            return geometry;
+
+        geometry = measureGeometry(referenceLocation);
+        if (geometry == null)
+            return null;
+
+        // fill in the shape of portals registered before shapes were stored
+        if (plugin.getPortalLocationManager().hasPortal(world, isCustom, position))
+            plugin.getPortalLocationManager().savePortal(referenceLocation, geometry, isCustom);
+
+        return geometry;
+    }
+
+    /**
+     * Measure the shape of a portal by walking its blocks, from its reference point up to the frame.
+     *
+     * @return The shape, or {@code null} if the location is not the reference point of a portal.
+     */
+    PortalGeometry measureGeometry(Location referenceLocation) {
+        if (!(referenceLocation.getBlock().getBlockData() instanceof Orientable orientable))
+            return null;
+
+        Axis axis = orientable.getAxis();
+        Set<Material> innerBlocks = Collections.singleton(Material.NETHER_PORTAL);
+
+        ReferencePoint widthLimit = findFrameLimit(
+            referenceLocation,
+            VectorAxis.of(axis),
+            innerBlocks,
+            plugin.getConfigManager().getPortalSizeWidthMax()
+        );
+
+        ReferencePoint heightLimit = findFrameLimit(
+            referenceLocation,
+            VectorAxis.Y,
+            innerBlocks,
+            plugin.getConfigManager().getPortalSizeHeightMax()
+        );
+
+        if (widthLimit == null || heightLimit == null)
+            return null;
+
+        return new PortalGeometry(
+            axis,
+            axis == Axis.X ?
+            widthLimit.location().getBlockX() - referenceLocation.getBlockX() + 1 :
+            widthLimit.location().getBlockZ() - referenceLocation.getBlockZ() + 1,
+            heightLimit.location().getBlockY() - referenceLocation.getBlockY() + 1
+        );
+    }
+
     /**
      * Get the bottommost and northwesternmost portal block that is part of the portal the entity is touching.
      * This is a reference point for the said portal, to use while computing coordinate scaling.
@@ -588,6 +1412,50 @@ public class PortalLogicManager {
         return getReferencePoint(touchingPortal.get());
     }
 
+    /**
+     * Same as {@link #getReferencePoint(Entity)}, but the result (even a missing one) is remembered for as long as the
+     * entity stays in the same block, and no portal changes. Meant for entities that keep touching a portal, tick
+     * after tick. The returned reference point is shared, thus it must not be modified.
+     */
+    public ReferencePoint getCachedReferencePoint(Entity entity) {
+        World world = entity.getWorld();
+        long blockPosition = BlockPos.pack(entity.getLocation());
+        long version = plugin.getPortalLocationManager().getVersion();
+
+        CachedReferencePoint cached = referencePointCache.get(entity.getUniqueId());
+
+        if (cached != null &&
+            cached.world() == world &&
+            cached.blockPosition() == blockPosition &&
+            cached.version() == version &&
+            isStillPortal(cached.referencePoint()))
+            return cached.referencePoint();
+
+        ReferencePoint referencePoint = getReferencePoint(entity);
+        referencePointCache.put(
+            entity.getUniqueId(),
+            new CachedReferencePoint(world, blockPosition, version, referencePoint)
+        );
+
+        return referencePoint;
+    }
+
+    /**
+     * Drop the remembered reference point of an entity, once it's gone.
+     */
+    public void forgetReferencePoint(UUID entityId) {
+        referencePointCache.remove(entityId);
+    }
+
+    /**
+     * Portal blocks may disappear without any event the plugin listens to (e.g.: physics), so a single read makes sure
+     * a remembered portal is still there.
+     */
+    private boolean isStillPortal(ReferencePoint referencePoint) {
+        return referencePoint == null ||
+               referencePoint.location().getWorld().getType(referencePoint.location()) == Material.NETHER_PORTAL;
+    }
+
     /**
      * Get the bottommost and northwesternmost portal block that is part of the same portal as the given location.
      * This is a reference point for the said portal, to use while computing coordinate scaling.
@@ -595,6 +1463,29 @@ public class PortalLogicManager {
      * Returns {@code null} if a portal frame couldn't be found.
      */
     public ReferencePoint getReferencePoint(Location portalBlockLocation) {
+        long start = System.nanoTime();
+        ReferencePointEvent flightEvent = ReferencePointEvent.beginIf(
+            plugin.getConfigManager().isFlightRecorderEventsEnabled()
+        );
+
+        ReferencePoint referencePoint = null;
+
+        try {
+            referencePoint = findReferencePoint(portalBlockLocation);
+            return referencePoint;
+        } finally {
+            plugin.getMetrics().record(Operation.REFERENCE_POINT, start);
+
+            if (flightEvent != null)
+                flightEvent.finish(
+                    portalBlockLocation,
+                    referencePoint != null,
+                    referencePoint != null && referencePoint.isCustom()
+                );
+        }
+    }
+
+    private ReferencePoint findReferencePoint(Location portalBlockLocation) {
         ReferencePoint bottom = findFrameLimit(
             portalBlockLocation,
             VectorAxis.NY,
@@ -625,15 +1516,16 @@ public class PortalLogicManager {
      */
     public ReferencePoint findFrameLimit(Location origin, Vector direction, Set<Material> innerBlocks, int maxOffset) {
         World world = origin.getWorld();
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
 
         for (int offset = 0; offset < maxOffset; offset++) {
             Location target = origin.clone().add(direction.clone().multiply(offset + 1));
             Material targetBlockType = world.getBlockAt(target).getType();
 
             // look for the frame
-            if (targetBlockType == plugin.getConfigManager().getFrameBlock())
+            if (config.isCustomFrameBlock(targetBlockType))
                 return new ReferencePoint(target.subtract(direction), true);
-            else if (targetBlockType == Constants.VANILLA_FRAME_BLOCK)
+            else if (config.isVanillaFrameBlock(targetBlockType))
                 return new ReferencePoint(target.subtract(direction), false);
 
             // a non-replaceable block has been reached, and it's not a valid frame block
@@ -647,6 +1539,101 @@ public class PortalLogicManager {
 
     private record PortalBlockData(Location location, BlockData blockData) { }
 
-    private record SearchData(Location location, List<PortalBlockData> data) { }
+    private record CachedReferencePoint(World world, long blockPosition, long version, ReferencePoint referencePoint) { }
+
+    record SearchData(Location location, Axis axis, boolean mustHaveFloor, List<PortalBlockData> data) { }
+
+    /**
+     * Where a destination search stands in its candidate sequence, so that it can stop, and later resume from there.
+     */
+    private static final class SearchProgress {
+
+        private final OccupancyMask mask;
+        private final Location candidate;
+
+        private int nextOffset;
+        private SearchData floating;
+        private SearchData result;
+
+        private SearchProgress(BlockSource source, PendingSearch search) {
+            Location desiredDestination = search.desiredDestination;
+
+            this.mask = new OccupancyMask(
+                source, search.config, search.isCustom,
+                desiredDestination.getBlockX(), desiredDestination.getBlockY(), desiredDestination.getBlockZ()
+            );
+            this.candidate = new Location(
+                desiredDestination.getWorld(),
+                desiredDestination.getBlockX(), desiredDestination.getBlockY(), desiredDestination.getBlockZ()
+            );
+        }
+
+    }
+
+    /**
+     * A destination search running on the main thread, a slice every tick. Only touched by the main thread.
+     */
+    private static final class SlicedSearch {
+
+        private final PendingSearch search;
+        private final DestinationSearchEvent flightEvent;
+        private final long start = System.nanoTime();
+
+        // the sum of the slices, in nanoseconds
+        private long searchTime;
+
+        private SlicedSearch(PendingSearch search, DestinationSearchEvent flightEvent) {
+            this.search = search;
+            this.flightEvent = flightEvent;
+        }
+
+    }
+
+    /**
+     * A destination search waiting for its chunks, running off the main thread, or sliced on it. Its fields are set on
+     * the main thread before the search starts, and only read afterwards, except for the cancellation flag, and the
+     * progress, which only the search running at the time touches.
+     */
+    static final class PendingSearch {
+
+        private final UUID playerId;
+        private final Location referenceLocation;
+        private final PortalGeometry referenceGeometry;
+        private final Location desiredDestination;
+        private final boolean isCustom;
+        private final ConfigSnapshot config;
+        private final int ceiling;
+
+        private final List<Chunk> chunks = new ArrayList<>();
+
+        // the snapshots of the chunks, and how far they have been searched, set once the chunks are loaded
+        private BlockSource.Snapshots snapshots;
+        private SearchProgress progress;
+
+        private volatile boolean cancelled;
+
+        // only touched by the thread running the search
+        private int visitedCandidates;
+
+        PendingSearch(
+            UUID playerId,
+            Location referenceLocation, PortalGeometry referenceGeometry,
+            Location desiredDestination, boolean isCustom,
+            ConfigSnapshot config, int ceiling
+        ) {
+            this.playerId = playerId;
+            this.referenceLocation = referenceLocation;
+            this.referenceGeometry = referenceGeometry;
+            this.desiredDestination = desiredDestination;
+            this.isCustom = isCustom;
+            this.config = config;
+            this.ceiling = ceiling;
+        }
+
+        int getVisitedCandidates() {
+            return visitedCandidates;
+        }
+
+    }
 
 }
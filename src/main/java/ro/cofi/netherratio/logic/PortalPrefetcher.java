@@ -0,0 +1,277 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+import ro.cofi.netherratio.misc.LongHashSet;
+import ro.cofi.netherratio.misc.LongLongHashMap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Loads the destination chunks of the portals players are walking up to, so that the trip (or the search for a place
+ * to create the destination portal at) doesn't wait for them. Prefetched chunks are held with plugin chunk tickets,
+ * renewed for as long as a player stays close to the portal, and released a while after.
+ * <br><br>
+ * Only a limited number of chunk loads is started per second, so that a crowd around a hub portal can't cause a storm
+ * of loads. Renewing chunks that are already held is free.
+ */
+public class PortalPrefetcher {
+
+    private static final int INTERVAL = 10; // in ticks
+    private static final boolean[] KINDS = { true, false };
+
+    // chunks around the usual destination, as the destination portal may be anywhere near it
+    private static final int SEARCH_CHUNK_RADIUS = 1;
+
+    private final NetherRatio plugin;
+
+    // chunk key to the tick the chunk is released at, per world
+    private final Map<UUID, LongLongHashMap> heldChunks = new HashMap<>();
+    private final Map<UUID, LongHashSet> loadingChunks = new HashMap<>();
+
+    private BukkitTask task;
+    private int generation;
+
+    public PortalPrefetcher(NetherRatio plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * (Re)start prefetching, using the current config. Does nothing else if prefetching is turned off.
+     */
+    public void start() {
+        stop();
+
+        if (plugin.getConfigManager().getPrefetchRadius() > 0)
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::run, INTERVAL, INTERVAL);
+    }
+
+    /**
+     * Stop prefetching and release every prefetched chunk. Loads still in progress won't be held.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        generation++;
+
+        for (Map.Entry<UUID, LongLongHashMap> entry : heldChunks.entrySet()) {
+            World world = plugin.getServer().getWorld(entry.getKey());
+            if (world == null)
+                continue;
+
+            LongLongHashMap chunks = entry.getValue();
+
+            for (int slot = 0; slot < chunks.slotCount(); slot++) {
+                long key = chunks.slotKey(slot);
+                if (key != LongHashSet.FREE)
+                    release(world, key);
+            }
+        }
+
+        heldChunks.clear();
+        loadingChunks.clear();
+    }
+
+    /**
+     * Forget the chunks of a world that is being unloaded, their tickets go with it.
+     */
+    public void forgetWorld(World world) {
+        heldChunks.remove(world.getUID());
+        loadingChunks.remove(world.getUID());
+    }
+
+    private void run() {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        int tick = plugin.getServer().getCurrentTick();
+
+        releaseExpired(tick);
+
+        int radius = config.getPrefetchRadius();
+        long expiry = tick + config.getPrefetchTicketDuration();
+        int budget = Math.max(1, config.getPrefetchBudget() * INTERVAL / 20);
+
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            Location location = player.getLocation();
+
+            if (!config.isPortalWorld(location.getWorld()))
+                continue;
+
+            for (boolean isCustom : KINDS) {
+                long portal = plugin.getPortalLocationManager().findNearestPortal(
+                    location.getWorld(),
+                    isCustom,
+                    location.getX(),
+                    location.getZ(),
+                    radius
+                );
+
+                if (portal == BlockPos.NONE || Math.abs(BlockPos.unpackY(portal) - location.getBlockY()) > radius)
+                    continue;
+
+                Location referenceLocation = BlockPos.toLocation(location.getWorld(), portal);
+                budget = prefetchDestination(referenceLocation, isCustom, expiry, budget);
+            }
+        }
+    }
+
+    /**
+     * Hold the chunks a trip through the portal will most likely need: those of the portal it is linked to, or those
+     * around the usual destination if it isn't linked.
+     *
+     * @return The budget left.
+     */
+    private int prefetchDestination(Location referenceLocation, boolean isCustom, long expiry, int budget) {
+        Location scaledDestination = plugin.getPortalLogicManager().getScaledDestination(referenceLocation, isCustom);
+        if (scaledDestination == null)
+            return budget;
+
+        World destinationWorld = scaledDestination.getWorld();
+
+        long linkedPortal = plugin.getPortalLocationManager().getLink(referenceLocation, isCustom);
+
+        if (linkedPortal == BlockPos.NONE) {
+            int chunkX = scaledDestination.getBlockX() >> 4;
+            int chunkZ = scaledDestination.getBlockZ() >> 4;
+
+            return prefetch(
+                destinationWorld,
+                chunkX - SEARCH_CHUNK_RADIUS, chunkZ - SEARCH_CHUNK_RADIUS,
+                chunkX + SEARCH_CHUNK_RADIUS, chunkZ + SEARCH_CHUNK_RADIUS,
+                expiry, budget
+            );
+        }
+
+        // the portal may cross a chunk border
+        int x = BlockPos.unpackX(linkedPortal);
+        int z = BlockPos.unpackZ(linkedPortal);
+        int endX = x;
+        int endZ = z;
+
+        PortalGeometry geometry = plugin.getPortalLocationManager().getGeometry(
+            destinationWorld,
+            isCustom,
+            linkedPortal
+        );
+
+        if (geometry != null) {
+            endX += geometry.axis() == Axis.X ? geometry.width() - 1 : 0;
+            endZ += geometry.axis() == Axis.Z ? geometry.width() - 1 : 0;
+        }
+
+        return prefetch(destinationWorld, x >> 4, z >> 4, endX >> 4, endZ >> 4, expiry, budget);
+    }
+
+    private int prefetch(
+        World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, long expiry, int budget
+    ) {
+        LongLongHashMap held = heldChunks.computeIfAbsent(world.getUID(), uid -> new LongLongHashMap());
+        LongHashSet loading = loadingChunks.computeIfAbsent(world.getUID(), uid -> new LongHashSet());
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                long key = Chunk.getChunkKey(chunkX, chunkZ);
+
+                // already held, only renew it
+                if (held.containsKey(key)) {
+                    held.put(key, expiry, 0);
+                    continue;
+                }
+
+                if (loading.contains(key))
+                    continue;
+
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    hold(world.getChunkAt(chunkX, chunkZ), held, expiry);
+                    continue;
+                }
+
+                if (budget == 0)
+                    continue;
+
+                budget--;
+                loading.add(key);
+
+                int startGeneration = generation;
+
+                world.getChunkAtAsync(chunkX, chunkZ).whenComplete((chunk, throwable) -> {
+                    // stopped meanwhile, everything loaded before has been released
+                    if (generation != startGeneration)
+                        return;
+
+                    // the world has been unloaded meanwhile
+                    if (loadingChunks.get(world.getUID()) != loading)
+                        return;
+
+                    loading.remove(key);
+
+                    if (throwable != null) {
+                        plugin.getLogger().severe(plugin.prefixMessage(
+                            "Could not prefetch a destination chunk: " + throwable.getMessage()
+                        ));
+                        return;
+                    }
+
+                    hold(chunk, held, expiry);
+                });
+            }
+        }
+
+        return budget;
+    }
+
+    private void hold(Chunk chunk, LongLongHashMap held, long expiry) {
+        plugin.getPortalLogicManager().getChunkTickets().hold(chunk);
+        held.put(chunk.getChunkKey(), expiry, 0);
+    }
+
+    private void release(World world, long key) {
+        plugin.getPortalLogicManager().getChunkTickets().release(world, (int) key, (int) (key >> 32));
+    }
+
+    private void releaseExpired(int tick) {
+        Iterator<Map.Entry<UUID, LongLongHashMap>> iterator = heldChunks.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, LongLongHashMap> entry = iterator.next();
+            LongLongHashMap chunks = entry.getValue();
+            if (chunks.isEmpty())
+                continue;
+
+            // unloaded without the plugin being told, its tickets are gone with it
+            World world = plugin.getServer().getWorld(entry.getKey());
+            if (world == null) {
+                iterator.remove();
+                loadingChunks.remove(entry.getKey());
+                continue;
+            }
+
+            // removing while walking the slots would move entries around, collect the expired ones first
+            LongHashSet expired = new LongHashSet();
+
+            for (int slot = 0; slot < chunks.slotCount(); slot++) {
+                long key = chunks.slotKey(slot);
+                if (key != LongHashSet.FREE && chunks.slotValue(slot) <= tick)
+                    expired.add(key);
+            }
+
+            for (long key : expired.toArray()) {
+                chunks.remove(key, 0);
+                release(world, key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package ro.cofi.netherratio.logic;
+
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.LongHashSet;
+import ro.cofi.netherratio.misc.LongObjectHashMap;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Portal positions bucketed into a horizontal grid. Sizing a cell after the minimum distance between portals means
+ * that a nearest-portal query only has to look at the few cells around the queried position.
+ */
+class PortalSpatialIndex {
+
+    private final int cellSize;
+    private final LongObjectHashMap<LongHashSet> cells = new LongObjectHashMap<>();
+
+    PortalSpatialIndex(int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    int getCellSize() {
+        return cellSize;
+    }
+
+    void add(long position) {
+        long cellKey = cellKey(position);
+
+        LongHashSet cell = cells.get(cellKey);
+        if (cell == null) {
+            cell = new LongHashSet();
+            cells.put(cellKey, cell);
+        }
+
+        cell.add(position);
+    }
+
+    void remove(long position) {
+        long cellKey = cellKey(position);
+
+        LongHashSet cell = cells.get(cellKey);
+        if (cell == null)
+            return;
+
+        cell.remove(position);
+
+        if (cell.isEmpty())
+            cells.remove(cellKey);
+    }
+
+    /**
+     * Find the portal closest to the given horizontal position, ignoring the Y coordinate.
+     *
+     * @return The packed position of the portal, or {@link BlockPos#NONE} if none is strictly closer than
+     *         {@code maxDistance}.
+     */
+    long findNearest(double x, double z, double maxDistance) {
+        int range = (int) Math.ceil(maxDistance / cellSize);
+        int centerX = Math.floorDiv((int) Math.floor(x), cellSize);
+        int centerZ = Math.floorDiv((int) Math.floor(z), cellSize);
+
+        long nearest = BlockPos.NONE;
+        double nearestDistanceSquared = maxDistance * maxDistance;
+
+        for (int cellX = centerX - range; cellX <= centerX + range; cellX++) {
+            for (int cellZ = centerZ - range; cellZ <= centerZ + range; cellZ++) {
+                LongHashSet cell = cells.get(cellKey(cellX, cellZ));
+                if (cell == null)
+                    continue;
+
+                for (int slot = 0; slot < cell.slotCount(); slot++) {
+                    long position = cell.slotValue(slot);
+                    if (position == LongHashSet.FREE)
+                        continue;
+
+                    double deltaX = BlockPos.unpackX(position) - x;
+                    double deltaZ = BlockPos.unpackZ(position) - z;
+                    double distanceSquared = deltaX * deltaX + deltaZ * deltaZ;
+
+                    if (distanceSquared < nearestDistanceSquared) {
+                        nearest = position;
+                        nearestDistanceSquared = distanceSquared;
+                    }
+                }
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Visit every portal whose position is within the given horizontal bounds, inclusive.
+     */
+    void forEachWithin(int minX, int minZ, int maxX, int maxZ, LongConsumer consumer) {
+        for (int cellX = Math.floorDiv(minX, cellSize); cellX <= Math.floorDiv(maxX, cellSize); cellX++) {
+            for (int cellZ = Math.floorDiv(minZ, cellSize); cellZ <= Math.floorDiv(maxZ, cellSize); cellZ++) {
+                LongHashSet cell = cells.get(cellKey(cellX, cellZ));
+                if (cell == null)
+                    continue;
+
+                for (int slot = 0; slot < cell.slotCount(); slot++) {
+                    long position = cell.slotValue(slot);
+                    if (position == LongHashSet.FREE)
+                        continue;
+
+                    int x = BlockPos.unpackX(position);
+                    int z = BlockPos.unpackZ(position);
+
+                    if (x >= minX && x <= maxX && z >= minZ && z <= maxZ)
+                        consumer.accept(position);
+                }
+            }
+        }
+    }
+
+    private long cellKey(long position) {
+        return cellKey(
+            Math.floorDiv(BlockPos.unpackX(position), cellSize),
+            Math.floorDiv(BlockPos.unpackZ(position), cellSize)
+        );
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << Integer.SIZE) | (cellZ & 0xFFFFFFFFL);
+    }
+
+}
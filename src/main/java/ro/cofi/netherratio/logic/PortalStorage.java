@@ -0,0 +1,548 @@
+package ro.cofi.netherratio.logic;
+
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.metrics.Counter;
+import ro.cofi.netherratio.metrics.Operation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+
+/**
+ * Binary storage for the portal registry. Every world key gets its own pair of files: a snapshot of all the portals
+ * known at the time of the last compaction, and an append-only journal of every addition and removal since then.
+ * <br><br>
+ * The links from the portals of a world key to their destination portals are stored along with them. Since links
+ * depend on the ratio and distance settings, both files carry a fingerprint of those settings, and links written
+ * under a different fingerprint are discarded on load.
+ * <br><br>
+ * Changes are buffered in memory and handed to a single background thread, so that they reach the disk in the same
+ * order they have been made in. Once a journal grows past the configured threshold, it is folded into a new snapshot.
+ */
+class PortalStorage {
+
+    public static final String DIRECTORY_NAME = "portals";
+
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int SNAPSHOT_MAGIC = 0x4E525053; // "NRPS"
+    private static final int JOURNAL_MAGIC = 0x4E52504A; // "NRPJ"
+    private static final byte FORMAT_VERSION = 3;
+    private static final byte FORMAT_VERSION_WITHOUT_LINKS = 2;
+    private static final byte FORMAT_VERSION_WITHOUT_GEOMETRY = 1;
+
+    // magic, version, then the fingerprint, starting with links
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int HEADER_SIZE_WITHOUT_LINKS = Integer.BYTES + Byte.BYTES;
+
+    // operation, kind, position, then the geometry or the destination, starting with links
+    private static final int RECORD_SIZE = Byte.BYTES + Byte.BYTES + Long.BYTES + Long.BYTES;
+    private static final int RECORD_SIZE_WITHOUT_LINKS = Byte.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int RECORD_SIZE_WITHOUT_GEOMETRY = Byte.BYTES + Byte.BYTES + Long.BYTES;
+
+    private static final byte OPERATION_ADD = 1;
+    private static final byte OPERATION_REMOVE = 2;
+    private static final byte OPERATION_LINK = 3;
+    private static final byte OPERATION_UNLINK = 4;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final NetherRatio plugin;
+    private final Path directory;
+
+    // a single thread, so that writes reach the disk in the same order they have been requested
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "NetherRatio-PortalWriter")
+    );
+
+    // only accessed from the main thread
+    private final Map<String, ByteArrayOutputStream> pendingRecords = new HashMap<>();
+    private final Map<String, Long> journalSizes = new HashMap<>();
+    private final Set<String> forcedCompactions = new HashSet<>();
+
+    private Future<?> lastWrite;
+
+    PortalStorage(NetherRatio plugin) {
+        this.plugin = plugin;
+        this.directory = plugin.getDataFolder().toPath().resolve(DIRECTORY_NAME);
+    }
+
+    /**
+     * Read the snapshot of a world key, then replay its journal on top of it. A journal cut short by a crash is
+     * truncated to its last complete record.
+     * <br><br>
+     * Links are only handed over if they have been written under the given fingerprint. Files written in an older
+     * format or under another fingerprint are rewritten on the next flush, before anything is appended to them.
+     */
+    void load(String worldKey, long fingerprint, ChangeConsumer consumer, LinkConsumer linkConsumer) {
+        Path snapshot = snapshotPath(worldKey);
+        Path journal = journalPath(worldKey);
+
+        LinkConsumer validLinks = (linked, isCustom, source, destination) -> {
+            if (!forcedCompactions.contains(worldKey))
+                linkConsumer.accept(linked, isCustom, source, destination);
+        };
+
+        if (Files.exists(snapshot) && !readSnapshot(snapshot, fingerprint, consumer, validLinks))
+            forcedCompactions.add(worldKey);
+
+        journalSizes.put(
+            worldKey,
+            Files.exists(journal) ? replayJournal(worldKey, journal, fingerprint, consumer, validLinks) : 0L
+        );
+    }
+
+    /**
+     * Remember a change, to be written on the next flush. Must be called from the main thread.
+     */
+    void recordChange(String worldKey, boolean added, boolean isCustom, long position, long geometry) {
+        recordOperation(worldKey, added ? OPERATION_ADD : OPERATION_REMOVE, isCustom, position, geometry);
+    }
+
+    /**
+     * Remember a link change, to be written on the next flush. Must be called from the main thread.
+     */
+    void recordLink(String worldKey, boolean linked, boolean isCustom, long source, long destination) {
+        recordOperation(worldKey, linked ? OPERATION_LINK : OPERATION_UNLINK, isCustom, source, destination);
+    }
+
+    private void recordOperation(String worldKey, byte operation, boolean isCustom, long position, long payload) {
+        ByteArrayOutputStream buffer = pendingRecords.computeIfAbsent(worldKey, key -> new ByteArrayOutputStream());
+
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        try {
+            writeRecord(out, operation, isCustom, position, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream, can't happen
+        }
+    }
+
+    /**
+     * Fold the journal of a world key into a new snapshot on the next flush, regardless of its size.
+     */
+    void requestCompaction(String worldKey) {
+        forcedCompactions.add(worldKey);
+    }
+
+    /**
+     * Hand every pending change to the background thread. Journals that have grown past the threshold are compacted,
+     * using the snapshots provided - these must reflect every change recorded so far. Links are written under the
+     * fingerprint provided for their world key. Must be called from the main thread.
+     *
+     * @return Whether there was anything to write.
+     */
+    boolean flush(Function<String, Snapshot> snapshotProvider, ToLongFunction<String> fingerprintProvider) {
+        if (pendingRecords.isEmpty() && forcedCompactions.isEmpty())
+            return false;
+
+        long threshold = plugin.getConfigManager().getPortalDataCompactionThreshold();
+
+        Set<String> worldKeys = new HashSet<>(pendingRecords.keySet());
+        worldKeys.addAll(forcedCompactions);
+
+        for (String worldKey : worldKeys) {
+            ByteArrayOutputStream buffer = pendingRecords.remove(worldKey);
+            byte[] records = buffer != null ? buffer.toByteArray() : new byte[0];
+            long fingerprint = fingerprintProvider.applyAsLong(worldKey);
+
+            long journalSize = journalSizes.getOrDefault(worldKey, 0L) + records.length;
+
+            if (!forcedCompactions.contains(worldKey) && journalSize < threshold) {
+                lastWrite = writer.submit(() -> appendToJournal(worldKey, records, fingerprint));
+                journalSizes.put(worldKey, journalSize);
+                continue;
+            }
+
+            // the snapshot already contains the pending records, no need to append them as well
+            Snapshot snapshot = snapshotProvider.apply(worldKey);
+            lastWrite = writer.submit(() -> compact(worldKey, snapshot, fingerprint));
+            journalSizes.put(worldKey, 0L);
+        }
+
+        forcedCompactions.clear();
+
+        return true;
+    }
+
+    /**
+     * Move the data of a world key to another one, unless the other one already has data. Must be called before either
+     * of them gets loaded, with no write pending.
+     *
+     * @return Whether the data has been moved.
+     */
+    boolean renameWorldKey(String worldKey, String newWorldKey) {
+        Path snapshot = snapshotPath(worldKey);
+        Path journal = journalPath(worldKey);
+
+        if (!Files.exists(snapshot) && !Files.exists(journal))
+            return false;
+
+        if (Files.exists(snapshotPath(newWorldKey)) || Files.exists(journalPath(newWorldKey)))
+            return false;
+
+        try {
+            if (Files.exists(snapshot))
+                Files.move(snapshot, snapshotPath(newWorldKey));
+
+            if (Files.exists(journal))
+                Files.move(journal, journalPath(newWorldKey));
+        } catch (IOException e) {
+            plugin.getLogger().log(
+                Level.SEVERE,
+                plugin.prefixMessage("Could not move the portal data of " + worldKey + " to " + newWorldKey),
+                e
+            );
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Block until every write requested so far has reached the disk.
+     */
+    void awaitPendingWrites() {
+        if (lastWrite == null)
+            return;
+
+        try {
+            lastWrite.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // already logged by the writer itself
+        }
+    }
+
+    /**
+     * Wait for the background thread to finish every write requested so far, then stop it.
+     */
+    void shutdown() {
+        writer.shutdown();
+
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                plugin.getLogger().severe(plugin.prefixMessage("Timed out while saving the portal data"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Whether the snapshot is up-to-date: fully read, in the current format, under the given fingerprint.
+     */
+    private boolean readSnapshot(
+        Path snapshot, long fingerprint,
+        ChangeConsumer consumer, LinkConsumer linkConsumer
+    ) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            int version = readHeader(in, SNAPSHOT_MAGIC);
+            if (version == -1) {
+                plugin.getLogger().severe(plugin.prefixMessage("Unrecognized portal snapshot " + snapshot));
+                return false;
+            }
+
+            boolean hasGeometry = version != FORMAT_VERSION_WITHOUT_GEOMETRY;
+            boolean hasLinks = version == FORMAT_VERSION;
+            boolean linksValid = hasLinks && in.readLong() == fingerprint;
+
+            readPositions(in, true, hasGeometry, consumer);
+            readPositions(in, false, hasGeometry, consumer);
+
+            if (linksValid) {
+                readLinks(in, true, linkConsumer);
+                readLinks(in, false, linkConsumer);
+            }
+
+            return linksValid;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not read " + snapshot), e);
+            return false;
+        }
+    }
+
+    private void readPositions(
+        DataInputStream in, boolean isCustom,
+        boolean hasGeometry, ChangeConsumer consumer
+    ) throws IOException {
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            long position = in.readLong();
+            int geometry = hasGeometry ? in.readInt() : PortalGeometry.UNKNOWN;
+
+            consumer.accept(true, isCustom, position, geometry);
+        }
+    }
+
+    private void readLinks(DataInputStream in, boolean isCustom, LinkConsumer linkConsumer) throws IOException {
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++)
+            linkConsumer.accept(true, isCustom, in.readLong(), in.readLong());
+    }
+
+    /**
+     * @return The size of the journal, after discarding anything past the last complete record.
+     */
+    private long replayJournal(
+        String worldKey, Path journal, long fingerprint,
+        ChangeConsumer consumer, LinkConsumer linkConsumer
+    ) {
+        long validSize;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+            int version = readHeader(in, JOURNAL_MAGIC);
+            if (version == -1) {
+                plugin.getLogger().severe(plugin.prefixMessage("Unrecognized portal journal " + journal));
+
+                // nothing can be appended after it, the journal is rewritten from the snapshot on the next flush
+                forcedCompactions.add(worldKey);
+                return 0;
+            }
+
+            boolean hasGeometry = version != FORMAT_VERSION_WITHOUT_GEOMETRY;
+            boolean hasLinks = version == FORMAT_VERSION;
+
+            int recordSize = hasLinks ? RECORD_SIZE :
+                             hasGeometry ? RECORD_SIZE_WITHOUT_LINKS :
+                             RECORD_SIZE_WITHOUT_GEOMETRY;
+
+            validSize = hasLinks ? HEADER_SIZE : HEADER_SIZE_WITHOUT_LINKS;
+
+            // records of an older format, or under another fingerprint, can't be appended to, the journal will have
+            // to be rewritten; links of another fingerprint are skipped by the consumer from now on
+            if (!hasLinks || in.readLong() != fingerprint)
+                forcedCompactions.add(worldKey);
+
+            byte[] record = new byte[recordSize];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+
+            while (in.readNBytes(record, 0, recordSize) == recordSize) {
+                byte operation = buffer.get(0);
+                boolean isCustom = buffer.get(1) != 0;
+                long position = buffer.getLong(2);
+
+                if (operation == OPERATION_ADD || operation == OPERATION_REMOVE)
+                    consumer.accept(
+                        operation == OPERATION_ADD,
+                        isCustom,
+                        position,
+                        hasLinks ? buffer.getLong(10) :
+                        hasGeometry ? buffer.getInt(10) :
+                        PortalGeometry.UNKNOWN
+                    );
+                else if (hasLinks && (operation == OPERATION_LINK || operation == OPERATION_UNLINK))
+                    linkConsumer.accept(operation == OPERATION_LINK, isCustom, position, buffer.getLong(10));
+                else
+                    break;
+
+                validSize += recordSize;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not read " + journal), e);
+
+            // a header cut short, or an unreadable file, is rewritten from the snapshot on the next flush as well
+            forcedCompactions.add(worldKey);
+            return 0;
+        }
+
+        // a crash may have left a partial record at the end, get rid of it before appending anything else
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            if (channel.size() > validSize) {
+                plugin.getLogger().warning(plugin.prefixMessage("Discarding incomplete records at the end of " +
+                                                                journal));
+                channel.truncate(validSize);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not repair " + journal), e);
+        }
+
+        return validSize;
+    }
+
+    private void appendToJournal(String worldKey, byte[] records, long fingerprint) {
+        Path journal = journalPath(worldKey);
+        long start = System.nanoTime();
+
+        try {
+            Files.createDirectories(directory);
+
+            try (FileChannel channel = FileChannel.open(
+                journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+            )) {
+                if (channel.size() == 0) {
+                    writeFully(channel, header(JOURNAL_MAGIC, fingerprint));
+                    plugin.getMetrics().add(Counter.BYTES_WRITTEN, HEADER_SIZE);
+                }
+
+                writeFully(channel, ByteBuffer.wrap(records));
+                channel.force(false);
+                plugin.getMetrics().add(Counter.BYTES_WRITTEN, records.length);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not write " + journal), e);
+        } finally {
+            plugin.getMetrics().record(Operation.PORTAL_DATA_WRITE, start);
+        }
+    }
+
+    /**
+     * Replace the snapshot, then empty the journal. A crash in between leaves a snapshot and a journal that overlap,
+     * which is harmless: replaying the journal on top of the snapshot yields the very same state.
+     */
+    private void compact(String worldKey, Snapshot snapshot, long fingerprint) {
+        Path snapshotPath = snapshotPath(worldKey);
+        Path journalPath = journalPath(worldKey);
+        long start = System.nanoTime();
+
+        try {
+            Files.createDirectories(directory);
+
+            writeAtomically(snapshotPath, out -> {
+                writeHeader(out, SNAPSHOT_MAGIC, fingerprint);
+                writePositions(out, snapshot.custom(), snapshot.customGeometries());
+                writePositions(out, snapshot.vanilla(), snapshot.vanillaGeometries());
+                writeLinks(out, snapshot.customLinkSources(), snapshot.customLinkDestinations());
+                writeLinks(out, snapshot.vanillaLinkSources(), snapshot.vanillaLinkDestinations());
+            });
+
+            writeAtomically(journalPath, out -> writeHeader(out, JOURNAL_MAGIC, fingerprint));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not compact " + snapshotPath), e);
+        } finally {
+            plugin.getMetrics().record(Operation.PORTAL_DATA_WRITE, start);
+        }
+    }
+
+    /**
+     * Write the data into a temporary file first, then move it over the target. A crash mid-write will only ever
+     * leave behind a partial temporary file, never a partial data file.
+     */
+    private void writeAtomically(Path target, DataWriter dataWriter) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            dataWriter.write(out);
+            out.flush();
+            fileOut.getFD().sync();
+
+            plugin.getMetrics().add(Counter.BYTES_WRITTEN, out.size());
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return The format version, or {@code -1} if the header is not recognized.
+     */
+    private int readHeader(DataInputStream in, int magic) throws IOException {
+        if (in.readInt() != magic)
+            return -1;
+
+        byte version = in.readByte();
+
+        return version == FORMAT_VERSION ||
+               version == FORMAT_VERSION_WITHOUT_LINKS ||
+               version == FORMAT_VERSION_WITHOUT_GEOMETRY ? version : -1;
+    }
+
+    private void writeHeader(DataOutputStream out, int magic, long fingerprint) throws IOException {
+        out.writeInt(magic);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(fingerprint);
+    }
+
+    private ByteBuffer header(int magic, long fingerprint) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(magic).put(FORMAT_VERSION).putLong(fingerprint).flip();
+    }
+
+    private void writePositions(DataOutputStream out, long[] positions, long[] geometries) throws IOException {
+        out.writeInt(positions.length);
+
+        for (int i = 0; i < positions.length; i++) {
+            out.writeLong(positions[i]);
+            out.writeInt((int) geometries[i]);
+        }
+    }
+
+    private void writeLinks(DataOutputStream out, long[] sources, long[] destinations) throws IOException {
+        out.writeInt(sources.length);
+
+        for (int i = 0; i < sources.length; i++) {
+            out.writeLong(sources[i]);
+            out.writeLong(destinations[i]);
+        }
+    }
+
+    private void writeRecord(
+        DataOutputStream out, byte operation, boolean isCustom,
+        long position, long payload
+    ) throws IOException {
+        out.writeByte(operation);
+        out.writeByte(isCustom ? 1 : 0);
+        out.writeLong(position);
+        out.writeLong(payload);
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private Path snapshotPath(String worldKey) {
+        return directory.resolve(worldKey + SNAPSHOT_SUFFIX);
+    }
+
+    private Path journalPath(String worldKey) {
+        return directory.resolve(worldKey + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Every portal of a world key, and every link from them, at a given point in time. Geometries match their
+     * positions by index, and so do link destinations with their sources.
+     */
+    record Snapshot(
+        long[] custom, long[] customGeometries,
+        long[] vanilla, long[] vanillaGeometries,
+        long[] customLinkSources, long[] customLinkDestinations,
+        long[] vanillaLinkSources, long[] vanillaLinkDestinations
+    ) { }
+
+    @FunctionalInterface
+    interface ChangeConsumer {
+        void accept(boolean added, boolean isCustom, long position, long geometry);
+    }
+
+    @FunctionalInterface
+    interface LinkConsumer {
+        void accept(boolean linked, boolean isCustom, long source, long destination);
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+}
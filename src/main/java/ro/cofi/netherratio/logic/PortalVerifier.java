@@ -0,0 +1,319 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
+import org.bukkit.scheduler.BukkitTask;
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.metrics.Counter;
+import ro.cofi.netherratio.metrics.Operation;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Walks the portal registry in the background, a few portals every tick, and makes sure they still stand in the world.
+ * Portals can disappear without the plugin noticing (world edits, regenerated chunks, pistons, other plugins), and
+ * their entries would otherwise be kept forever, growing every lookup and sending players to dead coordinates.
+ * <br><br>
+ * A portal is only checked if all of its chunks are loaded, so that verifying never loads a chunk: the others are left
+ * for a later walk, or for when their chunk loads. Portals whose shape has changed are registered again with the new
+ * one, portals that are gone are deleted. Changes are applied at the end of each tick's share of the work.
+ * <br><br>
+ * Each tick only gets the configured time budget, and a walk through the whole registry starts at most once per the
+ * configured interval. Portals in chunks that have just loaded are checked first.
+ */
+public class PortalVerifier {
+
+    private static final boolean[] KINDS = { true, false };
+
+    // chunks load by the hundreds when players fly around, the walk gets to those that don't fit eventually
+    private static final int MAX_PENDING_CHECKS = 4096;
+
+    private final NetherRatio plugin;
+
+    private final ArrayDeque<PendingCheck> pendingChecks = new ArrayDeque<>();
+
+    // the worlds and kinds of the current walk, then the portals of the one being walked, copied as it starts
+    private final List<PendingWorld> walkWorlds = new ArrayList<>();
+    private PendingWorld walkWorld;
+    private long[] walkPortals = new long[0];
+    private int walkIndex;
+    private int walkStartTick = Integer.MIN_VALUE;
+
+    private final List<PendingCheck> pruned = new ArrayList<>();
+    private final List<PendingCheck> repaired = new ArrayList<>();
+    private final List<PortalGeometry> repairedGeometries = new ArrayList<>();
+
+    private BukkitTask task;
+
+    public PortalVerifier(NetherRatio plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * (Re)start verifying, using the current config. Does nothing else if verifying is turned off.
+     */
+    public void start() {
+        stop();
+
+        if (plugin.getConfigManager().getRegistryVerificationBudget() > 0)
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::run, 1, 1);
+    }
+
+    /**
+     * Stop verifying, and forget any walk in progress.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        pendingChecks.clear();
+        walkWorlds.clear();
+        walkWorld = null;
+        walkPortals = new long[0];
+        walkIndex = 0;
+        walkStartTick = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Queue the registered portals of a chunk that has just loaded, to be checked on the next ticks.
+     */
+    public void queueChunk(Chunk chunk) {
+        if (task == null)
+            return;
+
+        World world = chunk.getWorld();
+
+        for (boolean isCustom : KINDS)
+            plugin.getPortalLocationManager().forEachPortalInChunk(
+                world, isCustom, chunk.getX(), chunk.getZ(),
+                position -> {
+                    if (pendingChecks.size() < MAX_PENDING_CHECKS)
+                        pendingChecks.add(new PendingCheck(world.getUID(), isCustom, position));
+                }
+            );
+    }
+
+    private void run() {
+        ConfigSnapshot config = plugin.getConfigManager().getSnapshot();
+        long start = System.nanoTime();
+        long deadline = start + config.getRegistryVerificationBudget();
+        int checked = 0;
+
+        while (System.nanoTime() < deadline) {
+            PendingCheck check = pendingChecks.poll();
+
+            if (check == null && !advanceWalk(config))
+                break;
+
+            if (check == null)
+                check = new PendingCheck(walkWorld.worldId(), walkWorld.isCustom(), walkPortals[walkIndex++]);
+
+            World world = plugin.getServer().getWorld(check.worldId());
+            if (world != null && verify(world, check, config))
+                checked++;
+        }
+
+        if (checked == 0)
+            return;
+
+        applyChanges();
+
+        plugin.getMetrics().add(Counter.PORTALS_VERIFIED, checked);
+        plugin.getMetrics().record(Operation.REGISTRY_VERIFICATION, start);
+    }
+
+    /**
+     * Move the walk to its next portal, starting the next world or kind, or a new walk, as needed.
+     *
+     * @return Whether there is a portal to verify.
+     */
+    private boolean advanceWalk(ConfigSnapshot config) {
+        while (walkIndex >= walkPortals.length) {
+            if (walkWorlds.isEmpty() && !startWalk(config))
+                return false;
+
+            walkWorld = walkWorlds.remove(walkWorlds.size() - 1);
+            walkIndex = 0;
+
+            World world = plugin.getServer().getWorld(walkWorld.worldId());
+            walkPortals = world != null ?
+                          plugin.getPortalLocationManager().getPortals(world, walkWorld.isCustom()) :
+                          new long[0];
+        }
+
+        return true;
+    }
+
+    private boolean startWalk(ConfigSnapshot config) {
+        int tick = plugin.getServer().getCurrentTick();
+        if (tick - walkStartTick < config.getRegistryVerificationInterval())
+            return false;
+
+        walkStartTick = tick;
+
+        for (World world : plugin.getServer().getWorlds())
+            if (config.isPortalWorld(world))
+                for (boolean isCustom : KINDS)
+                    walkWorlds.add(new PendingWorld(world.getUID(), isCustom));
+
+        return !walkWorlds.isEmpty();
+    }
+
+    /**
+     * @return Whether the portal has been checked, as opposed to being skipped because it's no longer registered, or
+     *         not fully loaded.
+     */
+    private boolean verify(World world, PendingCheck check, ConfigSnapshot config) {
+        PortalLocationManager portalLocationManager = plugin.getPortalLocationManager();
+        long position = check.position();
+        boolean isCustom = check.isCustom();
+
+        // deleted since it has been queued, or copied
+        if (!portalLocationManager.hasPortal(world, isCustom, position))
+            return false;
+
+        int x = BlockPos.unpackX(position);
+        int y = BlockPos.unpackY(position);
+        int z = BlockPos.unpackZ(position);
+
+        if (!world.isChunkLoaded(x >> 4, z >> 4))
+            return false;
+
+        // a portal without its portal block is gone, whatever its shape
+        BlockData blockData = world.getBlockData(x, y, z);
+        if (blockData.getMaterial() != Material.NETHER_PORTAL || !(blockData instanceof Orientable orientable)) {
+            pruned.add(check);
+            return true;
+        }
+
+        Axis axis = orientable.getAxis();
+        PortalGeometry geometry = portalLocationManager.getGeometry(world, isCustom, position);
+
+        // a shape that still matches is all there is to check, otherwise the portal is measured again
+        int reach = geometry != null && geometry.axis() == axis ? geometry.width() : config.getPortalSizeWidthMax();
+        if (!isLoaded(world, x, z, axis, reach))
+            return false;
+
+        Material frameBlock = config.getFrameBlock(isCustom);
+
+        if (geometry != null && geometry.axis() == axis && isIntact(world, position, geometry, frameBlock))
+            return true;
+
+        PortalGeometry measured = plugin.getPortalLogicManager().measureGeometry(BlockPos.toLocation(world, position));
+
+        if (measured != null && !measured.equals(geometry) && isIntact(world, position, measured, frameBlock)) {
+            repaired.add(check);
+            repairedGeometries.add(measured);
+        } else {
+            pruned.add(check);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Whether every chunk of a portal is loaded, from the frame before its reference point to the frame after
+     *         its width.
+     */
+    private static boolean isLoaded(World world, int x, int z, Axis axis, int width) {
+        int endX = axis == Axis.X ? x + width : x;
+        int endZ = axis == Axis.Z ? z + width : z;
+
+        if (axis == Axis.X)
+            x--;
+        else
+            z--;
+
+        for (int chunkX = x >> 4; chunkX <= endX >> 4; chunkX++)
+            for (int chunkZ = z >> 4; chunkZ <= endZ >> 4; chunkZ++)
+                if (!world.isChunkLoaded(chunkX, chunkZ))
+                    return false;
+
+        return true;
+    }
+
+    /**
+     * @return Whether the inner blocks of the portal are portal blocks, and its frame is made of the given block.
+     */
+    private static boolean isIntact(World world, long position, PortalGeometry geometry, Material frameBlock) {
+        int originX = BlockPos.unpackX(position);
+        int originY = BlockPos.unpackY(position);
+        int originZ = BlockPos.unpackZ(position);
+
+        int stepX = geometry.axis() == Axis.X ? 1 : 0;
+        int stepZ = geometry.axis() == Axis.Z ? 1 : 0;
+
+        for (int horizontal = -1; horizontal <= geometry.width(); horizontal++) {
+            boolean isSide = horizontal == -1 || horizontal == geometry.width();
+
+            for (int vertical = -1; vertical <= geometry.height(); vertical++) {
+                boolean isEnd = vertical == -1 || vertical == geometry.height();
+
+                // the frame corners are not part of the portal
+                if (isSide && isEnd)
+                    continue;
+
+                Material expected = isSide || isEnd ? frameBlock : Material.NETHER_PORTAL;
+                Material actual = world.getType(
+                    originX + horizontal * stepX,
+                    originY + vertical,
+                    originZ + horizontal * stepZ
+                );
+
+                if (actual != expected)
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Apply the changes found during this tick all at once, through the registry, so that they are journaled like any
+     * other change.
+     */
+    private void applyChanges() {
+        PortalLocationManager portalLocationManager = plugin.getPortalLocationManager();
+
+        for (PendingCheck check : pruned) {
+            World world = plugin.getServer().getWorld(check.worldId());
+            if (world != null)
+                portalLocationManager.deletePortal(BlockPos.toLocation(world, check.position()), check.isCustom());
+        }
+
+        for (int i = 0; i < repaired.size(); i++) {
+            PendingCheck check = repaired.get(i);
+            World world = plugin.getServer().getWorld(check.worldId());
+
+            if (world != null)
+                portalLocationManager.savePortal(
+                    BlockPos.toLocation(world, check.position()),
+                    repairedGeometries.get(i),
+                    check.isCustom()
+                );
+        }
+
+        plugin.getMetrics().add(Counter.PORTALS_PRUNED, pruned.size());
+        plugin.getMetrics().add(Counter.PORTALS_REPAIRED, repaired.size());
+
+        pruned.clear();
+        repaired.clear();
+        repairedGeometries.clear();
+    }
+
+    private record PendingCheck(UUID worldId, boolean isCustom, long position) { }
+
+    private record PendingWorld(UUID worldId, boolean isCustom) { }
+
+}
@@ -0,0 +1,369 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Axis;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+import ro.cofi.netherratio.misc.SearchOffsets;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Everything a destination search depends on, taken when a portal operation turned out slow: the config it ran with,
+ * the portal it started from, where it looked, and the blocks of the whole search volume. Replaying the search over
+ * the capture reads the same blocks, so that the slow case can be profiled away from the server.
+ * <br><br>
+ * Blocks are kept by material, plus the axis of orientable ones, which is all the search compares. Blocks outside
+ * the volume read as {@link Material#BARRIER}, like chunks that haven't been captured, and blocks outside the world
+ * height read as {@link Material#VOID_AIR}. The file is a gzipped stream of the fields below.
+ */
+final class SearchCapture {
+
+    public static final String FILE_SUFFIX = ".nrcapture";
+
+    private static final int MAGIC = 0x4E524343; // "NRCC"
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte NO_AXIS = -1;
+
+    private final String operation;
+    private final long duration;
+    private final long timestamp;
+    private final String config;
+
+    private final String referenceWorld;
+    private final long referencePosition;
+    private final int referenceGeometry;
+    private final boolean isCustom;
+
+    private final String destinationWorld;
+    private final World.Environment environment;
+    private final int minHeight;
+    private final int maxHeight;
+    private final int ceiling;
+    private final long desiredPosition;
+
+    // the search volume, and its blocks as indices into the palette, X first, then Z, then Y
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final String[] paletteMaterials;
+    private final byte[] paletteAxes;
+    private final short[] blocks;
+
+    private SearchCapture(
+        String operation, long duration, long timestamp, String config,
+        String referenceWorld, long referencePosition, int referenceGeometry, boolean isCustom,
+        String destinationWorld, World.Environment environment, int minHeight, int maxHeight, int ceiling,
+        long desiredPosition,
+        int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ,
+        String[] paletteMaterials, byte[] paletteAxes, short[] blocks
+    ) {
+        this.operation = operation;
+        this.duration = duration;
+        this.timestamp = timestamp;
+        this.config = config;
+        this.referenceWorld = referenceWorld;
+        this.referencePosition = referencePosition;
+        this.referenceGeometry = referenceGeometry;
+        this.isCustom = isCustom;
+        this.destinationWorld = destinationWorld;
+        this.environment = environment;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.ceiling = ceiling;
+        this.desiredPosition = desiredPosition;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.paletteMaterials = paletteMaterials;
+        this.paletteAxes = paletteAxes;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Read the search volume around the desired destination from the given source. Uses the same bounds as the
+     * occupancy mask of the search, plus a block on every side, clamped to the world height.
+     *
+     * @param operation Name of the operation that was slow.
+     * @param duration  How long it took, in nanoseconds.
+     */
+    static SearchCapture capture(
+        String operation, long duration, ConfigSnapshot config,
+        Location referenceLocation, PortalGeometry referenceGeometry, boolean isCustom,
+        Location desiredDestination, int ceiling, BlockSource source
+    ) {
+        World world = desiredDestination.getWorld();
+
+        int horizontal = Math.min(config.getMaxPortalPlacementOffsetHorizontal(), SearchOffsets.MAX_HORIZONTAL);
+        int vertical = Math.min(config.getMaxPortalPlacementOffsetVertical(), SearchOffsets.MAX_VERTICAL);
+        int reach = horizontal + config.getPortalSizeWidthNew() + 2;
+
+        int minX = desiredDestination.getBlockX() - reach;
+        int minZ = desiredDestination.getBlockZ() - reach;
+        int minY = Math.max(world.getMinHeight(), desiredDestination.getBlockY() - vertical - 3);
+        int maxY = Math.min(
+            world.getMaxHeight(),
+            desiredDestination.getBlockY() + vertical + config.getPortalSizeHeightNew() + 3
+        );
+
+        int sizeX = 2 * reach + 1;
+        int sizeZ = 2 * reach + 1;
+        int sizeY = Math.max(0, maxY - minY);
+
+        Map<BlockData, Short> palette = new HashMap<>();
+        List<String> paletteMaterials = new ArrayList<>();
+        List<Byte> paletteAxes = new ArrayList<>();
+        short[] blocks = new short[sizeX * sizeY * sizeZ];
+        int index = 0;
+
+        for (int y = minY; y < minY + sizeY; y++)
+            for (int z = minZ; z < minZ + sizeZ; z++)
+                for (int x = minX; x < minX + sizeX; x++) {
+                    BlockData blockData = source.getBlockData(x, y, z);
+                    Short entry = palette.get(blockData);
+
+                    if (entry == null) {
+                        entry = (short) palette.size();
+                        palette.put(blockData, entry);
+                        paletteMaterials.add(blockData.getMaterial().name());
+                        paletteAxes.add(
+                            blockData instanceof Orientable orientable ? (byte) orientable.getAxis().ordinal() : NO_AXIS
+                        );
+                    }
+
+                    blocks[index++] = entry;
+                }
+
+        byte[] axes = new byte[paletteAxes.size()];
+        for (int i = 0; i < axes.length; i++)
+            axes[i] = paletteAxes.get(i);
+
+        return new SearchCapture(
+            operation, duration, System.currentTimeMillis(), config.getSource(),
+            referenceLocation.getWorld().getName(), BlockPos.pack(referenceLocation), referenceGeometry.pack(),
+            isCustom,
+            world.getName(), world.getEnvironment(), world.getMinHeight(), world.getMaxHeight(), ceiling,
+            BlockPos.pack(desiredDestination),
+            minX, minY, minZ, sizeX, sizeY, sizeZ,
+            paletteMaterials.toArray(String[]::new), axes, blocks
+        );
+    }
+
+    void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(Files.newOutputStream(path))
+        ))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+
+            out.writeUTF(operation);
+            out.writeLong(duration);
+            out.writeLong(timestamp);
+
+            // the config may not fit the length limit of a modified UTF-8 string
+            byte[] configBytes = config.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(configBytes.length);
+            out.write(configBytes);
+
+            out.writeUTF(referenceWorld);
+            out.writeLong(referencePosition);
+            out.writeInt(referenceGeometry);
+            out.writeBoolean(isCustom);
+
+            out.writeUTF(destinationWorld);
+            out.writeUTF(environment.name());
+            out.writeInt(minHeight);
+            out.writeInt(maxHeight);
+            out.writeInt(ceiling);
+            out.writeLong(desiredPosition);
+
+            out.writeInt(minX);
+            out.writeInt(minY);
+            out.writeInt(minZ);
+            out.writeInt(sizeX);
+            out.writeInt(sizeY);
+            out.writeInt(sizeZ);
+
+            out.writeInt(paletteMaterials.length);
+            for (int i = 0; i < paletteMaterials.length; i++) {
+                out.writeUTF(paletteMaterials[i]);
+                out.writeByte(paletteAxes[i]);
+            }
+
+            for (short block : blocks)
+                out.writeShort(block);
+        }
+    }
+
+    static SearchCapture read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(Files.newInputStream(path))
+        ))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION)
+                throw new IOException("Unrecognized search capture " + path);
+
+            String operation = in.readUTF();
+            long duration = in.readLong();
+            long timestamp = in.readLong();
+
+            byte[] configBytes = new byte[in.readInt()];
+            in.readFully(configBytes);
+
+            String referenceWorld = in.readUTF();
+            long referencePosition = in.readLong();
+            int referenceGeometry = in.readInt();
+            boolean isCustom = in.readBoolean();
+
+            String destinationWorld = in.readUTF();
+            World.Environment environment = World.Environment.valueOf(in.readUTF());
+            int minHeight = in.readInt();
+            int maxHeight = in.readInt();
+            int ceiling = in.readInt();
+            long desiredPosition = in.readLong();
+
+            int minX = in.readInt();
+            int minY = in.readInt();
+            int minZ = in.readInt();
+            int sizeX = in.readInt();
+            int sizeY = in.readInt();
+            int sizeZ = in.readInt();
+
+            int paletteSize = in.readInt();
+            String[] paletteMaterials = new String[paletteSize];
+            byte[] paletteAxes = new byte[paletteSize];
+
+            for (int i = 0; i < paletteSize; i++) {
+                paletteMaterials[i] = in.readUTF();
+                paletteAxes[i] = in.readByte();
+            }
+
+            short[] blocks = new short[sizeX * sizeY * sizeZ];
+            for (int i = 0; i < blocks.length; i++)
+                blocks[i] = in.readShort();
+
+            return new SearchCapture(
+                operation, duration, timestamp, new String(configBytes, StandardCharsets.UTF_8),
+                referenceWorld, referencePosition, referenceGeometry, isCustom,
+                destinationWorld, environment, minHeight, maxHeight, ceiling, desiredPosition,
+                minX, minY, minZ, sizeX, sizeY, sizeZ,
+                paletteMaterials, paletteAxes, blocks
+            );
+        }
+    }
+
+    /**
+     * Read the captured blocks, the way {@link BlockSource.Snapshots} reads chunk snapshots.
+     */
+    BlockSource toBlockSource() {
+        BlockData[] palette = new BlockData[paletteMaterials.length];
+
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = Material.valueOf(paletteMaterials[i]).createBlockData();
+
+            if (paletteAxes[i] != NO_AXIS && palette[i] instanceof Orientable orientable)
+                orientable.setAxis(Axis.values()[paletteAxes[i]]);
+        }
+
+        BlockData notCaptured = Material.BARRIER.createBlockData();
+        BlockData voidAir = Material.VOID_AIR.createBlockData();
+
+        return new BlockSource() {
+            @Override
+            public Material getType(int x, int y, int z) {
+                return getBlockData(x, y, z).getMaterial();
+            }
+
+            @Override
+            public BlockData getBlockData(int x, int y, int z) {
+                if (y < minHeight || y >= maxHeight)
+                    return voidAir;
+
+                int dx = x - minX;
+                int dy = y - minY;
+                int dz = z - minZ;
+
+                if (dx < 0 || dx >= sizeX || dy < 0 || dy >= sizeY || dz < 0 || dz >= sizeZ)
+                    return notCaptured;
+
+                return palette[Short.toUnsignedInt(blocks[(dy * sizeZ + dz) * sizeX + dx])];
+            }
+        };
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    long getDuration() {
+        return duration;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    String getConfig() {
+        return config;
+    }
+
+    String getReferenceWorld() {
+        return referenceWorld;
+    }
+
+    long getReferencePosition() {
+        return referencePosition;
+    }
+
+    PortalGeometry getReferenceGeometry() {
+        return PortalGeometry.unpack(referenceGeometry);
+    }
+
+    boolean isCustom() {
+        return isCustom;
+    }
+
+    String getDestinationWorld() {
+        return destinationWorld;
+    }
+
+    World.Environment getEnvironment() {
+        return environment;
+    }
+
+    int getMinHeight() {
+        return minHeight;
+    }
+
+    int getCeiling() {
+        return ceiling;
+    }
+
+    long getDesiredPosition() {
+        return desiredPosition;
+    }
+
+    int getPaletteSize() {
+        return paletteMaterials.length;
+    }
+
+}
@@ -0,0 +1,95 @@
+package ro.cofi.netherratio.logic;
+
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Decides which portal operations are slow enough to be captured, and writes their {@link SearchCapture}s to the
+ * {@value #DIRECTORY_NAME} folder, keeping only the latest ones.
+ * <br><br>
+ * At most one capture is taken every {@value #MIN_INTERVAL_SECONDS} seconds: a server that is having a bad time
+ * shouldn't spend it writing captures of the same problem.
+ */
+final class SlowOperationTracer {
+
+    public static final String DIRECTORY_NAME = "captures";
+
+    static final String TELEPORT = "teleport";
+    static final String SEARCH = "search";
+    static final String CREATION = "creation";
+
+    private static final long MIN_INTERVAL_SECONDS = 10;
+    private static final long MIN_INTERVAL = TimeUnit.SECONDS.toNanos(MIN_INTERVAL_SECONDS);
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final NetherRatio plugin;
+    private final Path directory;
+
+    private final AtomicLong lastCapture = new AtomicLong(System.nanoTime() - MIN_INTERVAL);
+
+    SlowOperationTracer(NetherRatio plugin) {
+        this.plugin = plugin;
+        this.directory = plugin.getDataFolder().toPath().resolve(DIRECTORY_NAME);
+    }
+
+    /**
+     * Tell whether an operation should be captured, and if so, claim the capture, so that only one caller takes it.
+     * May be called from any thread.
+     *
+     * @param duration How long the operation took, in nanoseconds.
+     */
+    boolean shouldCapture(ConfigSnapshot config, long duration) {
+        long threshold = config.getSlowOperationThreshold();
+        if (threshold == 0 || duration < threshold)
+            return false;
+
+        long now = System.nanoTime();
+        long last = lastCapture.get();
+
+        return now - last >= MIN_INTERVAL && lastCapture.compareAndSet(last, now);
+    }
+
+    /**
+     * Write the capture, then delete the oldest captures past the limit. Blocks on the disk, thus it must not be
+     * called from the main thread.
+     */
+    void write(SearchCapture capture, int maxCaptures) {
+        String name = LocalDateTime.now().format(FILE_NAME_FORMAT) + "-" + capture.getOperation();
+        Path path = directory.resolve(name + SearchCapture.FILE_SUFFIX);
+
+        try {
+            Files.createDirectories(directory);
+            capture.write(path);
+
+            plugin.getLogger().warning(plugin.prefixMessage("A %s took %.1f ms, captured to %s".formatted(
+                capture.getOperation(),
+                capture.getDuration() / 1e6,
+                plugin.getDataFolder().toPath().relativize(path)
+            )));
+
+            // the names start with the time of the capture, so they sort from the oldest to the latest
+            List<Path> captures;
+            try (Stream<Path> files = Files.list(directory)) {
+                captures = files.filter(file -> file.toString().endsWith(SearchCapture.FILE_SUFFIX)).sorted().toList();
+            }
+
+            for (int i = 0; i < captures.size() - maxCaptures; i++)
+                Files.deleteIfExists(captures.get(i));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, plugin.prefixMessage("Could not write " + path), e);
+        }
+    }
+
+}
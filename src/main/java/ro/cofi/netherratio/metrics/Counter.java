@@ -0,0 +1,32 @@
+package ro.cofi.netherratio.metrics;
+
+/**
+ * The counted events of the plugin: teleports by outcome, the amount of work done for them, and the upkeep of the
+ * portal registry.
+ */
+public enum Counter {
+
+    TELEPORTS_EXISTING("Teleports to an existing portal"),
+    TELEPORTS_CREATED("Teleports to a new portal"),
+    TELEPORTS_FLOATING("Teleports to a new floating portal"),
+    TELEPORTS_FORCED("Teleports to a new forced portal"),
+    TELEPORTS_CANCELLED("Teleports cancelled by other plugins"),
+    SEARCH_CANDIDATES("Search candidates visited"),
+    BLOCKS_READ("Blocks read by searches"),
+    SYNC_CHUNK_LOADS("Chunks loaded synchronously"),
+    BYTES_WRITTEN("Portal data bytes written"),
+    PORTALS_VERIFIED("Registered portals verified"),
+    PORTALS_PRUNED("Stale portals pruned"),
+    PORTALS_REPAIRED("Registered portal shapes repaired");
+
+    private final String displayName;
+
+    Counter(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+}
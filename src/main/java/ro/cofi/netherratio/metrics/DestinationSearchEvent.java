@@ -0,0 +1,112 @@
+package ro.cofi.netherratio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.Location;
+
+/**
+ * Flight recorder event: the search for a place to create a destination portal at, off the main thread.
+ */
+@Name("ro.cofi.netherratio.DestinationSearch")
+@Label("Destination Search")
+@Category("NetherRatio")
+@Description("Search of the captured chunks for a place to create a destination portal at")
+@StackTrace(false)
+public class DestinationSearchEvent extends Event {
+
+    public static final String FLOOR = "floor";
+    public static final String FLOATING = "floating";
+    public static final String NONE = "none";
+
+    @Label("Source World")
+    String sourceWorld;
+
+    @Label("Source X")
+    int sourceX;
+
+    @Label("Source Y")
+    int sourceY;
+
+    @Label("Source Z")
+    int sourceZ;
+
+    @Label("Destination World")
+    String destinationWorld;
+
+    @Label("Desired X")
+    int desiredX;
+
+    @Label("Desired Y")
+    int desiredY;
+
+    @Label("Desired Z")
+    int desiredZ;
+
+    @Label("Found X")
+    int foundX;
+
+    @Label("Found Y")
+    int foundY;
+
+    @Label("Found Z")
+    int foundZ;
+
+    @Label("Fallback Tier")
+    @Description("What the place found stands on: " + FLOOR + ", " + FLOATING + ", or " + NONE + " if nothing fits")
+    String tier;
+
+    @Label("Visited Candidates")
+    int visitedCandidates;
+
+    @Label("Blocks Read")
+    long blocksRead;
+
+    /**
+     * @return A started event, or {@code null} if the events are turned off in the config.
+     */
+    public static DestinationSearchEvent beginIf(boolean enabled) {
+        if (!enabled)
+            return null;
+
+        DestinationSearchEvent event = new DestinationSearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param found The place found, or {@code null} if there is none.
+     */
+    public void finish(
+        Location source, Location desired, Location found, boolean hasFloor, int visitedCandidates, long blocksRead
+    ) {
+        end();
+
+        if (!shouldCommit())
+            return;
+
+        sourceWorld = source.getWorld().getName();
+        sourceX = source.getBlockX();
+        sourceY = source.getBlockY();
+        sourceZ = source.getBlockZ();
+        destinationWorld = desired.getWorld().getName();
+        desiredX = desired.getBlockX();
+        desiredY = desired.getBlockY();
+        desiredZ = desired.getBlockZ();
+        tier = found == null ? NONE : hasFloor ? FLOOR : FLOATING;
+        this.visitedCandidates = visitedCandidates;
+        this.blocksRead = blocksRead;
+
+        if (found != null) {
+            foundX = found.getBlockX();
+            foundY = found.getBlockY();
+            foundZ = found.getBlockZ();
+        }
+
+        commit();
+    }
+
+}
@@ -0,0 +1,113 @@
+package ro.cofi.netherratio.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations, in nanoseconds, counted into fixed buckets: each power of two is split into {@value #SUB_BUCKETS} buckets
+ * of equal width, so that any percentile is known within a quarter of its value. Recording never locks nor allocates,
+ * and may happen from any thread.
+ * <br><br>
+ * Reads and resets are not atomic with respect to concurrent recordings, which may be partially counted. That's fine
+ * for statistics.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long duration) {
+        duration = Math.max(0, duration);
+
+        buckets.incrementAndGet(bucketOf(duration));
+        count.increment();
+        total.add(duration);
+
+        long currentMax = max.get();
+        while (duration > currentMax && !max.compareAndSet(currentMax, duration))
+            currentMax = max.get();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) total.sum() / currentCount;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The upper bound of the bucket the percentile falls into, but no more than the largest duration recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long currentCount = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            currentCount += counts[i];
+        }
+
+        if (currentCount == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * currentCount));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+
+            if (seen >= rank)
+                return Math.min(max.get(), i + 1 < BUCKET_COUNT ? lowerBound(i + 1) - 1 : Long.MAX_VALUE);
+        }
+
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            buckets.set(i, 0);
+
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} have a bucket each. Above, the bucket is given by the highest bit set, and by
+     * the {@value #SUB_BUCKET_BITS} bits right after it.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+
+        return (1L << magnitude) + ((long) subBucket << (magnitude - SUB_BUCKET_BITS));
+    }
+
+}
@@ -0,0 +1,33 @@
+package ro.cofi.netherratio.metrics;
+
+/**
+ * The timed work of the plugin. Listeners are timed as a whole, including the work they hand over to the managers.
+ */
+public enum Operation {
+
+    EXPLODE_LISTENER("ExplodeListener"),
+    FIRE_PLACE_LISTENER("FirePlaceListener"),
+    BLOCK_BREAK_LISTENER("BlockBreakListener"),
+    PORTAL_CREATE_LISTENER("PortalCreateListener"),
+    ENTITY_TELEPORT_LISTENER("EntityTeleportListener"),
+    ENTITY_PORTAL_ENTER_LISTENER("EntityPortalEnterListener"),
+    TELEPORT("Teleport handling"),
+    REFERENCE_POINT("Reference point lookup"),
+    PORTAL_SEARCH("Destination search"),
+    SEARCH_SLICE("Destination search slice"),
+    SAVE_PORTAL("Portal registration"),
+    REGISTRY_VERIFICATION("Registry verification"),
+    PORTAL_DATA_FLUSH("Portal data flush"),
+    PORTAL_DATA_WRITE("Portal data write (async)");
+
+    private final String displayName;
+
+    Operation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+}
@@ -0,0 +1,85 @@
+package ro.cofi.netherratio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.Axis;
+import org.bukkit.Location;
+
+/**
+ * Flight recorder event: a destination portal being built, once a search has found its place.
+ */
+@Name("ro.cofi.netherratio.PortalCreation")
+@Label("Portal Creation")
+@Category("NetherRatio")
+@Description("Creation of a destination portal, including the portal create event sent to other plugins")
+@StackTrace(false)
+public class PortalCreationEvent extends Event {
+
+    public static final String FORCED = "forced";
+
+    @Label("World")
+    String world;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Z")
+    int z;
+
+    @Label("Axis")
+    String axis;
+
+    @Label("Custom Portal")
+    boolean custom;
+
+    @Label("Placement")
+    @Description("What the portal stands on: floor, floating, or forced into the terrain")
+    String placement;
+
+    @Label("Created")
+    @Description("Whether the portal has been created, or the creation has been cancelled by another plugin")
+    boolean created;
+
+    /**
+     * @return A started event, or {@code null} if the events are turned off in the config.
+     */
+    public static PortalCreationEvent beginIf(boolean enabled) {
+        if (!enabled)
+            return null;
+
+        PortalCreationEvent event = new PortalCreationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param outcome The teleport outcome the placement is counted under.
+     */
+    public void finish(Location location, Axis axis, boolean isCustom, Counter outcome, boolean created) {
+        end();
+
+        if (!shouldCommit())
+            return;
+
+        world = location.getWorld().getName();
+        x = location.getBlockX();
+        y = location.getBlockY();
+        z = location.getBlockZ();
+        this.axis = axis.name();
+        custom = isCustom;
+        placement = outcome == Counter.TELEPORTS_FORCED ? FORCED :
+                    outcome == Counter.TELEPORTS_FLOATING ? DestinationSearchEvent.FLOATING :
+                    DestinationSearchEvent.FLOOR;
+        this.created = created;
+
+        commit();
+    }
+
+}
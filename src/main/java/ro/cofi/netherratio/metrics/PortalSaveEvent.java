@@ -0,0 +1,71 @@
+package ro.cofi.netherratio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.Location;
+
+/**
+ * Flight recorder event: a portal added to the registry. Writing it to the disk happens later, in the background.
+ */
+@Name("ro.cofi.netherratio.PortalSave")
+@Label("Portal Registry Save")
+@Category("NetherRatio")
+@Description("Registration of a portal, in memory and in the pending portal data changes")
+@StackTrace(false)
+public class PortalSaveEvent extends Event {
+
+    @Label("World")
+    String world;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Z")
+    int z;
+
+    @Label("Custom Portal")
+    boolean custom;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    /**
+     * @return A started event, or {@code null} if the events are turned off in the config.
+     */
+    public static PortalSaveEvent beginIf(boolean enabled) {
+        if (!enabled)
+            return null;
+
+        PortalSaveEvent event = new PortalSaveEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(Location location, boolean isCustom, int width, int height) {
+        end();
+
+        if (!shouldCommit())
+            return;
+
+        world = location.getWorld().getName();
+        x = location.getBlockX();
+        y = location.getBlockY();
+        z = location.getBlockZ();
+        custom = isCustom;
+        this.width = width;
+        this.height = height;
+
+        commit();
+    }
+
+}
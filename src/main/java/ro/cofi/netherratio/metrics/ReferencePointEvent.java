@@ -0,0 +1,71 @@
+package ro.cofi.netherratio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.Location;
+
+/**
+ * Flight recorder event: the walk from a portal block to the reference point of its portal.
+ */
+@Name("ro.cofi.netherratio.ReferencePoint")
+@Label("Reference Point Resolution")
+@Category("NetherRatio")
+@Description("Walk from a portal block to the bottommost and northwesternmost block of its portal")
+@StackTrace(false)
+public class ReferencePointEvent extends Event {
+
+    @Label("World")
+    String world;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Z")
+    int z;
+
+    @Label("Found")
+    @Description("Whether the block is part of a whole portal")
+    boolean found;
+
+    @Label("Custom Portal")
+    boolean custom;
+
+    /**
+     * @return A started event, or {@code null} if the events are turned off in the config.
+     */
+    public static ReferencePointEvent beginIf(boolean enabled) {
+        if (!enabled)
+            return null;
+
+        ReferencePointEvent event = new ReferencePointEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param location The portal block the walk started from.
+     */
+    public void finish(Location location, boolean found, boolean isCustom) {
+        end();
+
+        if (!shouldCommit())
+            return;
+
+        world = location.getWorld().getName();
+        x = location.getBlockX();
+        y = location.getBlockY();
+        z = location.getBlockZ();
+        this.found = found;
+        custom = isCustom;
+
+        commit();
+    }
+
+}
@@ -0,0 +1,100 @@
+package ro.cofi.netherratio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+
+/**
+ * Flight recorder event: an entity in a portal, and where the plugin decided to send it.
+ */
+@Name("ro.cofi.netherratio.TeleportResolution")
+@Label("Teleport Resolution")
+@Category("NetherRatio")
+@Description("Resolution of the destination of an entity standing in a portal")
+@StackTrace(false)
+public class TeleportResolutionEvent extends Event {
+
+    public static final String NONE = "none";
+    public static final String LINKED = "linked portal";
+    public static final String NEAREST = "nearest portal";
+    public static final String SEARCH = "search started";
+
+    @Label("Entity Type")
+    String entityType;
+
+    @Label("Custom Portal")
+    boolean custom;
+
+    @Label("Source World")
+    String sourceWorld;
+
+    @Label("Source X")
+    int sourceX;
+
+    @Label("Source Y")
+    int sourceY;
+
+    @Label("Source Z")
+    int sourceZ;
+
+    @Label("Resolution")
+    @Description("How the destination was found: " + LINKED + ", " + NEAREST + ", " + SEARCH + " or " + NONE)
+    String resolution;
+
+    @Label("Destination World")
+    String destinationWorld;
+
+    @Label("Destination X")
+    int destinationX;
+
+    @Label("Destination Y")
+    int destinationY;
+
+    @Label("Destination Z")
+    int destinationZ;
+
+    /**
+     * @return A started event, or {@code null} if the events are turned off in the config.
+     */
+    public static TeleportResolutionEvent beginIf(boolean enabled) {
+        if (!enabled)
+            return null;
+
+        TeleportResolutionEvent event = new TeleportResolutionEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param destination The portal the entity is sent to, if any.
+     */
+    public void finish(Entity entity, Location source, boolean isCustom, Location destination, String resolution) {
+        end();
+
+        if (!shouldCommit())
+            return;
+
+        entityType = entity.getType().name();
+        custom = isCustom;
+        sourceWorld = source.getWorld().getName();
+        sourceX = source.getBlockX();
+        sourceY = source.getBlockY();
+        sourceZ = source.getBlockZ();
+        this.resolution = resolution;
+
+        if (destination != null) {
+            destinationWorld = destination.getWorld().getName();
+            destinationX = destination.getBlockX();
+            destinationY = destination.getBlockY();
+            destinationZ = destination.getBlockZ();
+        }
+
+        commit();
+    }
+
+}
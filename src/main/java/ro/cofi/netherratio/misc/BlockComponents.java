@@ -0,0 +1,76 @@
+package ro.cofi.netherratio.misc;
+
+import org.bukkit.Axis;
+
+import java.util.Arrays;
+
+/**
+ * Splits a set of portal blocks, as packed positions, into groups of blocks touching each other by a face within the
+ * plane of their portals. Blocks of parallel portals built back to back touch across the plane, and are kept apart.
+ */
+public final class BlockComponents {
+
+    private static final int[][] X_PLANE_OFFSETS = {
+        { 1, 0, 0 }, { -1, 0, 0 },
+        { 0, 1, 0 }, { 0, -1, 0 }
+    };
+
+    private static final int[][] Z_PLANE_OFFSETS = {
+        { 0, 0, 1 }, { 0, 0, -1 },
+        { 0, 1, 0 }, { 0, -1, 0 }
+    };
+
+    private BlockComponents() { }
+
+    /**
+     * Walk every group once, in a single pass over the set.
+     *
+     * @param blocks Portal blocks, all of them along the given axis.
+     * @return One block of every group.
+     */
+    public static long[] representatives(LongHashSet blocks, Axis axis) {
+        int[][] neighborOffsets = axis == Axis.X ? X_PLANE_OFFSETS : Z_PLANE_OFFSETS;
+        LongHashSet visited = new LongHashSet(blocks.size());
+        long[] representatives = new long[0];
+        int representativeCount = 0;
+
+        long[] stack = new long[16];
+
+        for (int slot = 0; slot < blocks.slotCount(); slot++) {
+            long start = blocks.slotValue(slot);
+            if (start == LongHashSet.FREE || !visited.add(start))
+                continue;
+
+            if (representativeCount == representatives.length)
+                representatives = Arrays.copyOf(representatives, Math.max(4, representativeCount * 2));
+
+            representatives[representativeCount++] = start;
+
+            // depth-first, over the blocks of the set only
+            int stackSize = 0;
+            stack[stackSize++] = start;
+
+            while (stackSize > 0) {
+                long block = stack[--stackSize];
+
+                int x = BlockPos.unpackX(block);
+                int y = BlockPos.unpackY(block);
+                int z = BlockPos.unpackZ(block);
+
+                for (int[] offset : neighborOffsets) {
+                    long neighbor = BlockPos.pack(x + offset[0], y + offset[1], z + offset[2]);
+                    if (!blocks.contains(neighbor) || !visited.add(neighbor))
+                        continue;
+
+                    if (stackSize == stack.length)
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+
+                    stack[stackSize++] = neighbor;
+                }
+            }
+        }
+
+        return Arrays.copyOf(representatives, representativeCount);
+    }
+
+}
@@ -0,0 +1,61 @@
+package ro.cofi.netherratio.misc;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+/**
+ * Block coordinates packed into a single {@code long}, using the same layout as the game itself:
+ * 26 bits for X, 26 bits for Z and 12 bits for Y, all signed.
+ */
+public class BlockPos {
+
+    /**
+     * Stands for "no position". Unpacks to an X coordinate far outside the world border.
+     */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int XZ_BITS = 26;
+    private static final int Y_BITS = 12;
+
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+
+    private static final int X_SHIFT = Y_BITS + XZ_BITS;
+    private static final int Z_SHIFT = Y_BITS;
+
+    private BlockPos() { }
+
+    public static long pack(int x, int y, int z) {
+        return ((x & XZ_MASK) << X_SHIFT) | ((z & XZ_MASK) << Z_SHIFT) | (y & Y_MASK);
+    }
+
+    public static long pack(Location location) {
+        return pack(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    public static long pack(Vector vector) {
+        return pack(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ());
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << (Long.SIZE - Y_BITS) >> (Long.SIZE - Y_BITS));
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << (Long.SIZE - X_SHIFT) >> (Long.SIZE - XZ_BITS));
+    }
+
+    public static Vector toVector(long packed) {
+        return new Vector(unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+
+    public static Location toLocation(World world, long packed) {
+        return new Location(world, unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+
+}
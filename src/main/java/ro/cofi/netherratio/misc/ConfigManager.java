@@ -1,96 +1,174 @@
 package ro.cofi.netherratio.misc;
 
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
-import org.bukkit.Registry;
+import org.bukkit.World;
 import ro.cofi.netherratio.NetherRatio;
 
 public class ConfigManager {
 
     private final NetherRatio plugin;
 
+    private volatile ConfigSnapshot snapshot;
+
     public ConfigManager(NetherRatio plugin) {
         this.plugin = plugin;
-    }
 
-    public double getRatioOverworld() {
-        return plugin.getConfig().getDouble("ratio.overworld");
+        reload();
     }
 
-    public double getRatioNether() {
-        return plugin.getConfig().getDouble("ratio.nether");
+    /**
+     * Resolve the current plugin config into a new snapshot, and replace the previous one with it.
+     */
+    public void reload() {
+        snapshot = new ConfigSnapshot(
+            plugin.getConfig(),
+            plugin.getServer().getWorlds(),
+            message -> plugin.getLogger().severe(plugin.prefixMessage(message))
+        );
     }
 
-    public Material getFrameBlock() {
-        String backup = Constants.BACKUP_FRAME_BLOCK.getKey().toString();
+    /**
+     * If no world pair is configured, make the default one out of the loaded worlds, once they are all there. The
+     * problems of the config have been reported by the last reload already.
+     *
+     * @return Whether the default world pair has just been made.
+     */
+    public boolean resolveDefaultWorldPair() {
+        if (!snapshot.isDefaultWorldPairPending())
+            return false;
 
-        String frameBlock = plugin.getConfig().getString("frame_block", backup);
-        NamespacedKey namespacedKey = NamespacedKey.fromString(frameBlock);
+        ConfigSnapshot resolved = new ConfigSnapshot(
+            plugin.getConfig(),
+            plugin.getServer().getWorlds(),
+            message -> { }
+        );
+        if (resolved.isDefaultWorldPairPending())
+            return false;
 
-        Material material = null;
+        snapshot = resolved;
 
-        if (namespacedKey != null)
-            material = Registry.MATERIAL.get(namespacedKey);
+        WorldPair pair = resolved.getWorldPairs().get(0);
+        plugin.getLogger().info(plugin.prefixMessage(
+            "Pairing world '%s' with world '%s'".formatted(pair.overworld(), pair.nether())
+        ));
 
-        if (material == null) {
-            plugin.getLogger().severe(plugin.prefixMessage(
-                "Unknown block id '%s'. Fixing to default frame block '%s'".formatted(frameBlock, backup)
-            ));
+        return true;
+    }
 
-            plugin.getConfig().set("frame_block", backup);
+    /**
+     * Hot paths should get the snapshot once and read everything they need from it, so they work with a single,
+     * consistent version of the config even if a reload happens meanwhile.
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
 
-            material = Constants.BACKUP_FRAME_BLOCK;
-        }
+    public double getRatioOverworld() {
+        return snapshot.getRatioOverworld();
+    }
 
-        return material;
+    public double getRatioNether() {
+        return snapshot.getRatioNether();
+    }
+
+    public Material getFrameBlock() {
+        return snapshot.getFrameBlock();
+    }
+
+    public boolean isPortalWorld(World world) {
+        return snapshot.isPortalWorld(world);
     }
 
     public boolean isFloatingPlacementAllowed() {
-        return plugin.getConfig().getBoolean("allow_floating_placement");
+        return snapshot.isFloatingPlacementAllowed();
     }
 
     public boolean isForcedPlacementAllowed() {
-        return plugin.getConfig().getBoolean("allow_forced_placement");
+        return snapshot.isForcedPlacementAllowed();
     }
 
     public double getMinDistanceBetweenPortalsOverworld() {
-        return plugin.getConfig().getDouble("min_distance_between_portals.overworld");
+        return snapshot.getMinDistanceBetweenPortalsOverworld();
     }
 
     public double getMinDistanceBetweenPortalsNether() {
-        return plugin.getConfig().getDouble("min_distance_between_portals.nether");
+        return snapshot.getMinDistanceBetweenPortalsNether();
     }
 
     public int getMaxPortalPlacementOffsetVertical() {
-        return plugin.getConfig().getInt("max_portal_placement_offset.vertical");
+        return snapshot.getMaxPortalPlacementOffsetVertical();
     }
 
     public int getMaxPortalPlacementOffsetHorizontal() {
-        return plugin.getConfig().getInt("max_portal_placement_offset.horizontal");
+        return snapshot.getMaxPortalPlacementOffsetHorizontal();
     }
 
     public int getPortalSizeHeightMin() {
-        return plugin.getConfig().getInt("portal_size.height.min");
+        return snapshot.getPortalSizeHeightMin();
     }
 
     public int getPortalSizeHeightMax() {
-        return plugin.getConfig().getInt("portal_size.height.max");
+        return snapshot.getPortalSizeHeightMax();
     }
 
     public int getPortalSizeHeightNew() {
-        return plugin.getConfig().getInt("portal_size.height.new");
+        return snapshot.getPortalSizeHeightNew();
     }
 
     public int getPortalSizeWidthMin() {
-        return plugin.getConfig().getInt("portal_size.height.min");
+        return snapshot.getPortalSizeWidthMin();
     }
 
     public int getPortalSizeWidthMax() {
-        return plugin.getConfig().getInt("portal_size.width.max");
+        return snapshot.getPortalSizeWidthMax();
     }
 
     public int getPortalSizeWidthNew() {
-        return plugin.getConfig().getInt("portal_size.width.new");
+        return snapshot.getPortalSizeWidthNew();
+    }
+
+    public int getPortalDataFlushInterval() {
+        return snapshot.getPortalDataFlushInterval();
+    }
+
+    public long getPortalDataCompactionThreshold() {
+        return snapshot.getPortalDataCompactionThreshold();
+    }
+
+    public int getPrefetchRadius() {
+        return snapshot.getPrefetchRadius();
+    }
+
+    public int getPrefetchBudget() {
+        return snapshot.getPrefetchBudget();
+    }
+
+    public int getPrefetchTicketDuration() {
+        return snapshot.getPrefetchTicketDuration();
+    }
+
+    public long getRegistryVerificationBudget() {
+        return snapshot.getRegistryVerificationBudget();
+    }
+
+    public int getRegistryVerificationInterval() {
+        return snapshot.getRegistryVerificationInterval();
+    }
+
+    public long getMainThreadSearchBudget() {
+        return snapshot.getMainThreadSearchBudget();
+    }
+
+    public boolean isFlightRecorderEventsEnabled() {
+        return snapshot.isFlightRecorderEventsEnabled();
+    }
+
+    public long getSlowOperationThreshold() {
+        return snapshot.getSlowOperationThreshold();
+    }
+
+    public int getSlowOperationMaxCaptures() {
+        return snapshot.getSlowOperationMaxCaptures();
     }
 
 }
@@ -0,0 +1,454 @@
+package ro.cofi.netherratio.misc;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.World;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Every config value, resolved once. Built on enable and on every reload, then swapped in as a whole, so that a reader
+ * never sees half of an old config and half of a new one.
+ * <br><br>
+ * Material checks go through lookup tables indexed by the material ordinal, instead of hashing or registry lookups.
+ */
+public final class ConfigSnapshot {
+
+    private static final byte NOT_A_FRAME = 0;
+    private static final byte CUSTOM_FRAME = 1;
+    private static final byte VANILLA_FRAME = 2;
+
+    private static final String DEFAULT_WORLD_PAIR = "default";
+
+    private final double ratioOverworld;
+    private final double ratioNether;
+
+    private final Material frameBlock;
+    private final boolean[] replaceable;
+    private final byte[] frameKinds;
+
+    private final boolean floatingPlacementAllowed;
+    private final boolean forcedPlacementAllowed;
+
+    private final double minDistanceBetweenPortalsOverworld;
+    private final double minDistanceBetweenPortalsNether;
+
+    private final List<WorldPair> worldPairs;
+    private final Map<String, WorldPair> worldPairsByWorld = new HashMap<>();
+    private final boolean defaultWorldPairPending;
+
+    private final int maxPortalPlacementOffsetVertical;
+    private final int maxPortalPlacementOffsetHorizontal;
+    private final long[] searchOffsets;
+
+    private final int portalSizeHeightMin;
+    private final int portalSizeHeightMax;
+    private final int portalSizeHeightNew;
+    private final int portalSizeWidthMin;
+    private final int portalSizeWidthMax;
+    private final int portalSizeWidthNew;
+
+    private final int portalDataFlushInterval;
+    private final long portalDataCompactionThreshold;
+
+    private final int prefetchRadius;
+    private final int prefetchBudget;
+    private final int prefetchTicketDuration;
+
+    private final long registryVerificationBudget;
+    private final int registryVerificationInterval;
+
+    private final long mainThreadSearchBudget;
+
+    private final boolean flightRecorderEventsEnabled;
+
+    private final long slowOperationThreshold;
+    private final int slowOperationMaxCaptures;
+
+    private final String source;
+
+    /**
+     * @param worlds        The loaded worlds, the default world pair is made of if none is configured.
+     * @param errorReporter Receives the problems found in the config, which are fixed in the config as well.
+     */
+    public ConfigSnapshot(Configuration config, List<World> worlds, Consumer<String> errorReporter) {
+        ratioOverworld = config.getDouble("ratio.overworld");
+        ratioNether = config.getDouble("ratio.nether");
+
+        frameBlock = resolveFrameBlock(config, errorReporter);
+
+        Material[] materials = Material.values();
+        replaceable = new boolean[materials.length];
+        frameKinds = new byte[materials.length];
+
+        for (Material material : Constants.REPLACEABLE_BLOCKS)
+            replaceable[material.ordinal()] = true;
+
+        // the custom frame takes precedence, in case it is the same as the vanilla one
+        frameKinds[Constants.VANILLA_FRAME_BLOCK.ordinal()] = VANILLA_FRAME;
+        frameKinds[frameBlock.ordinal()] = CUSTOM_FRAME;
+
+        floatingPlacementAllowed = config.getBoolean("allow_floating_placement");
+        forcedPlacementAllowed = config.getBoolean("allow_forced_placement");
+
+        minDistanceBetweenPortalsOverworld = config.getDouble("min_distance_between_portals.overworld");
+        minDistanceBetweenPortalsNether = config.getDouble("min_distance_between_portals.nether");
+
+        worldPairs = resolveWorldPairs(config, worlds, errorReporter);
+        defaultWorldPairPending = worldPairs.isEmpty();
+
+        for (WorldPair pair : worldPairs) {
+            worldPairsByWorld.put(pair.overworld(), pair);
+            worldPairsByWorld.put(pair.nether(), pair);
+        }
+
+        maxPortalPlacementOffsetVertical = config.getInt("max_portal_placement_offset.vertical");
+        maxPortalPlacementOffsetHorizontal = config.getInt("max_portal_placement_offset.horizontal");
+        searchOffsets = SearchOffsets.cylinder(maxPortalPlacementOffsetHorizontal, maxPortalPlacementOffsetVertical);
+
+        portalSizeHeightMin = config.getInt("portal_size.height.min");
+        portalSizeHeightMax = config.getInt("portal_size.height.max");
+        portalSizeHeightNew = config.getInt("portal_size.height.new");
+        portalSizeWidthMin = config.getInt("portal_size.width.min");
+        portalSizeWidthMax = config.getInt("portal_size.width.max");
+        portalSizeWidthNew = config.getInt("portal_size.width.new");
+
+        portalDataFlushInterval = Math.max(1, config.getInt("portal_data.flush_interval"));
+        portalDataCompactionThreshold = config.getLong("portal_data.compaction_threshold") * 1024; // KiB to bytes
+
+        prefetchRadius = Math.max(0, config.getInt("prefetch.radius"));
+        prefetchBudget = Math.max(1, config.getInt("prefetch.budget"));
+        prefetchTicketDuration = Math.max(1, config.getInt("prefetch.ticket_duration")) * 20; // seconds to ticks
+
+        registryVerificationBudget = TimeUnit.MICROSECONDS.toNanos(
+            Math.max(0, config.getLong("registry_verification.budget"))
+        );
+        registryVerificationInterval = Math.max(1, config.getInt("registry_verification.interval")) * 20; // to ticks
+
+        mainThreadSearchBudget = TimeUnit.MICROSECONDS.toNanos(
+            Math.max(0, config.getLong("main_thread_search_budget"))
+        );
+
+        flightRecorderEventsEnabled = config.getBoolean("flight_recorder_events");
+
+        slowOperationThreshold = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, config.getLong("slow_operation_capture.threshold"))
+        );
+        slowOperationMaxCaptures = Math.max(1, config.getInt("slow_operation_capture.max_captures"));
+
+        // written along with slow operation captures, so that they can be replayed with the same config
+        source = config instanceof FileConfiguration file ? file.saveToString() : "";
+    }
+
+    private static Material resolveFrameBlock(Configuration config, Consumer<String> errorReporter) {
+        String backup = Constants.BACKUP_FRAME_BLOCK.getKey().toString();
+
+        String frameBlock = config.getString("frame_block", backup);
+        NamespacedKey namespacedKey = NamespacedKey.fromString(frameBlock);
+
+        Material material = null;
+
+        if (namespacedKey != null)
+            material = Registry.MATERIAL.get(namespacedKey);
+
+        if (material == null) {
+            errorReporter.accept(
+                "Unknown block id '%s'. Fixing to default frame block '%s'".formatted(frameBlock, backup)
+            );
+
+            config.set("frame_block", backup);
+
+            material = Constants.BACKUP_FRAME_BLOCK;
+        }
+
+        return material;
+    }
+
+    /**
+     * Read the configured world pairs, skipping the broken ones. Each pair may override the ratio and the distance
+     * between portals, which otherwise default to the top-level values.
+     * <br><br>
+     * Without any valid pair, the first overworld and the first nether among the loaded worlds (the main world and
+     * its nether) make the default pair, as soon as both are loaded.
+     */
+    private List<WorldPair> resolveWorldPairs(
+        Configuration config, List<World> worlds, Consumer<String> errorReporter
+    ) {
+        List<WorldPair> pairs = new ArrayList<>();
+        Set<String> pairedWorlds = new HashSet<>();
+
+        ConfigurationSection section = config.getConfigurationSection("world_pairs");
+
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                ConfigurationSection pairSection = section.getConfigurationSection(name);
+                String overworld = pairSection != null ? pairSection.getString("overworld") : null;
+                String nether = pairSection != null ? pairSection.getString("nether") : null;
+
+                if (overworld == null || nether == null || overworld.equals(nether)) {
+                    errorReporter.accept("World pair '%s' needs two different worlds. Ignoring it".formatted(name));
+                    continue;
+                }
+
+                if (pairedWorlds.contains(overworld) || pairedWorlds.contains(nether)) {
+                    errorReporter.accept("World pair '%s' has a world of another pair. Ignoring it".formatted(name));
+                    continue;
+                }
+
+                pairedWorlds.add(overworld);
+                pairedWorlds.add(nether);
+
+                pairs.add(new WorldPair(
+                    name,
+                    overworld,
+                    nether,
+                    pairSection.getDouble("ratio.overworld", ratioOverworld),
+                    pairSection.getDouble("ratio.nether", ratioNether),
+                    pairSection.getDouble("min_distance_between_portals.overworld", minDistanceBetweenPortalsOverworld),
+                    pairSection.getDouble("min_distance_between_portals.nether", minDistanceBetweenPortalsNether)
+                ));
+            }
+        }
+
+        if (!pairs.isEmpty())
+            return Collections.unmodifiableList(pairs);
+
+        if (section != null && !section.getKeys(false).isEmpty())
+            errorReporter.accept("No valid world pair. Pairing the first overworld with the first nether instead");
+
+        World overworld = findFirstWorld(worlds, World.Environment.NORMAL);
+        World nether = findFirstWorld(worlds, World.Environment.NETHER);
+
+        // the worlds load after the plugin is enabled, the pair is made once they have
+        if (overworld == null || nether == null)
+            return Collections.emptyList();
+
+        return List.of(new WorldPair(
+            DEFAULT_WORLD_PAIR,
+            overworld.getName(),
+            nether.getName(),
+            ratioOverworld,
+            ratioNether,
+            minDistanceBetweenPortalsOverworld,
+            minDistanceBetweenPortalsNether
+        ));
+    }
+
+    private static World findFirstWorld(List<World> worlds, World.Environment environment) {
+        for (World world : worlds)
+            if (world.getEnvironment() == environment)
+                return world;
+
+        return null;
+    }
+
+    public double getRatioOverworld() {
+        return ratioOverworld;
+    }
+
+    public double getRatioNether() {
+        return ratioNether;
+    }
+
+    public Material getFrameBlock() {
+        return frameBlock;
+    }
+
+    public Material getFrameBlock(boolean isCustom) {
+        return isCustom ? frameBlock : Constants.VANILLA_FRAME_BLOCK;
+    }
+
+    public boolean isReplaceable(Material material) {
+        return replaceable[material.ordinal()];
+    }
+
+    /**
+     * @return Whether the material is either the custom or the vanilla frame block.
+     */
+    public boolean isFrameBlock(Material material) {
+        return frameKinds[material.ordinal()] != NOT_A_FRAME;
+    }
+
+    public boolean isCustomFrameBlock(Material material) {
+        return frameKinds[material.ordinal()] == CUSTOM_FRAME;
+    }
+
+    public boolean isVanillaFrameBlock(Material material) {
+        return frameKinds[material.ordinal()] == VANILLA_FRAME;
+    }
+
+    /**
+     * @return The world pairs, in the order they are configured in.
+     */
+    public List<WorldPair> getWorldPairs() {
+        return worldPairs;
+    }
+
+    /**
+     * @return Whether no world pair is configured, and the default one is waiting for its worlds to load. The config
+     *         then has to be resolved again as worlds load.
+     */
+    public boolean isDefaultWorldPairPending() {
+        return defaultWorldPairPending;
+    }
+
+    /**
+     * @return The pair the world is part of, or {@code null} if portals don't lead anywhere from it.
+     */
+    public WorldPair getWorldPair(String worldName) {
+        return worldPairsByWorld.get(worldName);
+    }
+
+    public WorldPair getWorldPair(World world) {
+        return worldPairsByWorld.get(world.getName());
+    }
+
+    /**
+     * @return Whether the plugin handles the portals of the world.
+     */
+    public boolean isPortalWorld(World world) {
+        return worldPairsByWorld.containsKey(world.getName());
+    }
+
+    public boolean isFloatingPlacementAllowed() {
+        return floatingPlacementAllowed;
+    }
+
+    public boolean isForcedPlacementAllowed() {
+        return forcedPlacementAllowed;
+    }
+
+    public double getMinDistanceBetweenPortalsOverworld() {
+        return minDistanceBetweenPortalsOverworld;
+    }
+
+    public double getMinDistanceBetweenPortalsNether() {
+        return minDistanceBetweenPortalsNether;
+    }
+
+    public int getMaxPortalPlacementOffsetVertical() {
+        return maxPortalPlacementOffsetVertical;
+    }
+
+    public int getMaxPortalPlacementOffsetHorizontal() {
+        return maxPortalPlacementOffsetHorizontal;
+    }
+
+    /**
+     * @return The placement search volume, as {@link SearchOffsets}. Shared, thus it must not be modified.
+     */
+    public long[] getSearchOffsets() {
+        return searchOffsets;
+    }
+
+    public int getPortalSizeHeightMin() {
+        return portalSizeHeightMin;
+    }
+
+    public int getPortalSizeHeightMax() {
+        return portalSizeHeightMax;
+    }
+
+    public int getPortalSizeHeightNew() {
+        return portalSizeHeightNew;
+    }
+
+    public int getPortalSizeWidthMin() {
+        return portalSizeWidthMin;
+    }
+
+    public int getPortalSizeWidthMax() {
+        return portalSizeWidthMax;
+    }
+
+    public int getPortalSizeWidthNew() {
+        return portalSizeWidthNew;
+    }
+
+    public int getPortalDataFlushInterval() {
+        return portalDataFlushInterval;
+    }
+
+    public long getPortalDataCompactionThreshold() {
+        return portalDataCompactionThreshold;
+    }
+
+    /**
+     * @return The distance to a portal at which its destination chunks start loading, or 0 if they never do.
+     */
+    public int getPrefetchRadius() {
+        return prefetchRadius;
+    }
+
+    /**
+     * @return The most chunk loads prefetching may start per second.
+     */
+    public int getPrefetchBudget() {
+        return prefetchBudget;
+    }
+
+    /**
+     * @return For how many ticks a prefetched chunk is kept loaded, once no player is close to its portal anymore.
+     */
+    public int getPrefetchTicketDuration() {
+        return prefetchTicketDuration;
+    }
+
+    /**
+     * @return How long the registry may be verified for every tick, in nanoseconds, or 0 if it never is.
+     */
+    public long getRegistryVerificationBudget() {
+        return registryVerificationBudget;
+    }
+
+    /**
+     * @return The least number of ticks between the starts of two walks through the whole registry.
+     */
+    public int getRegistryVerificationInterval() {
+        return registryVerificationInterval;
+    }
+
+    /**
+     * @return How long destination searches may run on the main thread every tick, in nanoseconds, or 0 if they run in
+     *         the background instead.
+     */
+    public long getMainThreadSearchBudget() {
+        return mainThreadSearchBudget;
+    }
+
+    /**
+     * @return Whether the portal operations are reported to Java Flight Recorder. When they aren't, no event is even
+     *         created.
+     */
+    public boolean isFlightRecorderEventsEnabled() {
+        return flightRecorderEventsEnabled;
+    }
+
+    /**
+     * @return How long a portal operation may take before it is captured, in nanoseconds, or 0 if none is.
+     */
+    public long getSlowOperationThreshold() {
+        return slowOperationThreshold;
+    }
+
+    /**
+     * @return How many capture files are kept, the oldest ones being deleted first.
+     */
+    public int getSlowOperationMaxCaptures() {
+        return slowOperationMaxCaptures;
+    }
+
+    /**
+     * @return The config this snapshot has been resolved from, in YAML.
+     */
+    public String getSource() {
+        return source;
+    }
+
+}
@@ -17,6 +17,11 @@ public interface Constants {
     Material BACKUP_FRAME_BLOCK = Material.CRYING_OBSIDIAN;
     Material VANILLA_FRAME_BLOCK = Material.OBSIDIAN;
 
+    double VANILLA_RATIO_OVERWORLD = 8;
+    double VANILLA_RATIO_NETHER = 1;
+    double VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_OVERWORLD = 128;
+    double VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_NETHER = 16;
+
     Set<World.Environment> VALID_ENVIRONMENTS = Set.of(
         World.Environment.NORMAL,
         World.Environment.NETHER
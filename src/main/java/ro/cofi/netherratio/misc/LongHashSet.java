@@ -0,0 +1,191 @@
+package ro.cofi.netherratio.misc;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive {@code long} values, using open addressing with linear probing. Avoids boxing entirely, so a
+ * value costs 8 to 16 bytes, instead of the ~60 bytes of a {@link Long} inside a {@link java.util.HashSet}.
+ * <br><br>
+ * {@link #FREE} marks unused slots, thus it can't be stored. It matches {@link BlockPos#NONE}, which is never a real
+ * position anyway.
+ * <br><br>
+ * Iterating without allocating is done through the slots:
+ * <pre>{@code
+ * for (int slot = 0; slot < set.slotCount(); slot++) {
+ *     long value = set.slotValue(slot);
+ *     if (value != LongHashSet.FREE)
+ *         ...
+ * }
+ * }</pre>
+ */
+public class LongHashSet {
+
+    public static final long FREE = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE)
+            return false;
+
+        for (int slot = slotOf(value); ; slot = (slot + 1) & mask) {
+            long current = slots[slot];
+
+            if (current == value)
+                return true;
+
+            if (current == FREE)
+                return false;
+        }
+    }
+
+    /**
+     * @return Whether the value has been added (it wasn't already part of the set).
+     */
+    public boolean add(long value) {
+        if (value == FREE)
+            throw new IllegalArgumentException("Can't store the reserved value " + FREE);
+
+        int slot = slotOf(value);
+
+        for (; slots[slot] != FREE; slot = (slot + 1) & mask)
+            if (slots[slot] == value)
+                return false;
+
+        slots[slot] = value;
+
+        if (++size > slots.length * LOAD_FACTOR)
+            rehash(slots.length * 2);
+
+        return true;
+    }
+
+    /**
+     * @return Whether the value has been removed (it was part of the set).
+     */
+    public boolean remove(long value) {
+        if (value == FREE)
+            return false;
+
+        for (int slot = slotOf(value); slots[slot] != FREE; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        size = 0;
+    }
+
+    public int slotCount() {
+        return slots.length;
+    }
+
+    /**
+     * @return The value stored in the given slot, or {@link #FREE} if none is.
+     */
+    public long slotValue(int slot) {
+        return slots[slot];
+    }
+
+    public long[] toArray() {
+        long[] values = new long[size];
+        int index = 0;
+
+        for (long value : slots)
+            if (value != FREE)
+                values[index++] = value;
+
+        return values;
+    }
+
+    /**
+     * Fill the gap left by a removed value, by moving back the values that had to probe past it.
+     * This keeps every lookup chain intact without needing tombstones.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+
+        while (true) {
+            slot = (slot + 1) & mask;
+
+            long current = slots[slot];
+            if (current == FREE)
+                break;
+
+            int home = slotOf(current);
+
+            // the value may move into the gap only if its home slot is not cyclically within (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                slots[gap] = current;
+                gap = slot;
+            }
+        }
+
+        slots[gap] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldSlots = slots;
+        allocate(capacity);
+
+        for (long value : oldSlots) {
+            if (value == FREE)
+                continue;
+
+            int slot = slotOf(value);
+            while (slots[slot] != FREE)
+                slot = (slot + 1) & mask;
+
+            slots[slot] = value;
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, FREE);
+    }
+
+    private int slotOf(long value) {
+        return mix(value) & mask;
+    }
+
+    static int mix(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(1, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(DEFAULT_CAPACITY, capacity);
+    }
+
+}
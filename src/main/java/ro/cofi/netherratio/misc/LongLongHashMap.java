@@ -0,0 +1,206 @@
+package ro.cofi.netherratio.misc;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long} keys to primitive {@code long} values, using open addressing with linear probing,
+ * like {@link LongHashSet}. Neither keys nor values are ever boxed.
+ * <br><br>
+ * {@link LongHashSet#FREE} marks unused slots, thus it can't be used as a key.
+ */
+public class LongLongHashMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    public LongLongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        allocate(LongHashSet.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == LongHashSet.FREE)
+            return false;
+
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+
+            if (current == key)
+                return true;
+
+            if (current == LongHashSet.FREE)
+                return false;
+        }
+    }
+
+    /**
+     * @return The value mapped to the key, or {@code defaultValue} if there is none.
+     */
+    public long get(long key, long defaultValue) {
+        if (key == LongHashSet.FREE)
+            return defaultValue;
+
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+
+            if (current == key)
+                return values[slot];
+
+            if (current == LongHashSet.FREE)
+                return defaultValue;
+        }
+    }
+
+    /**
+     * @return The previous value mapped to the key, or {@code defaultValue} if there was none.
+     */
+    public long put(long key, long value, long defaultValue) {
+        if (key == LongHashSet.FREE)
+            throw new IllegalArgumentException("Can't use the reserved key " + LongHashSet.FREE);
+
+        int slot = slotOf(key);
+
+        for (; keys[slot] != LongHashSet.FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size > keys.length * LOAD_FACTOR)
+            rehash(keys.length * 2);
+
+        return defaultValue;
+    }
+
+    /**
+     * @return The value that was mapped to the key, or {@code defaultValue} if there was none.
+     */
+    public long remove(long key, long defaultValue) {
+        if (key == LongHashSet.FREE)
+            return defaultValue;
+
+        for (int slot = slotOf(key); keys[slot] != LongHashSet.FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+        }
+
+        return defaultValue;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, LongHashSet.FREE);
+        size = 0;
+    }
+
+    public int slotCount() {
+        return keys.length;
+    }
+
+    /**
+     * @return The key stored in the given slot, or {@link LongHashSet#FREE} if none is.
+     */
+    public long slotKey(int slot) {
+        return keys[slot];
+    }
+
+    public long slotValue(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Copy the entries into two arrays, keys and values at matching indices.
+     */
+    public void copyTo(long[] keyArray, long[] valueArray) {
+        int index = 0;
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] == LongHashSet.FREE)
+                continue;
+
+            keyArray[index] = keys[slot];
+            valueArray[index] = values[slot];
+            index++;
+        }
+    }
+
+    /**
+     * Same as {@link LongHashSet}, moving the values along with their keys.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+
+        while (true) {
+            slot = (slot + 1) & mask;
+
+            long current = keys[slot];
+            if (current == LongHashSet.FREE)
+                break;
+
+            int home = slotOf(current);
+
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = current;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+
+        keys[gap] = LongHashSet.FREE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            long key = oldKeys[oldSlot];
+            if (key == LongHashSet.FREE)
+                continue;
+
+            int slot = slotOf(key);
+            while (keys[slot] != LongHashSet.FREE)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = key;
+            values[slot] = oldValues[oldSlot];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, LongHashSet.FREE);
+    }
+
+    private int slotOf(long key) {
+        return LongHashSet.mix(key) & mask;
+    }
+
+}
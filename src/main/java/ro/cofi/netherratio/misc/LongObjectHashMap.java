@@ -0,0 +1,175 @@
+package ro.cofi.netherratio.misc;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long} keys to objects, using open addressing with linear probing, like
+ * {@link LongHashSet}. Lookups never box their key.
+ * <br><br>
+ * {@link LongHashSet#FREE} marks unused slots, thus it can't be used as a key.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private V[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        allocate(LongHashSet.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(long key) {
+        if (key == LongHashSet.FREE)
+            return null;
+
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+
+            if (current == key)
+                return values[slot];
+
+            if (current == LongHashSet.FREE)
+                return null;
+        }
+    }
+
+    /**
+     * @return The previous value mapped to the key, or {@code null} if there was none.
+     */
+    public V put(long key, V value) {
+        if (key == LongHashSet.FREE)
+            throw new IllegalArgumentException("Can't use the reserved key " + LongHashSet.FREE);
+
+        int slot = slotOf(key);
+
+        for (; keys[slot] != LongHashSet.FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        if (++size > keys.length * LOAD_FACTOR)
+            rehash(keys.length * 2);
+
+        return null;
+    }
+
+    /**
+     * @return The value that was mapped to the key, or {@code null} if there was none.
+     */
+    public V remove(long key) {
+        if (key == LongHashSet.FREE)
+            return null;
+
+        for (int slot = slotOf(key); keys[slot] != LongHashSet.FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+        }
+
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, LongHashSet.FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public int slotCount() {
+        return keys.length;
+    }
+
+    /**
+     * @return The key stored in the given slot, or {@link LongHashSet#FREE} if none is.
+     */
+    public long slotKey(int slot) {
+        return keys[slot];
+    }
+
+    public V slotValue(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Same as {@link LongHashSet}, moving the values along with their keys.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+
+        while (true) {
+            slot = (slot + 1) & mask;
+
+            long current = keys[slot];
+            if (current == LongHashSet.FREE)
+                break;
+
+            int home = slotOf(current);
+
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = current;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+
+        keys[gap] = LongHashSet.FREE;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(capacity);
+
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            long key = oldKeys[oldSlot];
+            if (key == LongHashSet.FREE)
+                continue;
+
+            int slot = slotOf(key);
+            while (keys[slot] != LongHashSet.FREE)
+                slot = (slot + 1) & mask;
+
+            keys[slot] = key;
+            values[slot] = oldValues[oldSlot];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, LongHashSet.FREE);
+    }
+
+    private int slotOf(long key) {
+        return LongHashSet.mix(key) & mask;
+    }
+
+}
@@ -0,0 +1,82 @@
+package ro.cofi.netherratio.misc;
+
+import java.util.Arrays;
+
+/**
+ * Block offsets around a point, sorted by their distance to it, closest first. Walking such a table visits every
+ * position of a search volume exactly once, in the order a spherically expanding search would, without allocating.
+ * <br><br>
+ * Each offset is packed in a {@code long}: the squared distance in the upper half, so that sorting the values sorts
+ * by distance, then the Y, X and Z offsets in the lower half.
+ */
+public class SearchOffsets {
+
+    private static final int HORIZONTAL_BITS = 10;
+    private static final int VERTICAL_BITS = 12;
+
+    public static final int MAX_HORIZONTAL = (1 << (HORIZONTAL_BITS - 1)) - 1;
+    public static final int MAX_VERTICAL = (1 << (VERTICAL_BITS - 1)) - 1;
+
+    private static final int HORIZONTAL_MASK = (1 << HORIZONTAL_BITS) - 1;
+    private static final int VERTICAL_MASK = (1 << VERTICAL_BITS) - 1;
+
+    private static final int X_SHIFT = HORIZONTAL_BITS;
+    private static final int Y_SHIFT = 2 * HORIZONTAL_BITS;
+
+    /**
+     * Build the offsets of a vertical cylinder, centered on the origin.
+     *
+     * @param horizontal The radius of the cylinder, capped at {@link #MAX_HORIZONTAL}.
+     * @param vertical   How far above and below the origin the cylinder extends, capped at {@link #MAX_VERTICAL}.
+     */
+    public static long[] cylinder(int horizontal, int vertical) {
+        horizontal = Math.max(0, Math.min(horizontal, MAX_HORIZONTAL));
+        vertical = Math.max(0, Math.min(vertical, MAX_VERTICAL));
+
+        int radiusSquared = horizontal * horizontal;
+
+        int columns = 0;
+        for (int x = -horizontal; x <= horizontal; x++)
+            for (int z = -horizontal; z <= horizontal; z++)
+                if (x * x + z * z <= radiusSquared)
+                    columns++;
+
+        long[] offsets = new long[columns * (2 * vertical + 1)];
+        int count = 0;
+
+        for (int x = -horizontal; x <= horizontal; x++) {
+            for (int z = -horizontal; z <= horizontal; z++) {
+                int horizontalDistanceSquared = x * x + z * z;
+                if (horizontalDistanceSquared > radiusSquared)
+                    continue;
+
+                for (int y = -vertical; y <= vertical; y++)
+                    offsets[count++] = pack(x, y, z, horizontalDistanceSquared + y * y);
+            }
+        }
+
+        Arrays.sort(offsets);
+
+        return offsets;
+    }
+
+    public static int unpackX(long offset) {
+        return ((int) offset >> X_SHIFT & HORIZONTAL_MASK) - MAX_HORIZONTAL - 1;
+    }
+
+    public static int unpackY(long offset) {
+        return ((int) offset >> Y_SHIFT & VERTICAL_MASK) - MAX_VERTICAL - 1;
+    }
+
+    public static int unpackZ(long offset) {
+        return ((int) offset & HORIZONTAL_MASK) - MAX_HORIZONTAL - 1;
+    }
+
+    private static long pack(int x, int y, int z, int distanceSquared) {
+        return (long) distanceSquared << Integer.SIZE |
+               (long) (y + MAX_VERTICAL + 1) << Y_SHIFT |
+               (long) (x + MAX_HORIZONTAL + 1) << X_SHIFT |
+               (z + MAX_HORIZONTAL + 1);
+    }
+
+}
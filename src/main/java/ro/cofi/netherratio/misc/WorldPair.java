@@ -0,0 +1,66 @@
+package ro.cofi.netherratio.misc;
+
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * An overworld and the nether its portals lead to, by world name, along with the ratio and the distance between the
+ * custom portals of the pair. Each world of a pair has its own portal data, so lookups never touch another pair.
+ */
+public record WorldPair(
+    String name,
+    String overworld,
+    String nether,
+    double ratioOverworld,
+    double ratioNether,
+    double minDistanceBetweenPortalsOverworld,
+    double minDistanceBetweenPortalsNether
+) {
+
+    public boolean isOverworld(World world) {
+        return overworld.equals(world.getName());
+    }
+
+    /**
+     * @return The name of the world the portals of the given world lead to.
+     */
+    public String getOtherWorld(World world) {
+        return isOverworld(world) ? nether : overworld;
+    }
+
+    /**
+     * @return The factor to multiply coordinates with, when traveling through a portal of the given kind.
+     */
+    public double getScaleFactor(boolean toNether, boolean isCustom) {
+        if (isCustom)
+            return toNether ? ratioNether / ratioOverworld : ratioOverworld / ratioNether;
+
+        return toNether ? Constants.VANILLA_RATIO_NETHER / Constants.VANILLA_RATIO_OVERWORLD :
+               Constants.VANILLA_RATIO_OVERWORLD / Constants.VANILLA_RATIO_NETHER;
+    }
+
+    /**
+     * @return The distance within which portals of the given kind, in the given world of the pair, are linked together.
+     */
+    public double getMinDistanceBetweenPortals(boolean inNether, boolean isCustom) {
+        if (isCustom)
+            return inNether ? minDistanceBetweenPortalsNether : minDistanceBetweenPortalsOverworld;
+
+        return inNether ? Constants.VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_NETHER :
+               Constants.VANILLA_MIN_DISTANCE_BETWEEN_PORTALS_OVERWORLD;
+    }
+
+    /**
+     * @return A value that changes along with the settings deciding which portals of the pair lead to which.
+     */
+    public long getLinkFingerprint() {
+        return Arrays.hashCode(new double[] {
+            ratioOverworld,
+            ratioNether,
+            minDistanceBetweenPortalsOverworld,
+            minDistanceBetweenPortalsNether
+        });
+    }
+
+}
@@ -0,0 +1,155 @@
+package ro.cofi.netherratio.logic;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import ro.cofi.netherratio.FakePlugin;
+import ro.cofi.netherratio.fake.FakeWorld;
+import ro.cofi.netherratio.fake.Terrain;
+import ro.cofi.netherratio.misc.BlockPos;
+import ro.cofi.netherratio.misc.ConfigSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs the destination search of a {@link SearchCapture} again, over the captured blocks and with the captured config,
+ * on the headless server: once to report what it finds, then repeatedly to time it. Attach a profiler to see where a
+ * slow search spends its time. Run it with {@code gradlew replayCapture -PcaptureArgs="<capture file> [iterations]"}.
+ * <br><br>
+ * Lives in the plugin package, so that it can hand the search a block source, and call it directly. The captured
+ * blocks are read straight from memory, like chunk snapshots are: the durations are comparable between builds, and
+ * close to the search alone on a server, but they don't include whatever else the server was doing when the capture
+ * was taken.
+ */
+public final class CaptureReplayer {
+
+    private static final int DEFAULT_ITERATIONS = 100;
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private CaptureReplayer() { }
+
+    public static void main(String[] args) throws InvalidConfigurationException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Expected: <capture file> [iterations]");
+            System.exit(2);
+            return;
+        }
+
+        SearchCapture capture;
+        int iterations;
+
+        try {
+            capture = SearchCapture.read(Path.of(args[0]));
+            iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        try (FakePlugin fakePlugin = new FakePlugin()) {
+            replay(fakePlugin.getPortalLogicManager(), capture, Math.max(1, iterations));
+        }
+    }
+
+    private static void replay(PortalLogicManager portalLogicManager, SearchCapture capture, int iterations)
+        throws InvalidConfigurationException {
+        ConfigSnapshot config = loadConfig(capture);
+
+        // the worlds only provide their height to the search, every block is read from the capture
+        Terrain terrain = capture.getEnvironment() == World.Environment.NETHER ? Terrain.NETHER_CAVES : Terrain.FLAT;
+        World referenceWorld = new FakeWorld(capture.getReferenceWorld(), Terrain.FLAT).getWorld();
+        World destinationWorld = new FakeWorld(capture.getDestinationWorld(), terrain).getWorld();
+
+        if (terrain.getMinHeight() != capture.getMinHeight())
+            System.out.printf(
+                "The captured world starts at Y %d, the replay at Y %d: candidates below it are skipped%n",
+                capture.getMinHeight(),
+                terrain.getMinHeight()
+            );
+
+        Location referenceLocation = BlockPos.toLocation(referenceWorld, capture.getReferencePosition());
+        Location desiredDestination = BlockPos.toLocation(destinationWorld, capture.getDesiredPosition());
+        BlockSource source = capture.toBlockSource();
+
+        System.out.printf(
+            "A %s of %.1f ms, captured at %s, from %s %s to %s %s, %d distinct blocks%n",
+            capture.getOperation(),
+            capture.getDuration() / 1e6,
+            Instant.ofEpochMilli(capture.getTimestamp()),
+            capture.getReferenceWorld(),
+            referenceLocation.toVector(),
+            capture.getDestinationWorld(),
+            desiredDestination.toVector(),
+            capture.getPaletteSize()
+        );
+
+        PortalLogicManager.PendingSearch firstSearch = newSearch(capture, config, referenceLocation, desiredDestination);
+        PortalLogicManager.SearchData result = portalLogicManager.findValidLocation(source, firstSearch);
+
+        System.out.printf("Found %s after %d candidates%n", describe(result), firstSearch.getVisitedCandidates());
+
+        // the JIT has to see the search a few times, before it is timed
+        for (int i = 0; i < iterations; i++)
+            portalLogicManager.findValidLocation(
+                source, newSearch(capture, config, referenceLocation, desiredDestination)
+            );
+
+        long[] durations = new long[iterations];
+
+        for (int i = 0; i < iterations; i++) {
+            PortalLogicManager.PendingSearch search = newSearch(capture, config, referenceLocation, desiredDestination);
+            long start = System.nanoTime();
+
+            portalLogicManager.findValidLocation(source, search);
+            durations[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(durations);
+
+        System.out.printf("%d searches, in ms:", iterations);
+        for (double percentile : PERCENTILES) {
+            int rank = (int) Math.ceil(percentile / 100 * iterations);
+            System.out.printf(" p%.0f %.3f,", percentile, durations[Math.max(1, rank) - 1] / 1e6);
+        }
+        System.out.printf(" max %.3f%n", durations[iterations - 1] / 1e6);
+    }
+
+    private static ConfigSnapshot loadConfig(SearchCapture capture) throws InvalidConfigurationException {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.loadFromString(capture.getConfig());
+
+        // the search doesn't depend on the world pairs
+        return new ConfigSnapshot(yaml, List.of(), message -> System.err.println("Captured config: " + message));
+    }
+
+    private static PortalLogicManager.PendingSearch newSearch(
+        SearchCapture capture, ConfigSnapshot config,
+        Location referenceLocation, Location desiredDestination
+    ) {
+        return new PortalLogicManager.PendingSearch(
+            UUID.randomUUID(),
+            referenceLocation, capture.getReferenceGeometry(),
+            desiredDestination, capture.isCustom(),
+            config, capture.getCeiling()
+        );
+    }
+
+    private static String describe(PortalLogicManager.SearchData result) {
+        if (result == null)
+            return "nothing";
+
+        return "a %s place at %s, along %s".formatted(
+            result.mustHaveFloor() ? "floor" : "floating",
+            result.location().toVector(),
+            result.axis()
+        );
+    }
+
+}
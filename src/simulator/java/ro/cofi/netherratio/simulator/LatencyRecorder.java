@@ -0,0 +1,71 @@
+package ro.cofi.netherratio.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Every duration measured for one kind of work, in nanoseconds, kept in full so that its percentiles are exact.
+ * A simulation records at most a few million of them, which is cheaper to keep than to summarize on the fly.
+ */
+final class LatencyRecorder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String name;
+
+    private long[] durations = new long[INITIAL_CAPACITY];
+    private int count;
+    private long total;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    void record(long duration) {
+        if (count == durations.length)
+            durations = Arrays.copyOf(durations, count * 2);
+
+        durations[count++] = duration;
+        total += duration;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @return The durations at each of the given percentiles (between 0 and 100), by the nearest rank.
+     */
+    long[] getPercentiles(double... percentiles) {
+        long[] result = new long[percentiles.length];
+        if (count == 0)
+            return result;
+
+        long[] sorted = Arrays.copyOf(durations, count);
+        Arrays.sort(sorted);
+
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+            result[i] = sorted[Math.min(count, Math.max(1, rank)) - 1];
+        }
+
+        return result;
+    }
+
+    void reset() {
+        count = 0;
+        total = 0;
+    }
+
+}
@@ -0,0 +1,613 @@
+package ro.cofi.netherratio.simulator;
+
+import org.bukkit.Axis;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.EntityPortalEnterEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.inventory.ItemStack;
+import ro.cofi.netherratio.FakePlugin;
+import ro.cofi.netherratio.NetherRatio;
+import ro.cofi.netherratio.fake.FakeEntity;
+import ro.cofi.netherratio.fake.FakeServer;
+import ro.cofi.netherratio.fake.FakeWorld;
+import ro.cofi.netherratio.fake.Terrain;
+import ro.cofi.netherratio.listener.*;
+import ro.cofi.netherratio.logic.PortalGeometry;
+import ro.cofi.netherratio.misc.BlockPos;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A headless load simulation: synthetic players and mobs walk around an overworld and a nether, travel through
+ * portals, break blocks, light frames and blow portals up, and the plugin listeners are handed the events the server
+ * would fire for all of it. Every listener call is timed, as are the plugin tasks run at the end of each tick, so that
+ * builds can be compared on the same traffic. Run it with {@code gradlew runSimulator -PsimulatorArgs="..."}, see
+ * {@link SimulatorOptions} for the arguments.
+ * <br><br>
+ * Ticks run back to back, and the portal searches run in the background meanwhile, so a search takes fewer ticks
+ * than it would on a server. The fake server is made of dynamic proxies, which makes every block read more expensive
+ * than it is on a server: the numbers are meant to be compared between builds, not read as what a server would see.
+ */
+public final class Simulator {
+
+    private static final String OVERWORLD = "world";
+    private static final String NETHER = "world_nether";
+
+    private static final int PORTAL_GRID = 8;
+    private static final int PORTAL_WIDTH = 2;
+    private static final int PORTAL_HEIGHT = 3;
+    private static final int FRAME_Y = Terrain.GROUND_LEVEL;
+
+    private static final int TELEPORT_DELAY = 80; // ticks a survival player stands in a portal before it fires
+    private static final int MAX_WAIT = 400; // ticks a player waits for a destination portal before walking away
+    private static final int BREAK_REACH = 5;
+    private static final int EXPLOSION_OFFSET = 3;
+    private static final double EXPLOSION_RADIUS = 2.5;
+    private static final float EXPLOSION_YIELD = 0.3f;
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final SimulatorOptions options;
+    private final Random random;
+
+    private final FakeServer server;
+    private final FakeWorld overworld;
+    private final FakeWorld nether;
+    private final FakePlugin fakePlugin;
+    private final NetherRatio plugin;
+
+    private final EntityTeleportListener entityTeleportListener;
+    private final EntityPortalEnterListener entityPortalEnterListener;
+    private final FirePlaceListener firePlaceListener;
+    private final BlockBreakListener blockBreakListener;
+    private final ExplodeListener explodeListener;
+
+    private final LatencyRecorder teleportLatency = new LatencyRecorder("EntityTeleportListener");
+    private final LatencyRecorder portalEnterLatency = new LatencyRecorder("EntityPortalEnterListener");
+    private final LatencyRecorder firePlaceLatency = new LatencyRecorder("FirePlaceListener");
+    private final LatencyRecorder blockBreakLatency = new LatencyRecorder("BlockBreakListener");
+    private final LatencyRecorder explodeLatency = new LatencyRecorder("ExplodeListener");
+    private final LatencyRecorder taskLatency = new LatencyRecorder("scheduled tasks, per tick");
+    private final LatencyRecorder tickLatency = new LatencyRecorder("plugin code, per tick");
+
+    private final List<BuiltPortal> builtPortals = new ArrayList<>();
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private final List<FakeEntity> mobs = new ArrayList<>();
+
+    // time spent in plugin code during the current tick
+    private long tickTime;
+
+    private Simulator(SimulatorOptions options) {
+        this.options = options;
+        this.random = new Random(options.getLong("seed"));
+
+        // the worlds are there before the plugin, like on a server starting up
+        server = FakeServer.get();
+        overworld = new FakeWorld(OVERWORLD, Terrain.FLAT);
+        nether = new FakeWorld(NETHER, Terrain.NETHER_CAVES);
+        server.addWorld(overworld);
+        server.addWorld(nether);
+
+        fakePlugin = new FakePlugin();
+        plugin = fakePlugin.getPlugin();
+
+        entityTeleportListener = new EntityTeleportListener(plugin);
+        entityPortalEnterListener = new EntityPortalEnterListener(plugin);
+        firePlaceListener = new FirePlaceListener(plugin);
+        blockBreakListener = new BlockBreakListener(plugin);
+        explodeListener = new ExplodeListener(plugin);
+    }
+
+    public static void main(String[] args) {
+        SimulatorOptions options;
+
+        try {
+            options = SimulatorOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        new Simulator(options).run();
+    }
+
+    private void run() {
+        System.out.println("Simulating " + options);
+
+        buildPortals();
+        spawnPlayers();
+        spawnMobs();
+
+        int warmup = options.getInt("warmup");
+        int ticks = options.getInt("ticks");
+        long start = 0;
+
+        for (int tick = 0; tick < warmup + ticks; tick++) {
+            // keep the warm-up out of the numbers, it only gets the code compiled
+            if (tick == warmup) {
+                for (LatencyRecorder recorder : getRecorders())
+                    recorder.reset();
+
+                start = System.nanoTime();
+            }
+
+            tick();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        report(ticks, elapsed);
+
+        fakePlugin.close();
+        server.getScheduler().shutdown();
+    }
+
+    private void tick() {
+        tickTime = 0;
+
+        for (SimulatedPlayer player : players)
+            tickPlayer(player);
+
+        for (FakeEntity mob : mobs)
+            tickMob(mob);
+
+        if (chance("explosion-interval"))
+            explode();
+
+        long taskTime = server.getScheduler().tick();
+        taskLatency.record(taskTime);
+
+        tickTime += taskTime;
+        tickLatency.record(tickTime);
+    }
+
+    /**
+     * Build the initial portals on a grid spread over the overworld, with only the requested number of frames left
+     * unlit. Portals in the nether are created by the plugin, as players travel.
+     */
+    private void buildPortals() {
+        int portalCount = options.getInt("portals");
+        int frameCount = options.getInt("frames");
+        int cells = Math.max(1, options.getInt("range") / PORTAL_GRID);
+
+        if (portalCount + frameCount == 0)
+            throw new IllegalArgumentException("At least one portal or frame is needed");
+
+        if ((long) (2 * cells) * (2 * cells) < portalCount + frameCount)
+            throw new IllegalArgumentException("The range is too small to fit that many portals");
+
+        Set<Long> usedCells = new HashSet<>();
+
+        while (builtPortals.size() < portalCount + frameCount) {
+            int x = (random.nextInt(2 * cells) - cells) * PORTAL_GRID;
+            int z = (random.nextInt(2 * cells) - cells) * PORTAL_GRID;
+
+            if (!usedCells.add(BlockPos.pack(x, 0, z)))
+                continue;
+
+            boolean isCustom = random.nextInt(100) >= options.getInt("vanilla-percent");
+            BuiltPortal portal = new BuiltPortal(x, z, isCustom);
+
+            portal.build();
+            if (builtPortals.size() < portalCount)
+                portal.light();
+
+            builtPortals.add(portal);
+        }
+    }
+
+    private void spawnPlayers() {
+        for (int i = 0; i < options.getInt("players"); i++) {
+            BuiltPortal portal = randomPortal();
+            Location location = new Location(
+                overworld.getWorld(),
+                portal.x + random.nextDouble() * PORTAL_WIDTH,
+                FRAME_Y,
+                portal.z + 2.5,
+                random.nextFloat() * 360,
+                0
+            );
+
+            FakeEntity entity = FakeEntity.player("player" + i, location);
+            server.addPlayer(entity);
+            players.add(new SimulatedPlayer(entity));
+        }
+    }
+
+    private void spawnMobs() {
+        for (int i = 0; i < options.getInt("entities"); i++) {
+            mobs.add(FakeEntity.mob("mob" + i, randomPortal().getInside(random)));
+        }
+    }
+
+    /**
+     * A player either stands in a portal, waiting to be teleported, or walks around, and may start any action.
+     */
+    private void tickPlayer(SimulatedPlayer player) {
+        if (player.enteredAt != null) {
+            tickPlayerInPortal(player);
+            return;
+        }
+
+        if (chance("trip-interval"))
+            enterPortal(player);
+        else if (chance("break-interval"))
+            breakBlock(player);
+        else if (chance("light-interval"))
+            lightFrame(player);
+    }
+
+    private void tickPlayerInPortal(SimulatedPlayer player) {
+        Location location = player.entity.getLocation();
+        player.ticksInPortal++;
+
+        // teleported, the portal is gone, or tired of waiting
+        if (location.getWorld() != player.enteredAt.getWorld() ||
+            location.distanceSquared(player.enteredAt) > 0 ||
+            location.getBlock().getType() != Material.NETHER_PORTAL ||
+            player.ticksInPortal > MAX_WAIT) {
+            player.enteredAt = null;
+            return;
+        }
+
+        if (player.ticksInPortal % TELEPORT_DELAY != 0)
+            return;
+
+        PlayerTeleportEvent event = new PlayerTeleportEvent(
+            (Player) player.entity.getEntity(),
+            location,
+            location,
+            PlayerTeleportEvent.TeleportCause.NETHER_PORTAL
+        );
+
+        long start = System.nanoTime();
+        entityTeleportListener.onPlayerTeleport(event);
+        record(teleportLatency, start);
+    }
+
+    /**
+     * Step into a portal of the current world: any of those the plugin knows of in the nether, or one of the built
+     * ones in the overworld, which is where players go back to if the nether has none yet.
+     */
+    private void enterPortal(SimulatedPlayer player) {
+        FakeEntity entity = player.entity;
+        World world = entity.getLocation().getWorld();
+
+        Location location = null;
+
+        if (world == nether.getWorld())
+            location = randomNetherPortal();
+
+        if (location == null) {
+            BuiltPortal portal = randomPortal();
+            location = portal.getInside(random);
+        }
+
+        entity.setLocation(location);
+        player.enteredAt = location;
+        player.ticksInPortal = 0;
+    }
+
+    private Location randomNetherPortal() {
+        boolean isCustom = random.nextBoolean();
+        long[] portals = plugin.getPortalLocationManager().getPortals(nether.getWorld(), isCustom);
+
+        if (portals.length == 0) {
+            isCustom = !isCustom;
+            portals = plugin.getPortalLocationManager().getPortals(nether.getWorld(), isCustom);
+        }
+
+        if (portals.length == 0)
+            return null;
+
+        long position = portals[random.nextInt(portals.length)];
+        PortalGeometry geometry = plugin.getPortalLocationManager().getGeometry(nether.getWorld(), isCustom, position);
+        Location location = BlockPos.toLocation(nether.getWorld(), position).add(0.5, 0, 0.5);
+
+        if (geometry == null || location.getBlock().getType() != Material.NETHER_PORTAL)
+            return null;
+
+        double offset = random.nextDouble() * (geometry.width() - 1);
+        location.add(geometry.axis() == Axis.X ? offset : 0, 0, geometry.axis() == Axis.Z ? offset : 0);
+        location.setYaw(random.nextFloat() * 360);
+
+        return location;
+    }
+
+    /**
+     * Break a frame block of a built portal now and then, some block around the player otherwise. A portal without
+     * its frame goes out; the player then puts the frame block back, so that it can be lit again.
+     */
+    private void breakBlock(SimulatedPlayer player) {
+        Block block;
+        BuiltPortal portal = null;
+
+        if (random.nextInt(4) == 0) {
+            portal = randomPortal();
+            block = portal.getFrameBlock(random);
+        } else {
+            Location location = player.entity.getLocation();
+            block = location.getWorld().getBlockAt(
+                location.getBlockX() + random.nextInt(2 * BREAK_REACH + 1) - BREAK_REACH,
+                FRAME_Y - 1 + random.nextInt(PORTAL_HEIGHT + 3),
+                location.getBlockZ() + random.nextInt(2 * BREAK_REACH + 1) - BREAK_REACH
+            );
+        }
+
+        BlockBreakEvent event = new BlockBreakEvent(block, (Player) player.entity.getEntity());
+
+        long start = System.nanoTime();
+        blockBreakListener.onPlayerBreak(event);
+        record(blockBreakLatency, start);
+
+        if (portal != null)
+            portal.build();
+        else
+            block.setType(Material.AIR);
+    }
+
+    /**
+     * Walk up to an unlit frame, and light it with flint and steel, from the top of its bottom frame block.
+     */
+    private void lightFrame(SimulatedPlayer player) {
+        BuiltPortal portal = randomPortal();
+        if (portal.isLit())
+            return;
+
+        Location location = new Location(overworld.getWorld(), portal.x + 0.5, FRAME_Y, portal.z + 2.5);
+        player.entity.setLocation(location);
+
+        PlayerInteractEvent event = new PlayerInteractEvent(
+            (Player) player.entity.getEntity(),
+            Action.RIGHT_CLICK_BLOCK,
+            new ItemStack(Material.FLINT_AND_STEEL),
+            overworld.getWorld().getBlockAt(portal.x, FRAME_Y, portal.z),
+            BlockFace.UP
+        );
+
+        long start = System.nanoTime();
+        firePlaceListener.onFirePlace(event);
+        record(firePlaceLatency, start);
+    }
+
+    /**
+     * Blow up the area around a built portal, then rebuild its frame, unlit, as players would.
+     */
+    private void explode() {
+        BuiltPortal portal = randomPortal();
+        World world = overworld.getWorld();
+
+        Location center = new Location(
+            world,
+            portal.x + 1 + random.nextInt(2 * EXPLOSION_OFFSET + 1) - EXPLOSION_OFFSET,
+            FRAME_Y + 2,
+            portal.z + 0.5 + random.nextInt(2 * EXPLOSION_OFFSET + 1) - EXPLOSION_OFFSET
+        );
+
+        List<Block> blocks = new ArrayList<>();
+        int reach = (int) Math.ceil(EXPLOSION_RADIUS);
+
+        for (int dx = -reach; dx <= reach; dx++)
+            for (int dy = -reach; dy <= reach; dy++)
+                for (int dz = -reach; dz <= reach; dz++) {
+                    if (dx * dx + dy * dy + dz * dz > EXPLOSION_RADIUS * EXPLOSION_RADIUS)
+                        continue;
+
+                    Block block = world.getBlockAt(
+                        center.getBlockX() + dx,
+                        center.getBlockY() + dy,
+                        center.getBlockZ() + dz
+                    );
+
+                    if (!block.getType().isAir())
+                        blocks.add(block);
+                }
+
+        FakeEntity tnt = FakeEntity.mob("tnt", center);
+        EntityExplodeEvent event = new EntityExplodeEvent(tnt.getEntity(), center, blocks, EXPLOSION_YIELD);
+
+        long start = System.nanoTime();
+        explodeListener.onEntityExplode(event);
+        record(explodeLatency, start);
+
+        for (Block block : event.blockList())
+            block.setType(Material.AIR);
+
+        portal.build();
+    }
+
+    /**
+     * Mobs touch their portal every tick; their portal cooldown goes down every tick, as it does on a server. Now and
+     * then, one of them walks into another portal.
+     */
+    private void tickMob(FakeEntity mob) {
+        if (mob.getPortalCooldown() > 0)
+            mob.setPortalCooldown(mob.getPortalCooldown() - 1);
+
+        if (chance("mob-move-interval"))
+            moveIntoBuiltPortal(mob);
+
+        Location location = mob.getLocation();
+        if (location.getBlock().getType() != Material.NETHER_PORTAL)
+            return;
+
+        EntityPortalEnterEvent event = new EntityPortalEnterEvent(mob.getEntity(), location);
+
+        long start = System.nanoTime();
+        entityPortalEnterListener.onEntityPortalEnter(event);
+        record(portalEnterLatency, start);
+    }
+
+    private void moveIntoBuiltPortal(FakeEntity mob) {
+        mob.setLocation(randomPortal().getInside(random));
+        mob.setPortalCooldown(0);
+    }
+
+    private BuiltPortal randomPortal() {
+        return builtPortals.get(random.nextInt(builtPortals.size()));
+    }
+
+    private boolean chance(String interval) {
+        return random.nextLong(options.getLong(interval)) == 0;
+    }
+
+    private void record(LatencyRecorder recorder, long start) {
+        long duration = System.nanoTime() - start;
+
+        recorder.record(duration);
+        tickTime += duration;
+    }
+
+    private List<LatencyRecorder> getRecorders() {
+        return List.of(
+            teleportLatency,
+            portalEnterLatency,
+            firePlaceLatency,
+            blockBreakLatency,
+            explodeLatency,
+            taskLatency,
+            tickLatency
+        );
+    }
+
+    private void report(int ticks, long elapsed) {
+        System.out.printf(
+            "%n%d ticks in %.1f s, %.2f ms per tick%n%n",
+            ticks,
+            elapsed / 1e9,
+            elapsed / 1e6 / Math.max(1, ticks)
+        );
+
+        System.out.printf(
+            "%-28s %10s %10s %10s %10s %10s %10s%n",
+            "", "count", "mean us", "p50 us", "p90 us", "p99 us", "max us"
+        );
+
+        for (LatencyRecorder recorder : getRecorders()) {
+            long[] percentiles = recorder.getPercentiles(PERCENTILES);
+            long max = recorder.getPercentiles(100)[0];
+
+            System.out.printf(
+                "%-28s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                recorder.getName(),
+                recorder.getCount(),
+                recorder.getMean() / 1e3,
+                percentiles[0] / 1e3,
+                percentiles[1] / 1e3,
+                percentiles[2] / 1e3,
+                max / 1e3
+            );
+        }
+
+        System.out.println();
+
+        for (FakeWorld world : List.of(overworld, nether))
+            System.out.printf(
+                "%-28s %d custom portals, %d vanilla portals%n",
+                world.getWorld().getName(),
+                plugin.getPortalLocationManager().getPortals(world.getWorld(), true).length,
+                plugin.getPortalLocationManager().getPortals(world.getWorld(), false).length
+            );
+    }
+
+    /**
+     * A portal built by the simulation in the overworld, along the X axis: its frame stands on the ground, and its
+     * reference point is right above the bottom frame block at its coordinates.
+     */
+    private final class BuiltPortal {
+
+        private final int x;
+        private final int z;
+        private final boolean isCustom;
+
+        private BuiltPortal(int x, int z, boolean isCustom) {
+            this.x = x;
+            this.z = z;
+            this.isCustom = isCustom;
+        }
+
+        /**
+         * Put up the frame, with nothing inside it.
+         */
+        private void build() {
+            Material frameBlock = fakePlugin.getConfig().getFrameBlock(isCustom);
+
+            for (int dx = -1; dx <= PORTAL_WIDTH; dx++)
+                for (int dy = 0; dy <= PORTAL_HEIGHT + 1; dy++) {
+                    boolean isFrame = dx == -1 || dx == PORTAL_WIDTH || dy == 0 || dy == PORTAL_HEIGHT + 1;
+                    overworld.setType(x + dx, FRAME_Y + dy, z, isFrame ? frameBlock : Material.AIR);
+                }
+        }
+
+        /**
+         * Light the portal the way the plugin would, without going through its listener.
+         */
+        private void light() {
+            for (int dx = 0; dx < PORTAL_WIDTH; dx++)
+                for (int dy = 1; dy <= PORTAL_HEIGHT; dy++)
+                    overworld.setType(x + dx, FRAME_Y + dy, z, Material.NETHER_PORTAL);
+
+            plugin.getPortalLocationManager().savePortal(
+                new Location(overworld.getWorld(), x, FRAME_Y + 1, z),
+                new PortalGeometry(Axis.X, PORTAL_WIDTH, PORTAL_HEIGHT),
+                isCustom
+            );
+        }
+
+        private boolean isLit() {
+            return overworld.getType(x, FRAME_Y + 1, z) == Material.NETHER_PORTAL;
+        }
+
+        private Location getInside(Random random) {
+            return new Location(
+                overworld.getWorld(),
+                x + 0.3 + random.nextDouble() * (PORTAL_WIDTH - 0.6),
+                FRAME_Y + 1,
+                z + 0.5,
+                random.nextFloat() * 360,
+                0
+            );
+        }
+
+        private Block getFrameBlock(Random random) {
+            // one of the bottom, top, left and right frame blocks, corners excluded
+            int side = random.nextInt(4);
+            int dx = side < 2 ? random.nextInt(PORTAL_WIDTH) : side == 2 ? -1 : PORTAL_WIDTH;
+            int dy = side >= 2 ? 1 + random.nextInt(PORTAL_HEIGHT) : side == 0 ? 0 : PORTAL_HEIGHT + 1;
+
+            return overworld.getWorld().getBlockAt(x + dx, FRAME_Y + dy, z);
+        }
+
+    }
+
+    /**
+     * A player, and the spot it stepped into a portal at, if it stands in one.
+     */
+    private static final class SimulatedPlayer {
+
+        private final FakeEntity entity;
+
+        private Location enteredAt;
+        private int ticksInPortal;
+
+        private SimulatedPlayer(FakeEntity entity) {
+            this.entity = entity;
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package ro.cofi.netherratio.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The options of a simulation, given as {@code --name=value} arguments. Intervals are average numbers of ticks
+ * between two occurrences, the actual ones are random.
+ */
+final class SimulatorOptions {
+
+    private final Map<String, Long> values = new LinkedHashMap<>();
+
+    private SimulatorOptions() {
+        values.put("players", 200L);
+        values.put("portals", 500L);
+        values.put("frames", 50L);
+        values.put("entities", 100L);
+        values.put("ticks", 6000L);
+        values.put("warmup", 1200L);
+        values.put("seed", 42L);
+        values.put("range", 10_000L);
+        values.put("vanilla-percent", 25L);
+        values.put("trip-interval", 600L);
+        values.put("break-interval", 200L);
+        values.put("light-interval", 1200L);
+        values.put("explosion-interval", 100L);
+        values.put("mob-move-interval", 600L);
+    }
+
+    static SimulatorOptions parse(String[] args) {
+        SimulatorOptions options = new SimulatorOptions();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+
+            if (!arg.startsWith("--") || separator < 0)
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+
+            String name = arg.substring(2, separator);
+            if (!options.values.containsKey(name))
+                throw new IllegalArgumentException("Unknown option " + name + ", known: " + options.values.keySet());
+
+            long value;
+
+            try {
+                value = Long.parseLong(arg.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Option " + name + " must be a number, got " + arg);
+            }
+
+            if (value < 0 || (value == 0 && name.endsWith("-interval")))
+                throw new IllegalArgumentException("Option " + name + " is out of range: " + value);
+
+            options.values.put(name, value);
+        }
+
+        return options;
+    }
+
+    int getInt(String name) {
+        return Math.toIntExact(values.get(name));
+    }
+
+    long getLong(String name) {
+        return values.get(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        values.forEach((name, value) -> builder.append(builder.isEmpty() ? "" : " ")
+            .append("--").append(name).append('=').append(value));
+
+        return builder.toString();
+    }
+
+}